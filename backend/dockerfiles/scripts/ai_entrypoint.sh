@@ -5,7 +5,8 @@ set -e
  # It checks if the models have already been pulled by looking for a marker file.
 
 # Make the marker file specific to the profile to handle profile switching.
-MARKER_FILE="/root/.ollama/models_pulled_${AI_PROFILE:-cpu}.marker"
+# The "_light" suffix makes existing volumes pull the light model that was added later.
+MARKER_FILE="/root/.ollama/models_pulled_${AI_PROFILE:-cpu}_light.marker"
 
 if [ ! -f "$MARKER_FILE" ]; then
   echo "--- First time startup: Pulling models... ---"
@@ -25,9 +26,11 @@ if [ ! -f "$MARKER_FILE" ]; then
   # Pull the required models
   if [ "$AI_PROFILE" = "gpu" ]; then
     ollama pull qwen3:8b
+    ollama pull qwen3:4b
     #ollama pull exaone3.5:7.8b
   else
     ollama pull qwen3:4b
+    ollama pull qwen3:1.7b
     #ollama pull exaone3.5:2.4b
   fi
     echo "--- Models pulled successfully. ---"
@@ -4,25 +4,33 @@ import com.example.language_learning.ai.components.AIImageRequest;
 import com.example.language_learning.ai.components.AIRequest;
 import com.example.language_learning.ai.components.AIResponseMapping;
 import com.example.language_learning.ai.config.model.AIPrompt;
+import com.example.language_learning.ai.config.model.ModelRoute;
+import com.example.language_learning.ai.enums.ImageQuality;
+import com.example.language_learning.ai.enums.PromptType;
+import com.example.language_learning.ai.services.AIGenerationMetrics;
 import com.example.language_learning.ai.contexts.AIGenerationContext;
 import com.example.language_learning.ai.states.AIGenerationState;
 import com.example.language_learning.ai.config.AIConfig;
+import com.example.language_learning.ai.config.ChatClientPool;
+import com.example.language_learning.ai.config.StableDiffusionImageModel;
 import com.example.language_learning.shared.dtos.images.GeneratedImageDTO;
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
 import com.example.language_learning.shared.exceptions.LanguageException;
 import com.example.language_learning.shared.exceptions.AIEngineException;
 import com.example.language_learning.shared.services.ImageService;
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
 import com.example.language_learning.shared.utils.ReactiveStateMachineFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.image.ImageGeneration;
 import org.springframework.ai.image.ImagePrompt;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -42,14 +50,18 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AIEngine {
 
-    private final Map<String, ChatClient> chatClients;
-    private final ImageModel imageModel;
+    private final Map<String, ChatClientPool> chatClientPools;
+    private final StableDiffusionImageModel imageModel;
     private final AIConfig aiConfig;
     private final AIResponseMapperRegistry mapperRegistry;
     private final ReactiveStateMachineFactory<AIGenerationState, AIGenerationContext> aiGenerationStateMachineFactory;
     private final ImageService imageService;
+    private final JobQueueService jobQueueService;
+    private final AIGenerationMetrics metrics;
     @Value("${spring.ai.max-retries}")
     private int maxRetries;
+    @Value("${spring.ai.stablediffusion.concurrency:2}")
+    private int imageConcurrency;
 
     /**
      * Generates images based on a list of text prompts provided in the request.
@@ -73,21 +85,59 @@ public class AIEngine {
             return Mono.just((T_INTERNAL) new GeneratedImageDTO(Map.of(),imageContext));
         }
 
-        log.info("Generating {} images in parallel...", textPrompts.size());
-
-        return Flux.fromIterable(textPrompts)
-                .flatMap(prompt -> Mono.fromCallable(() -> {
-                    ImagePrompt imagePrompt = new ImagePrompt(prompt);
-                    String base64Image = imageModel.call(imagePrompt).getResult().getOutput().getB64Json();
-                    String url = imageService.saveImageFromBase64(base64Image);
-                    return Map.entry(prompt, url);
-                }))
-                .subscribeOn(Schedulers.boundedElastic())
-                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, Map.Entry::getValue))
+        return streamImages(textPrompts)
+                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, imageByPrompt -> imageByPrompt.getValue().url()))
                 .doOnSuccess(urlsByPrompt -> log.info("Successfully retrieved and saved {} images.", urlsByPrompt.size()))
                 .map(urlsByPrompt -> (T_INTERNAL) new GeneratedImageDTO(urlsByPrompt, imageContext));
     }
 
+    /**
+     * Generates one image per distinct prompt and emits each prompt with its saved image as soon as it is done,
+     * so callers can use the first images while the others are still rendering.
+     * Each txt2img call renders one prompt while holding one image permit. The image is saved after the permit is
+     * released, so the next prompt can render meanwhile.
+     *
+     * @return A Flux of entries from each prompt to its saved image and size variants, in the order the images finish.
+     */
+    public Flux<Map.Entry<String, StoredImageDTO>> streamImages(List<String> textPrompts) {
+        return streamImages(textPrompts, ImageQuality.FULL);
+    }
+
+    /**
+     * @return Whether images should be rendered as previews before their full-quality render.
+     */
+    public boolean isImagePreviewEnabled() {
+        return imageModel.isPreviewEnabled();
+    }
+
+    /**
+     * Like {@link #streamImages(List)}, but renders the images with the given quality.
+     * Previews are saved without size variants.
+     */
+    public Flux<Map.Entry<String, StoredImageDTO>> streamImages(List<String> textPrompts, ImageQuality quality) {
+        // Pages that share a prompt share its image, so each prompt is only rendered once.
+        List<String> prompts = textPrompts.stream().distinct().toList();
+        int concurrency = Math.max(1, imageConcurrency);
+        log.info("Generating {} {} images, {} at a time...", prompts.size(), quality, concurrency);
+
+        return Flux.fromIterable(prompts)
+                .flatMap(prompt -> jobQueueService.submit(Backend.IMAGE, () -> {
+                            List<ImageGeneration> results = imageModel.call(new ImagePrompt(prompt), quality).getResults();
+                            if (results.isEmpty()) {
+                                throw new AIEngineException("The image model returned no image for a prompt.");
+                            }
+                            return results.getFirst();
+                        })
+                        .flatMap(result -> jobQueueService.submit(() -> Map.entry(prompt, saveImage(result, quality)))), concurrency);
+    }
+
+    private StoredImageDTO saveImage(ImageGeneration result, ImageQuality quality) {
+        String base64 = result.getOutput().getB64Json();
+        return (quality == ImageQuality.PREVIEW)
+                ? new StoredImageDTO(imageService.savePreviewFromBase64(base64), null)
+                : imageService.saveImageFromBase64(base64);
+    }
+
     /**
      * The main public entry point for the AIEngine.
      * It takes a simple request and returns a strongly-typed Mono of the final internal DTO.
@@ -120,54 +170,69 @@ public class AIEngine {
             return Mono.error(new LanguageException("The 'language' parameter is missing from the AIRequest params."));
         }
 
-        ChatClient chatClient = selectClient(language);
+        ModelRoute modelRoute = aiConfig.getModelRoute(language, request.getPromptType());
+        ChatClientPool chatClientPool = selectClientPool(modelRoute);
         AIPrompt aiPrompt = aiConfig.getPrompt(language, request.getPromptType());
         var aiResponseType = mapping.javaTypeProvider().apply(request.getParams());
 
         Map<String, Object> contextParams = new HashMap<>(request.getParams());
         contextParams.put("promptType", request.getPromptType());
 
-        AIGenerationContext context = new AIGenerationContext(
-            chatClient,
-            contextParams,
-            aiPrompt,
-            aiResponseType,
-            maxRetries,
-            new AtomicInteger(1),
-            request.isWithModeration(),
-            language
-        );
-
-        Mono<T_AI> apiResponseMono = aiGenerationStateMachineFactory.createInstance()
-                .runToCompletion(context)
-                .onCompletion(AIGenerationState.COMPLETED.class, AIGenerationState.COMPLETED::result)
-                .onError(AIGenerationState.FAILED.class, failed -> {
-                    log.info("DIAGNOSTIC: AIEngine - Creating AIEngineException.");
-                    log.error("AI generation failed for prompt type '{}'. Reason: {}", request.getPromptType(), failed.reason(), failed.cause());
-                    return new AIEngineException(failed.reason(), failed.cause());
-                })
-                .asMono()
-                .map(obj -> (T_AI) obj);
-        return apiResponseMono.map(response -> mapping.mapper().apply(response, request.getParams()));
+        // Every model call of the generation picks the least busy Ollama server of the pool once it holds an LLM permit.
+        Mono<T_AI> apiResponseMono = Mono.defer(() -> {
+            AIGenerationContext context = new AIGenerationContext(
+                chatClientPool,
+                modelRoute,
+                contextParams,
+                aiPrompt,
+                aiResponseType,
+                maxRetries,
+                new AtomicInteger(1),
+                request.isWithModeration(),
+                language,
+                request.getStreamedItemListener()
+            );
+
+            return aiGenerationStateMachineFactory.createInstance()
+                    .runToCompletion(context)
+                    .onCompletion(AIGenerationState.COMPLETED.class, AIGenerationState.COMPLETED::result)
+                    .onError(AIGenerationState.FAILED.class, failed -> {
+                        log.info("DIAGNOSTIC: AIEngine - Creating AIEngineException.");
+                        log.error("AI generation failed for prompt type '{}'. Reason: {}", request.getPromptType(), failed.reason(), failed.cause());
+                        return new AIEngineException(failed.reason(), failed.cause());
+                    })
+                    .asMono()
+                    .map(obj -> (T_AI) obj);
+        });
+        return timed(apiResponseMono, modelRoute, request.getPromptType()).map(response -> mapping.mapper().apply(response, request.getParams()));
     }
 
     /**
-     * Selects a ChatClient based on the chosen language setting.
+     * Records the duration of the generation, from subscription until it completes or fails, in the metrics of its model tier.
+     */
+    private <T> Mono<T> timed(Mono<T> generation, ModelRoute modelRoute, PromptType promptType) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return generation
+                    .doOnSuccess(result -> metrics.recordGeneration(modelRoute.tier(), modelRoute.clientName(), promptType, Duration.ofNanos(System.nanoTime() - start), true))
+                    .doOnError(e -> metrics.recordGeneration(modelRoute.tier(), modelRoute.clientName(), promptType, Duration.ofNanos(System.nanoTime() - start), false));
+        });
+    }
+
+    /**
+     * Selects the ChatClient pool that the routing table assigns to the request's language and prompt type.
      *
-     * @param language The language setting used to select the ChatClient to use.
-     * @return The Chat client for the selected language.
+     * @param modelRoute The route of the request, from {@link AIConfig#getModelRoute(String, PromptType)}.
+     * @return The ChatClient pool for the route.
      */
-    private ChatClient selectClient(String language) {
-        if(language == null || language.isBlank()) {
-            throw new LanguageException("Language cannot be null or empty.");
-        }
-        String modelName = aiConfig.getModelName(language);
-        ChatClient client = chatClients.get(modelName);
+    private ChatClientPool selectClientPool(ModelRoute modelRoute) {
+        String modelName = modelRoute.clientName();
+        ChatClientPool pool = chatClientPools.get(modelName);
 
-        if (client == null) {
-            log.error("Could not find a ChatClient bean named '{}'. Available beans are: {}", modelName, chatClients.keySet());
+        if (pool == null) {
+            log.error("Could not find a ChatClientPool bean named '{}'. Available beans are: {}", modelName, chatClientPools.keySet());
             throw new AIEngineException("AI model client not configured: " + modelName);
         }
-        return client;
+        return pool;
     }
 }
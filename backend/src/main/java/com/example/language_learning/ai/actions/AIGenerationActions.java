@@ -1,28 +1,45 @@
 package com.example.language_learning.ai.actions;
 
+import com.example.language_learning.ai.components.StreamedItemListener;
+import com.example.language_learning.ai.config.ChatClientPool;
 import com.example.language_learning.ai.config.model.AIPrompt;
+import com.example.language_learning.ai.config.model.CompiledPromptTemplate;
 import com.example.language_learning.ai.enums.PromptType;
+import com.example.language_learning.ai.services.AIGenerationMetrics;
+import com.example.language_learning.ai.services.AIGenerationMetrics.Validity;
 import com.example.language_learning.ai.services.ContentModerationService;
+import com.example.language_learning.ai.services.PromptSizingService;
+import com.example.language_learning.ai.services.SchemaFormatSupport;
 import com.example.language_learning.shared.services.FuriganaService;
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
 import com.example.language_learning.ai.contexts.AIGenerationContext;
 import com.example.language_learning.ai.states.AIGenerationState;
+import com.example.language_learning.shared.exceptions.AIStreamAbortedException;
 import com.example.language_learning.shared.utils.AIResponseSanitizer;
+import com.example.language_learning.shared.utils.JsonRetryPatch;
+import com.example.language_learning.shared.utils.StreamingJsonArrayItems;
+import com.example.language_learning.shared.utils.StreamingJsonGuard;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.networknt.schema.JsonSchema;
-import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.ValidationMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.core.io.Resource;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 
-import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Component
@@ -33,7 +50,29 @@ public class AIGenerationActions {
     private final AIResponseSanitizer sanitizer;
     private final FuriganaService furiganaService;
     private final ObjectMapper objectMapper;
-    private final JsonSchemaFactory jsonSchemaFactory;
+    private final JobQueueService jobQueueService;
+    private final PromptSizingService promptSizingService;
+    private final AIGenerationMetrics metrics;
+    private final SchemaFormatSupport schemaFormatSupport;
+    private final Map<PromptType, Integer> numPredictByPromptType = new ConcurrentHashMap<>();
+    @Value("${spring.ai.schema-format:true}")
+    private boolean schemaFormatEnabled;
+    @Value("${spring.ai.truncation.max-continuations:2}")
+    private int maxContinuations;
+    @Value("${spring.ai.truncation.max-num-predict:16384}")
+    private int maxNumPredict;
+
+    /**
+     * The outcome of one streamed model call. The text itself is collected by the {@link StreamingJsonGuard}.
+     *
+     * @param finishReason Ollama's {@code done_reason}, e.g., "stop", or "length" if the response hit {@code num_predict}.
+     * @param evalCount The number of tokens the model generated.
+     */
+    private record StreamedPart(String finishReason, int evalCount) {
+        boolean truncated() {
+            return "length".equalsIgnoreCase(finishReason);
+        }
+    }
 
     public Mono<AIGenerationState> handleModeration(AIGenerationState fromState, AIGenerationContext context) {
         if (!context.withModeration()) {
@@ -67,25 +106,202 @@ public class AIGenerationActions {
         PromptType promptType = (PromptType) context.params().get("promptType");
         log.debug("Rendered Prompt for {} (Attempt {}): {}", promptType, attempt, userMessage);
 
-        return context.chatClient().prompt()
-                .user(userMessage)
-                .stream()
-                .content()
-                .collectList()
-                .map(list -> String.join("", list).trim())
+        boolean patching = context.params().containsKey("patchBase");
+        JsonNode schema = patching ? JsonRetryPatch.PATCH_SCHEMA : context.aiPrompt().schema();
+        Map<String, Object> schemaFormat = patching ? JsonRetryPatch.PATCH_SCHEMA_FORMAT : context.aiPrompt().schemaFormat();
+        Mono<String> responseMono = context.chatClientPool().execute(chatClient -> {
+            boolean constrained = schemaFormatEnabled && schemaFormatSupport.isSupported(chatClient);
+            return streamResponse(context, chatClient, userMessage, schema, constrained ? schemaFormat : null)
+                    .onErrorResume(e -> constrained && schemaFormatSupport.isFormatRejected(e), e -> {
+                        // Older Ollama versions only accept "json" as the format. Remember that for a while, and repair responses as before.
+                        log.warn("The model rejected the JSON schema format ({}). Falling back to the plain JSON format for this model.", e.getMessage());
+                        schemaFormatSupport.markUnsupported(chatClient);
+                        return streamResponse(context, chatClient, userMessage, schema, null);
+                    });
+        });
+
+        // Hold an LLM permit only for the duration of the model call itself. The server is chosen once the permit is granted.
+        return jobQueueService.limit(Backend.LLM, responseMono)
                 .doOnNext(rawResponse -> log.info("Raw AI Response for {} (Attempt {}): {}", promptType, attempt, rawResponse))
-                .map(AIGenerationState::VALIDATION);
+                .map(AIGenerationState::VALIDATION)
+                .onErrorResume(AIStreamAbortedException.class, e -> {
+                    log.warn("Attempt {} for {} was aborted while streaming: {}", attempt, promptType, e.getMessage());
+                    log.debug("Partial AI Response for {} (Attempt {}): {}", promptType, attempt, e.getPartialResponse());
+                    metrics.recordAttempt(context.modelRoute().tier(), promptType, Validity.ABORTED);
+                    JsonNode patchBase = leavePatchMode(context);
+                    context.params().put("invalidJson", (patchBase != null) ? patchBase.toString() : e.getPartialResponse());
+                    context.params().put("validationFeedback", "Your previous response was stopped early because it violated the schema: " + e.getMessage() + " You MUST fix this error.");
+                    return Mono.just(AIGenerationState.RETRYING);
+                });
+    }
+
+    /**
+     * Streams the model's response. When a schema format is given, it is passed as Ollama's {@code format},
+     * so the model can only produce JSON that matches it.
+     * <p>
+     * The structure of the response is checked while it streams in, and the stream is cancelled as soon as it can no longer
+     * become valid, instead of letting the model spend the rest of its token budget on a response that will be discarded.
+     */
+    private Mono<String> streamResponse(AIGenerationContext context, ChatClient chatClient, String userMessage, JsonNode schema, Map<String, Object> schemaFormat) {
+        PromptType promptType = (PromptType) context.params().get("promptType");
+        OllamaOptions.Builder options = sizedOptions(context.chatClientPool(), promptType, userMessage, numPredictByPromptType.get(promptType));
+        if (schemaFormat != null) {
+            options.format(schemaFormat);
+        }
+
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+        StreamingJsonArrayItems items = streamedItems(context);
+        ChatClient.ChatClientRequestSpec prompt = chatClient.prompt().user(userMessage).options(options.build());
+        return streamPart(prompt, guard, items)
+                .flatMap(part -> continueIfTruncated(context, chatClient, userMessage, guard, items, part, 1, 0));
+    }
+
+    /**
+     * @return A reader that passes each complete item of the request's streamed array to its listener,
+     *         or null if the request has no listener or only a patch is being generated.
+     */
+    private StreamingJsonArrayItems streamedItems(AIGenerationContext context) {
+        StreamedItemListener streamedItemListener = context.streamedItemListener();
+        if (streamedItemListener == null || context.params().containsKey("patchBase")) {
+            return null;
+        }
+        int attempt = context.attemptCounter().get();
+        return new StreamingJsonArrayItems(streamedItemListener.arrayProperty(), itemJson -> {
+            try {
+                streamedItemListener.listener().accept(objectMapper.readTree(itemJson), attempt);
+            }
+            catch (JsonProcessingException e) {
+                // The item is repaired later with the whole response. Only items that parse as they are can be used early.
+                log.debug("Skipping a streamed item that is not valid JSON: {}", e.getMessage());
+            }
+            catch (RuntimeException e) {
+                log.warn("The listener for streamed items failed: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Sizes {@code num_predict} for the prompt within the model's fixed {@code num_ctx}, or only applies the raised
+     * {@code num_predict} if sizing is disabled or the model's limits are unknown.
+     */
+    private OllamaOptions.Builder sizedOptions(ChatClientPool pool, PromptType promptType, String prompt, Integer minNumPredict) {
+        OllamaOptions.Builder options = OllamaOptions.builder();
+        if (pool.getNumCtx() == null || pool.getNumPredict() == null) {
+            return options.numPredict(minNumPredict);
+        }
+        promptSizingService.sizeNumPredict(promptType, prompt, (minNumPredict != null) ? minNumPredict : 0, pool.getNumCtx(), pool.getNumPredict())
+                .ifPresentOrElse(options::numPredict, () -> options.numPredict(minNumPredict));
+        return options;
+    }
+
+    /**
+     * If the response was cut off by {@code num_predict}, asks the model to continue its own partial output instead of starting over,
+     * and raises {@code num_predict} for the prompt type so later requests are not cut off.
+     * <p>
+     * The partial output is sent back as the assistant's message, which Ollama continues rather than answering.
+     * A format is never set on a continuation, because it would force the model to start a new JSON value.
+     * If the response is still cut off after the allowed continuations, the sanitizer closes it as before.
+     */
+    private Mono<String> continueIfTruncated(AIGenerationContext context, ChatClient chatClient, String userMessage, StreamingJsonGuard guard,
+                                             StreamingJsonArrayItems items, StreamedPart part, int continuation, int previousTokens) {
+        PromptType promptType = (PromptType) context.params().get("promptType");
+        if (!part.truncated()) {
+            // Patch answers are much shorter than full responses, so they would skew the sizing of their prompt type.
+            if (!context.params().containsKey("patchBase")) {
+                promptSizingService.recordOutput(promptType, previousTokens + part.evalCount());
+            }
+            return Mono.just(guard.getReceived().trim());
+        }
+
+        Integer numPredict = raiseNumPredict(promptType, part.evalCount());
+        if (continuation > maxContinuations) {
+            log.warn("The response for {} is still truncated after {} continuation(s). Repairing the partial response instead.", promptType, maxContinuations);
+            return Mono.just(guard.getReceived().trim());
+        }
+
+        log.info("The response for {} was truncated after {} tokens. Requesting continuation {} of {}.", promptType, part.evalCount(), continuation, maxContinuations);
+        // An empty format is treated by Ollama as no format at all, which overrides the client's default "json" format.
+        ChatClient.ChatClientRequestSpec prompt = chatClient.prompt()
+                .messages(new UserMessage(userMessage), new AssistantMessage(guard.getReceived()))
+                .options(sizedOptions(context.chatClientPool(), promptType, userMessage + guard.getReceived(), numPredict).format("").build());
+        return streamPart(prompt, guard, items)
+                .flatMap(next -> continueIfTruncated(context, chatClient, userMessage, guard, items, next, continuation + 1, previousTokens + part.evalCount()));
+    }
+
+    /**
+     * Streams one model call through the guard, cancelling it as soon as the response can no longer become valid.
+     * Completed items of the streamed array, if any, are passed on as they arrive.
+     */
+    private Mono<StreamedPart> streamPart(ChatClient.ChatClientRequestSpec prompt, StreamingJsonGuard guard, StreamingJsonArrayItems items) {
+        return prompt.stream()
+                .chatResponse()
+                .<ChatResponse>handle((response, sink) -> {
+                    String text = textOf(response);
+                    guard.accept(text).ifPresentOrElse(
+                            violation -> sink.error(new AIStreamAbortedException(violation, guard.getReceived())),
+                            () -> {
+                                if (items != null) {
+                                    items.accept(text);
+                                }
+                                sink.next(response);
+                            });
+                })
+                .reduce(new StreamedPart(null, 0), (part, response) -> {
+                    // Only the final chunk carries the finish reason and token counts.
+                    String finishReason = (response.getResult() != null) ? response.getResult().getMetadata().getFinishReason() : null;
+                    if (finishReason == null) {
+                        return part;
+                    }
+                    Integer evalCount = response.getMetadata().getUsage().getCompletionTokens();
+                    return new StreamedPart(finishReason, (evalCount != null) ? evalCount : 0);
+                });
+    }
+
+    private String textOf(ChatResponse response) {
+        if (response.getResult() == null || response.getResult().getOutput().getText() == null) {
+            return "";
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    /**
+     * Raises {@code num_predict} for the prompt type by half of what the truncated response used, up to the configured maximum.
+     *
+     * @return The new {@code num_predict}, or null to keep the client's default if the token count is unknown.
+     */
+    private Integer raiseNumPredict(PromptType promptType, int evalCount) {
+        int used = Math.max(evalCount, numPredictByPromptType.getOrDefault(promptType, 0));
+        if (used == 0) {
+            return null;
+        }
+        int raised = Math.min(used + used / 2, maxNumPredict);
+        return numPredictByPromptType.merge(promptType, raised, Math::max);
     }
 
     public Mono<AIGenerationState> handleValidation(AIGenerationState fromState, AIGenerationContext context) {
         String rawResponse = ((AIGenerationState.VALIDATION) fromState).rawResponse();
-        String jsonString = sanitizer.repairJson(rawResponse);
         int attempt = context.attemptCounter().get();
         PromptType promptType = (PromptType) context.params().get("promptType");
-        log.debug("Extracted JSON for {} (Attempt {}): {}", promptType, attempt, jsonString);
+        List<JsonRetryPatch.Target> patchTargets = getPatchTargets(context.params());
+        JsonNode patchBase = leavePatchMode(context);
+
+        try { // First, repair and parse the JSON in a single pass
+            JsonNode responseNode = sanitizer.parseJson(rawResponse);
+            log.debug("Parsed JSON for {} (Attempt {}): {}", promptType, attempt, responseNode);
 
-        try { // First, try to parse the JSON
-            JsonNode responseNode = objectMapper.readTree(jsonString);
+            // A retry in patch mode only returns the corrected values, which are merged back into the previous response
+            if (patchBase != null) {
+                try {
+                    responseNode = JsonRetryPatch.apply(patchBase, responseNode, patchTargets);
+                }
+                catch (IllegalArgumentException e) {
+                    log.warn("Attempt {} for {} returned an unusable patch: {}", attempt, promptType, e.getMessage());
+                    metrics.recordAttempt(context.modelRoute().tier(), promptType, Validity.INVALID);
+                    context.params().put("invalidJson", patchBase.toString());
+                    context.params().put("validationFeedback", "Your previous corrections could not be applied: " + e.getMessage() + " You MUST provide a complete and valid JSON object that strictly adheres to the schema.");
+                    return Mono.just(AIGenerationState.RETRYING);
+                }
+            }
             // If parsing succeeds, proceed to schema validation
 
             // Dynamically apply pre-validation sanitization for specific prompt types
@@ -93,12 +309,12 @@ public class AIGenerationActions {
                 responseNode = furiganaService.sanitizeJapaneseVocabularyNode(responseNode);
             }
 
-            JsonSchema schema = jsonSchemaFactory.getSchema(context.aiPrompt().schema());
-            Set<ValidationMessage> errors = schema.validate(responseNode);
+            Set<ValidationMessage> errors = context.aiPrompt().compiledSchema().validate(responseNode);
 
             if (errors.isEmpty()) {
                 // If validation passes, we are done. Convert to DTO and complete.
                 log.info("Attempt {} for {} passed schema validation.", attempt, promptType);
+                metrics.recordAttempt(context.modelRoute().tier(), promptType, Validity.VALID);
                 Object result = objectMapper.convertValue(responseNode, context.apiDtoType());
                 return Mono.just(AIGenerationState.COMPLETED(result));
             }
@@ -108,14 +324,15 @@ public class AIGenerationActions {
                         .map(ValidationMessage::getMessage)
                         .collect(Collectors.joining(", "));
                 log.warn("Attempt {} for {} failed schema validation: {}", attempt, promptType, errorDetails);
-                context.params().put("invalidJson", jsonString);
+                context.params().put("invalidJson", responseNode.toString());
                 context.params().put("validationFeedback", "Your previous response failed schema validation with the following errors: " + errorDetails + ". You MUST fix these errors.");
                 return Mono.just(AIGenerationState.SANITIZING(responseNode, errors));
             }
         }
         catch (JsonProcessingException e) { // If parsing fails, go directly to retry
             log.warn("Attempt {} for {} failed due to a JSON processing error: {}", context.attemptCounter().get(), promptType, e.getMessage());
-            context.params().put("invalidJson", jsonString);
+            metrics.recordAttempt(context.modelRoute().tier(), promptType, Validity.UNPARSEABLE);
+            context.params().put("invalidJson", (patchBase != null) ? patchBase.toString() : rawResponse);
             context.params().put("validationFeedback", "Your previous response could not be parsed as valid JSON. It might be malformed or incomplete. You MUST provide a complete and valid JSON object that strictly adheres to the schema.");
             return Mono.just(AIGenerationState.RETRYING);
         }
@@ -127,7 +344,7 @@ public class AIGenerationActions {
         JsonNode responseNode = sanitizingState.responseNode();
         Set<ValidationMessage> errors = sanitizingState.errors();
         PromptType promptType = (PromptType) context.params().get("promptType");
-        JsonSchema schema = jsonSchemaFactory.getSchema(context.aiPrompt().schema());
+        JsonSchema schema = context.aiPrompt().compiledSchema();
 
         // 2. Perform the sanitization and re-validation.
         JsonNode fixedNode = sanitizer.sanitizeJsonValidationErrors(responseNode, errors, schema);
@@ -137,6 +354,7 @@ public class AIGenerationActions {
         if (newErrors.isEmpty()) {
             // If sanitization succeeds, we are done. Convert to DTO and complete.
             log.info("Sanitization successful! {} passed schema validation after fix.", promptType);
+            metrics.recordAttempt(context.modelRoute().tier(), promptType, Validity.SANITIZED);
             try {
                 Object result = objectMapper.convertValue(fixedNode, context.apiDtoType());
                 return Mono.just(AIGenerationState.COMPLETED(result));
@@ -152,7 +370,19 @@ public class AIGenerationActions {
                     .map(ValidationMessage::getMessage)
                     .collect(Collectors.joining(", "));
             log.warn("Sanitization attempt failed for {}. Final errors: {}", promptType, errorDetails);
+            metrics.recordAttempt(context.modelRoute().tier(), promptType, Validity.INVALID);
             context.params().put("validationFeedback", "After attempting to sanitize, your response still has errors: " + errorDetails + ". You MUST fix these errors.");
+
+            // When only a few values or array items are wrong, regenerate just those instead of resending the whole response and schema.
+            JsonRetryPatch.targets(newErrors)
+                    .map(targets -> JsonRetryPatch.widenToItems(fixedNode, targets))
+                    .filter(targets -> targets.size() <= JsonRetryPatch.MAX_TARGETS)
+                    .ifPresent(targets -> {
+                        log.info("Retrying {} in patch mode for {} location(s).", promptType, targets.size());
+                        context.params().remove("invalidJson");
+                        context.params().put("patchBase", fixedNode);
+                        context.params().put("patchTargets", targets);
+                    });
             return Mono.just(AIGenerationState.RETRYING);
         }
     }
@@ -169,23 +399,54 @@ public class AIGenerationActions {
 
 
 
-    private String renderPrompt(Resource resource, Map<String, Object> params) {
+    private String renderPrompt(CompiledPromptTemplate template, Map<String, Object> params) {
         try {
-            String templateString = resource.getContentAsString(StandardCharsets.UTF_8);
-            PromptTemplate promptTemplate = new PromptTemplate(templateString);
-            return promptTemplate.render(params);
+            return template.render(params);
         }
         catch (Exception e) {
-            log.error("Failed to render prompt template from resource: {}.", resource.getFilename(), e);
-            throw new IllegalArgumentException("Invalid prompt template rendering: " + resource.getFilename(), e);
+            log.error("Failed to render the prompt template.", e);
+            throw new IllegalArgumentException("Invalid prompt template rendering: " + e.getMessage(), e);
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private List<JsonRetryPatch.Target> getPatchTargets(Map<String, Object> params) {
+        return (List<JsonRetryPatch.Target>) params.get("patchTargets");
+    }
+
+    /**
+     * Clears the patch mode, so the next retry resends the full response unless patch mode is entered again.
+     *
+     * @return The previous response that the patches were meant for, or null if the attempt was not in patch mode.
+     */
+    private JsonNode leavePatchMode(AIGenerationContext context) {
+        context.params().remove("patchTargets");
+        return (JsonNode) context.params().remove("patchBase");
+    }
+
+    /**
+     * Asks only for the values at the failing locations, with their errors, current values and schema fragments.
+     * The instructions and the full schema are left out, since the rest of the response is already valid.
+     */
+    private String buildPatchMessage(AIPrompt aiPrompt, Map<String, Object> params) {
+        JsonNode patchBase = (JsonNode) params.get("patchBase");
+        List<JsonRetryPatch.Target> targets = getPatchTargets(params);
+        return "Your previous JSON response was almost valid, but the values at the following JSON pointers failed schema validation. "
+                + "Respond ONLY with a JSON object of the form {\"patches\": [{\"path\": \"<JSON pointer>\", \"value\": <corrected value>}]}, "
+                + "with one patch per location that replaces the entire value at that location. "
+                + "A location that is an array item must be regenerated as a complete item that follows on from the item before it and leads into the item after it. "
+                + "Do not repeat the rest of the response."
+                + JsonRetryPatch.describe(patchBase, aiPrompt.schema(), targets);
+    }
+
     private String buildUserMessage(AIPrompt aiPrompt, Map<String, Object> params) {
+        if (params.containsKey("patchBase")) {
+            return buildPatchMessage(aiPrompt, params);
+        }
+
         String instructionContent = renderPrompt(aiPrompt.instruction(), params);
 
-        JsonNode schemaNode = aiPrompt.schema();
-        String schemaContent = (schemaNode != null) ? schemaNode.toPrettyString() : "{}";
+        String schemaContent = (aiPrompt.schemaText() != null) ? aiPrompt.schemaText() : "{}";
 
         // Check if this is a retry attempt and add specific feedback
         if (params.containsKey("validationFeedback")) {
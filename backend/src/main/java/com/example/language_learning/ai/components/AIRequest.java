@@ -1,10 +1,12 @@
 package com.example.language_learning.ai.components;
 
 import com.example.language_learning.ai.enums.PromptType;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.Getter;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Represents a self-contained, immutable request for a single AI generation task.
@@ -21,11 +23,14 @@ public final class AIRequest<T_INTERNAL> {
     private final Map<String, Object> params;
     @Getter
     private final boolean withModeration;
+    @Getter
+    private final StreamedItemListener streamedItemListener;
 
     private AIRequest(Builder<T_INTERNAL> builder) {
         this.promptType = builder.promptType;
         this.params = builder.params;
         this.withModeration = builder.withModeration;
+        this.streamedItemListener = builder.streamedItemListener;
     }
 
     public static IResponseClassStep builder() {
@@ -41,6 +46,7 @@ public final class AIRequest<T_INTERNAL> {
         IBuilder<T_INTERNAL> language(String language);
         IBuilder<T_INTERNAL> param(String key, Object value);
         IBuilder<T_INTERNAL> withModeration(boolean with);
+        IBuilder<T_INTERNAL> onStreamedItem(String arrayProperty, ObjIntConsumer<JsonNode> listener);
         AIRequest<T_INTERNAL> build();
     }
 
@@ -64,6 +70,7 @@ public final class AIRequest<T_INTERNAL> {
         private String language;
         private final Map<String, Object> params = new HashMap<>();
         private boolean withModeration = false; // Default to false
+        private StreamedItemListener streamedItemListener;
 
         private Builder() { // private constructor
         }
@@ -92,6 +99,12 @@ public final class AIRequest<T_INTERNAL> {
             return this;
         }
 
+        @Override
+        public IBuilder<T_INTERNAL> onStreamedItem(String arrayProperty, ObjIntConsumer<JsonNode> listener) {
+            this.streamedItemListener = new StreamedItemListener(arrayProperty, listener);
+            return this;
+        }
+
         @Override
         public AIRequest<T_INTERNAL>  build() {
             if (promptType == null || language == null || language.isBlank()) {
@@ -0,0 +1,19 @@
+package com.example.language_learning.ai.components;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Receives the items of an array in the AI's response while the response is still streaming, e.g., each page of a story
+ * as soon as the model has finished writing it.
+ * <p>
+ * Items are passed on as the model wrote them, before validation and sanitization, together with the number of the
+ * attempt that wrote them. Items of an attempt that is later retried are passed on as well, so the listener must tolerate
+ * items that never make it into the final result. Once an item of a higher attempt arrives, the earlier attempts' items
+ * are superseded. Attempts that only patch the previous response stream nothing, since its other items are kept.
+ *
+ * @param arrayProperty The key of the array in the root object of the response.
+ * @param listener Receives each complete item that parses as JSON, and the attempt it belongs to.
+ */
+public record StreamedItemListener(String arrayProperty, ObjIntConsumer<JsonNode> listener) {}
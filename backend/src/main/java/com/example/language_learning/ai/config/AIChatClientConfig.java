@@ -1,6 +1,10 @@
 package com.example.language_learning.ai.config;
 
+import com.example.language_learning.ai.config.properties.ChatClientPoolProperties;
 import com.example.language_learning.ai.config.properties.Client1Properties;
+import com.example.language_learning.ai.config.properties.LightClientProperties;
+import com.example.language_learning.ai.config.properties.ModelRoutingProperties;
+import com.example.language_learning.ai.config.properties.PromptSizingProperties;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.ollama.OllamaChatModel;
 import org.springframework.ai.ollama.api.OllamaApi;
@@ -10,73 +14,90 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Manually configures the ChatClient beans for each AI model.
+ * Manually configures the ChatClient pools for each AI model.
  * This provides full control and avoids auto-configuration issues.
  */
 @Configuration
-@EnableConfigurationProperties({Client1Properties.class/*, Client2Properties.class*/})
+@EnableConfigurationProperties({Client1Properties.class/*, Client2Properties.class*/, LightClientProperties.class, ModelRoutingProperties.class, PromptSizingProperties.class, ChatClientPoolProperties.class})
 public class AIChatClientConfig {
 
     @Value("classpath:prompts/system/system_prompt.txt")
     private Resource systemPrompt;
 
-    // 1. Create separate OllamaApi beans for each instance using the builder
-    @Bean
-    public OllamaApi ollamaApi1(Client1Properties props) {
-        return OllamaApi.builder()
-                .baseUrl(props.baseUrl()).build();
-    }
+    // Pools of different models on the same Ollama server share the server's in-flight count.
+    private final Map<String, AtomicInteger> inFlightByServer = new ConcurrentHashMap<>();
 
-    /*@Bean
-    public OllamaApi ollamaApi2(Client2Properties props) {
-        return OllamaApi.builder()
-                .baseUrl(props.baseUrl()).build();
-    }*/
-
-    // 2. Create OllamaChatModel beans using the builder pattern
-    @Bean
-    public OllamaChatModel client1ChatModel(OllamaApi ollamaApi1, Client1Properties props) {
-        OllamaOptions options = OllamaOptions.builder()
+    // 1. Create the default OllamaOptions for each model using the builder
+    private OllamaOptions client1Options(Client1Properties props) {
+        return OllamaOptions.builder()
                 .model(props.chat().model())
                 .format(props.chat().options().format())
                 .numCtx(props.chat().options().numCtx())
                 .numPredict(props.chat().options().numPredict())
                 .temperature(props.chat().options().temperature())
-                .build();
-
-        return OllamaChatModel.builder()
-                .ollamaApi(ollamaApi1)
-                .defaultOptions(options)
+                .keepAlive(props.chat().options().keepAlive())
                 .build();
     }
 
-    /*@Bean
-    public OllamaChatModel client2ChatModel(OllamaApi ollamaApi2, Client2Properties props) {
-        OllamaOptions options = OllamaOptions.builder()
+    private OllamaOptions lightOptions(LightClientProperties props) {
+        return OllamaOptions.builder()
                 .model(props.chat().model())
                 .format(props.chat().options().format())
                 .numCtx(props.chat().options().numCtx())
                 .numPredict(props.chat().options().numPredict())
                 .temperature(props.chat().options().temperature())
+                .keepAlive(props.chat().options().keepAlive())
                 .build();
+    }
 
-        return OllamaChatModel.builder()
-                .ollamaApi(ollamaApi2)
-                .defaultOptions(options)
+    /*private OllamaOptions client2Options(Client2Properties props) {
+        return OllamaOptions.builder()
+                .model(props.chat().model())
+                .format(props.chat().options().format())
+                .numCtx(props.chat().options().numCtx())
+                .numPredict(props.chat().options().numPredict())
+                .temperature(props.chat().options().temperature())
+                .keepAlive(props.chat().options().keepAlive())
                 .build();
     }*/
 
-
-    // 3. Create ChatClient beans based on the specific ChatModels
+    // 2. Create a ChatClient pool bean for each model, with one ChatClient per Ollama server
     @Bean("qwen3")
-    public ChatClient chatClient1(OllamaChatModel client1ChatModel) {
-        return ChatClient.builder(client1ChatModel).defaultSystem(systemPrompt).build();
+    public ChatClientPool chatClientPool1(Client1Properties props, ChatClientPoolProperties poolProps, WebClient.Builder webClientBuilder) {
+        return createPool("qwen3", props.allBaseUrls(), client1Options(props), poolProps, webClientBuilder);
+    }
+
+    // The light model runs on client 1's servers, but has its own model and smaller options.
+    @Bean("qwen3-light")
+    public ChatClientPool lightChatClientPool(Client1Properties serverProps, LightClientProperties props, ChatClientPoolProperties poolProps, WebClient.Builder webClientBuilder) {
+        return createPool("qwen3-light", serverProps.allBaseUrls(), lightOptions(props), poolProps, webClientBuilder);
     }
 
     /*@Bean("deepseek")
-    public ChatClient chatClient2(OllamaChatModel client2ChatModel) {
-        return ChatClient.builder(client2ChatModel).defaultSystem(systemPrompt).build();
+    public ChatClientPool chatClientPool2(Client2Properties props, ChatClientPoolProperties poolProps, WebClient.Builder webClientBuilder) {
+        return createPool("deepseek", props.allBaseUrls(), client2Options(props), poolProps, webClientBuilder);
     }*/
+
+    // 3. Build an OllamaApi, OllamaChatModel and ChatClient for every server of a pool
+    private ChatClientPool createPool(String name, List<String> baseUrls, OllamaOptions options, ChatClientPoolProperties poolProps, WebClient.Builder webClientBuilder) {
+        List<ChatClientPool.Endpoint> endpoints = baseUrls.stream()
+                .map(baseUrl -> {
+                    OllamaChatModel chatModel = OllamaChatModel.builder()
+                            .ollamaApi(OllamaApi.builder().baseUrl(baseUrl).build())
+                            .defaultOptions(OllamaOptions.fromOptions(options))
+                            .build();
+                    ChatClient chatClient = ChatClient.builder(chatModel).defaultSystem(systemPrompt).build();
+                    return new ChatClientPool.Endpoint(baseUrl, chatClient, inFlightByServer.computeIfAbsent(baseUrl, url -> new AtomicInteger()));
+                })
+                .toList();
+        return new ChatClientPool(name, endpoints, options.getNumCtx(), options.getNumPredict(), webClientBuilder, poolProps.healthCheckTimeout(), poolProps.failureThreshold());
+    }
 }
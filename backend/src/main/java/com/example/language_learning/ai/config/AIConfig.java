@@ -2,27 +2,39 @@ package com.example.language_learning.ai.config;
 
 import com.example.language_learning.ai.config.model.AIAsset;
 import com.example.language_learning.ai.config.model.AIPrompt;
+import com.example.language_learning.ai.config.model.CompiledPromptTemplate;
+import com.example.language_learning.ai.config.model.ModelRoute;
+import com.example.language_learning.ai.config.properties.ModelRoutingProperties;
 import com.example.language_learning.ai.dtos.details.*;
 import com.example.language_learning.ai.enums.*;
 import com.example.language_learning.shared.exceptions.LanguageException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@Slf4j
 @RequiredArgsConstructor
 public class AIConfig {
     private final ObjectMapper objectMapper;
     private final ResourceLoader resourceLoader;
+    private final JsonSchemaFactory jsonSchemaFactory;
+    private final ModelRoutingProperties routingProperties;
 
     /**
      *  Row Key: Language (e.g, "japanese", "korean")
@@ -31,29 +43,58 @@ public class AIConfig {
     private final Map<String, AIAsset> aiAssets = new HashMap<>();
     private final Map<String, Class<?>> vocabularyItemDtoMap = new HashMap<>();
 
+    private record CompiledSchema(JsonNode node, JsonSchema validator, String text, Map<String, Object> format) {}
+
     @PostConstruct
     public void init() {
+        long start = System.nanoTime();
+        // Most languages share the same instruction and schema files, so each file is only read and compiled once.
+        Map<String, CompiledPromptTemplate> instructionsByPath = new HashMap<>();
+        Map<String, CompiledSchema> schemasByPath = new HashMap<>();
         for (Language lang : Language.values()) {
             Map<PromptType, AIPrompt> prompts = new EnumMap<>(PromptType.class);
+            Map<PromptType, ModelRoute> routes = new EnumMap<>(PromptType.class);
             for (PromptType type : PromptType.values()) {
-                Resource instruction = getInstructionResource(lang, type);
-                Resource schema = getSchemaResource(lang, type);
+                CompiledPromptTemplate instruction = instructionsByPath.computeIfAbsent(getInstructionPath(lang, type), this::compileInstruction);
+                CompiledSchema compiled = schemasByPath.computeIfAbsent(getSchemaPath(lang, type), this::compileSchema);
                 prompts.put(type, AIPrompt.builder()
                         .instruction(instruction)
-                        .schema(readSchemaAsJsonNode(schema))
+                        .schema(compiled.node())
+                        .compiledSchema(compiled.validator())
+                        .schemaText(compiled.text())
+                        .schemaFormat(compiled.format())
                         .build());
+                routes.put(type, getModelRoute(lang, type));
             }
             AIAsset asset = AIAsset.builder()
                     .modelName(lang.getModelName())
                     .prompts(prompts)
+                    .routes(routes)
                     .build();
             aiAssets.put(lang.getValue(), asset);
         }
+        log.info("Loaded prompts for {} languages and compiled {} distinct instruction templates and {} distinct schemas in {} ms.",
+                aiAssets.size(), instructionsByPath.size(), schemasByPath.size(), (System.nanoTime() - start) / 1_000_000);
 
         initializeVocabularyMap();
     }
 
-    private Resource getInstructionResource(Language lang, PromptType type) {
+    /**
+     * Routes the prompt to the light model or the language's own model, based on the prompt type's tier and any configured override.
+     */
+    private ModelRoute getModelRoute(Language lang, PromptType type) {
+        Map<PromptType, ModelTier> overrides = (routingProperties.overrides() != null)
+                ? routingProperties.overrides().getOrDefault(lang.getValue(), Map.of())
+                : Map.of();
+        ModelTier tier = overrides.getOrDefault(type, type.getDefaultTier());
+        String lightClient = routingProperties.lightClient();
+        if (tier == ModelTier.LIGHT && lightClient != null && !lightClient.isBlank()) {
+            return new ModelRoute(ModelTier.LIGHT, lightClient);
+        }
+        return new ModelRoute(ModelTier.HEAVY, lang.getModelName());
+    }
+
+    private String getInstructionPath(Language lang, PromptType type) {
         String path;
         switch (type) {
             case VOCABULARY_LESSON:
@@ -67,10 +108,10 @@ public class AIConfig {
                         type.getCategory(), type.getFileName());
                 break;
         }
-        return resourceLoader.getResource(path);
+        return path;
     }
 
-    private Resource getSchemaResource(Language lang, PromptType type) {
+    private String getSchemaPath(Language lang, PromptType type) {
         final String schemaGroupPath;
         switch (type) {
             case TRANSLATE:
@@ -87,9 +128,8 @@ public class AIConfig {
                 break;
         }
 
-        String path = String.format("classpath:prompts/%s/schemas/%s%s_schema.json",
+        return String.format("classpath:prompts/%s/schemas/%s%s_schema.json",
                 type.getCategory(), schemaGroupPath, type.getFileName());
-        return resourceLoader.getResource(path);
     }
 
     private void initializeVocabularyMap() {
@@ -126,6 +166,14 @@ public class AIConfig {
         return asset.modelName();
     }
 
+    public ModelRoute getModelRoute(String language, PromptType promptType) {
+        AIAsset asset = aiAssets.get(language.toLowerCase());
+        if (asset == null) {
+            throw new LanguageException("Language '" + language + "' is not supported or configured.", null);
+        }
+        return asset.routes().get(promptType);
+    }
+
     public Class<?> getVocabularyItemDtoClass(String language) {
         Class<?> dtoClass = vocabularyItemDtoMap.get(language.toLowerCase());
         if (dtoClass == null) {
@@ -134,6 +182,28 @@ public class AIConfig {
         return dtoClass;
     }
 
+    private CompiledPromptTemplate compileInstruction(String path) {
+        Resource resource = resourceLoader.getResource(path);
+        try {
+            return CompiledPromptTemplate.compile(resource.getFilename(), resource.getContentAsString(StandardCharsets.UTF_8));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read instruction file: " + resource.getFilename(), e);
+        }
+    }
+
+    /**
+     * Parses, compiles and renders a schema file. The validators are initialized eagerly, so the shared
+     * {@link JsonSchema} never has to compile anything lazily while it validates concurrent responses.
+     */
+    private CompiledSchema compileSchema(String path) {
+        JsonNode schemaNode = readSchemaAsJsonNode(resourceLoader.getResource(path));
+        JsonSchema validator = jsonSchemaFactory.getSchema(schemaNode);
+        validator.initializeValidators();
+        Map<String, Object> format = Collections.unmodifiableMap(objectMapper.convertValue(schemaNode, new TypeReference<Map<String, Object>>() {}));
+        return new CompiledSchema(schemaNode, validator, schemaNode.toPrettyString(), format);
+    }
+
     private JsonNode readSchemaAsJsonNode(Resource resource) {
         try {
             return objectMapper.readTree(resource.getInputStream());
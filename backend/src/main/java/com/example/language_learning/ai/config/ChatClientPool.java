@@ -0,0 +1,209 @@
+package com.example.language_learning.ai.config;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A pool of ChatClients for the same model, one per Ollama server, so generation scales with the number of GPU nodes.
+ * <p>
+ * Each model call runs on the healthy endpoint with the fewest calls in flight. Pools of different models on the same
+ * server share its in-flight count. Callers only subscribe to {@link #execute(Function)} once they hold an LLM permit,
+ * so queued calls are neither counted nor pinned to a server before they can run. Ties go to the endpoint with the
+ * lowest average latency (an exponentially weighted moving average). An endpoint is ejected after several consecutive
+ * connection failures or a failed health check, and re-admitted once a health check succeeds again.
+ * If every endpoint is ejected, all of them are tried again rather than failing every request.
+ */
+@Slf4j
+public class ChatClientPool {
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    @Getter
+    private final String name;
+    @Getter
+    private final List<Endpoint> endpoints;
+    /**
+     * The model's fixed context window and default output limit, or null if the model's defaults are unknown.
+     * Requests keep this {@code num_ctx}, because Ollama reloads the model whenever it changes.
+     */
+    @Getter
+    private final Integer numCtx;
+    @Getter
+    private final Integer numPredict;
+    private final WebClient webClient;
+    private final Duration healthCheckTimeout;
+    private final int failureThreshold;
+
+    /**
+     * One Ollama server of the pool.
+     */
+    @Getter
+    public static final class Endpoint {
+        private final String baseUrl;
+        private final ChatClient chatClient;
+        private final AtomicInteger inFlight;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile double averageLatencyMillis;
+        private volatile boolean healthy = true;
+
+        public Endpoint(String baseUrl, ChatClient chatClient) {
+            this(baseUrl, chatClient, new AtomicInteger());
+        }
+
+        /**
+         * @param inFlight The number of calls in flight on the server, shared by every pool that uses it.
+         */
+        public Endpoint(String baseUrl, ChatClient chatClient, AtomicInteger inFlight) {
+            this.baseUrl = baseUrl;
+            this.chatClient = chatClient;
+            this.inFlight = inFlight;
+        }
+
+        private synchronized void recordLatency(long millis) {
+            averageLatencyMillis = (averageLatencyMillis == 0)
+                    ? millis
+                    : LATENCY_SMOOTHING * millis + (1 - LATENCY_SMOOTHING) * averageLatencyMillis;
+        }
+    }
+
+    /**
+     * @param healthCheckTimeout How long an endpoint may take to answer a health check.
+     * @param failureThreshold The number of consecutive connection failures after which an endpoint is ejected.
+     */
+    public ChatClientPool(String name, List<Endpoint> endpoints, WebClient.Builder webClientBuilder, Duration healthCheckTimeout, int failureThreshold) {
+        this(name, endpoints, null, null, webClientBuilder, healthCheckTimeout, failureThreshold);
+    }
+
+    /**
+     * @param numCtx The {@code num_ctx} the model is configured with.
+     * @param numPredict The {@code num_predict} the model is configured with.
+     */
+    public ChatClientPool(String name, List<Endpoint> endpoints, Integer numCtx, Integer numPredict, WebClient.Builder webClientBuilder,
+                          Duration healthCheckTimeout, int failureThreshold) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("The ChatClient pool '" + name + "' has no endpoints.");
+        }
+        this.name = name;
+        this.endpoints = List.copyOf(endpoints);
+        this.numCtx = numCtx;
+        this.numPredict = numPredict;
+        this.webClient = webClientBuilder.build();
+        this.healthCheckTimeout = healthCheckTimeout;
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Runs a call on the selected endpoint's ChatClient. The endpoint is selected when the returned Mono is subscribed,
+     * and counts as in flight until the call completes, fails or is cancelled. Subscribe only once the call may run,
+     * i.e., inside {@code JobQueueService.limit(Backend.LLM, ...)}, so the selection sees the calls that are actually running.
+     */
+    public <T> Mono<T> execute(Function<ChatClient, Mono<T>> call) {
+        return Mono.defer(() -> {
+            Endpoint endpoint = select();
+            endpoint.inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            return call.apply(endpoint.chatClient)
+                    .doOnSuccess(result -> {
+                        endpoint.consecutiveFailures.set(0);
+                        endpoint.recordLatency(Duration.ofNanos(System.nanoTime() - start).toMillis());
+                    })
+                    .doOnError(e -> {
+                        if (isEndpointFailure(e)) {
+                            recordFailure(endpoint, e);
+                        }
+                    })
+                    .doFinally(signal -> endpoint.inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * @return The healthy endpoint with the fewest calls in flight, preferring the lowest average latency on ties.
+     */
+    Endpoint select() {
+        List<Endpoint> candidates = endpoints.stream().filter(Endpoint::isHealthy).toList();
+        if (candidates.isEmpty()) {
+            log.warn("Every endpoint of the ChatClient pool '{}' is unhealthy. Trying all of them.", name);
+            candidates = endpoints;
+        }
+        return candidates.stream()
+                .min(Comparator.<Endpoint>comparingInt(endpoint -> endpoint.inFlight.get())
+                        .thenComparingDouble(Endpoint::getAverageLatencyMillis))
+                .orElseThrow();
+    }
+
+    /**
+     * Asks every endpoint for its version, ejecting the ones that do not answer and re-admitting the ones that do.
+     */
+    @Scheduled(fixedDelayString = "${spring.ai.pool.health-check-interval-ms:15000}")
+    public void checkHealth() {
+        Flux.fromIterable(endpoints)
+                .flatMap(endpoint -> webClient.get()
+                        .uri(endpoint.baseUrl + "/api/version")
+                        .retrieve()
+                        .toBodilessEntity()
+                        .timeout(healthCheckTimeout)
+                        .map(response -> true)
+                        .onErrorResume(e -> {
+                            log.debug("Health check of {} failed: {}", endpoint.baseUrl, e.getMessage());
+                            return Mono.just(false);
+                        })
+                        .doOnNext(healthy -> updateHealth(endpoint, healthy)))
+                .blockLast(healthCheckTimeout.multipliedBy(2));
+    }
+
+    private void updateHealth(Endpoint endpoint, boolean healthy) {
+        if (healthy) {
+            endpoint.consecutiveFailures.set(0);
+        }
+        if (endpoint.healthy != healthy) {
+            endpoint.healthy = healthy;
+            if (healthy) {
+                log.info("Endpoint {} of the ChatClient pool '{}' passed its health check and is back in rotation.", endpoint.baseUrl, name);
+            }
+            else {
+                log.warn("Endpoint {} of the ChatClient pool '{}' failed its health check and was ejected.", endpoint.baseUrl, name);
+            }
+        }
+    }
+
+    private void recordFailure(Endpoint endpoint, Throwable error) {
+        int failures = endpoint.consecutiveFailures.incrementAndGet();
+        if (failures >= failureThreshold && endpoint.healthy) {
+            endpoint.healthy = false;
+            log.warn("Endpoint {} of the ChatClient pool '{}' was ejected after {} consecutive failures. Last error: {}",
+                    endpoint.baseUrl, name, failures, error.getMessage());
+        }
+    }
+
+    /**
+     * @return Whether the error, or any of its causes, means the server could not be reached or failed, rather than the response being invalid.
+     */
+    private static boolean isEndpointFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientRequestException || cause instanceof ConnectException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof WebClientResponseException response && response.getStatusCode().is5xxServerError()) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.language_learning.ai.config;
+
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Sizes the LLM permits of the job queue to the Ollama servers behind the ChatClient pools, so every added server
+ * adds capacity. Each server may run {@code app.job-queue.permits.llm-per-server} model calls at once, whichever models
+ * they are for. Since the pools pick the least busy server once a permit is granted, no server gets more than its share
+ * while all of them are healthy.
+ */
+@Component
+@Slf4j
+public class OllamaServerPermits {
+
+    public OllamaServerPermits(
+            Map<String, ChatClientPool> chatClientPools,
+            JobQueueService jobQueueService,
+            @Value("${app.job-queue.permits.llm-per-server:2}") int permitsPerServer
+    ) {
+        long servers = chatClientPools.values().stream()
+                .flatMap(pool -> pool.getEndpoints().stream())
+                .map(ChatClientPool.Endpoint::getBaseUrl)
+                .distinct()
+                .count();
+        log.info("Found {} Ollama server(s) with {} LLM permit(s) each.", servers, permitsPerServer);
+        jobQueueService.setPermits(Backend.LLM, (int) (servers * Math.max(1, permitsPerServer)));
+    }
+}
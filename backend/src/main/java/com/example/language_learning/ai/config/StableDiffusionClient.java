@@ -2,6 +2,7 @@ package com.example.language_learning.ai.config;
 
 import com.example.language_learning.ai.config.model.StableDiffusionImageResponse;
 import com.example.language_learning.ai.config.properties.StableDiffusionProperties;
+import com.example.language_learning.ai.enums.ImageQuality;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.MediaType;
@@ -11,9 +12,7 @@ import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
 import java.time.Duration;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -27,20 +26,31 @@ public class StableDiffusionClient {
     }
 
     public StableDiffusionImageResponse promptTextToImage(String prompt) {
+        return promptTextToImage(prompt, ImageQuality.FULL);
+    }
+
+    /**
+     * Generates a single image of the prompt. A preview uses the preview's size and steps instead of the configured ones.
+     */
+    public StableDiffusionImageResponse promptTextToImage(String prompt, ImageQuality quality) {
 
         // Combine the main prompt with the configured styles into a single string.
         // This is the correct way to apply dynamic styles and LoRAs with the API.
-        String fullPrompt = prompt + ", " + String.join(", ", properties.image().options().styles());
+        String styles = String.join(", ", properties.image().options().styles());
+        String fullPrompt = prompt + ", " + styles;
+        StableDiffusionProperties.Options options = properties.image().options();
+        StableDiffusionProperties.Preview preview = properties.image().preview();
+        boolean isPreview = quality == ImageQuality.PREVIEW && preview != null;
 
         Map<String, Object> requestBody = Map.of(
                 "prompt", fullPrompt,
-                "steps", properties.image().options().steps(),
-                "width", properties.image().options().width(),
-                "height", properties.image().options().height(),
-                "batch_size", properties.image().options().batchSize(),
-                "negative_prompt", properties.image().options().negativePrompt(),
-                "cfg_scale", properties.image().options().cfgScale(),
-                "sampler_name", properties.image().options().samplerName()
+                "steps", isPreview ? preview.steps() : options.steps(),
+                "width", isPreview ? preview.width() : options.width(),
+                "height", isPreview ? preview.height() : options.height(),
+                "batch_size", 1,
+                "negative_prompt", options.negativePrompt(),
+                "cfg_scale", options.cfgScale(),
+                "sampler_name", options.samplerName()
         );
         log.info("Image Request Body: {}", requestBody);
         
@@ -56,9 +66,9 @@ public class StableDiffusionClient {
                         }
                         else {
                             log.error("Received error response from image API: {}", response.statusCode());
-                            return response.bodyToMono(String.class)
-                                    .doOnNext(body -> log.error("Error body: {}", body))
-                                    .then(Mono.error(new RuntimeException("Image API returned status: " + response.statusCode())));
+                            return response.createException()
+                                    .doOnNext(e -> log.error("Error body: {}", e.getResponseBodyAsString()))
+                                    .flatMap(Mono::error);
                         }
                     })
                     .block(Duration.ofMinutes(5)); // Add a generous 5-minute timeout for image generation
@@ -68,4 +78,5 @@ public class StableDiffusionClient {
             throw new RuntimeException("Failed to generate image for prompt: " + prompt, e);
         }
     }
+
 }
@@ -1,25 +1,56 @@
 package com.example.language_learning.ai.config;
 
 import com.example.language_learning.ai.config.model.StableDiffusionImageResponse;
-import lombok.RequiredArgsConstructor;
+import com.example.language_learning.ai.config.properties.StableDiffusionProperties;
+import com.example.language_learning.ai.enums.ImageQuality;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.image.*;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Generates the images of an {@link ImagePrompt} with Stable Diffusion, one txt2img call per instruction.
+ * <p>
+ * The API's {@code batch_size} is not used: it only renders several images of a single prompt, while every image of a
+ * story has a prompt of its own. Faster stories come from rendering different prompts concurrently instead
+ * (see {@code AIEngine#streamImages}).
+ * <p>
+ * Images can also be rendered as fast previews with the configured preview size and steps.
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class StableDiffusionImageModel implements ImageModel {
     private final StableDiffusionClient client;
+    private final boolean previewEnabled;
+
+    public StableDiffusionImageModel(StableDiffusionClient client, StableDiffusionProperties properties) {
+        this.client = client;
+        this.previewEnabled = properties.image().preview() != null && properties.image().preview().enabled();
+    }
+
+    /**
+     * @return Whether images are first rendered as previews.
+     */
+    public boolean isPreviewEnabled() {
+        return previewEnabled;
+    }
 
     @Override
     public ImageResponse call(ImagePrompt prompt) {
+        return call(prompt, ImageQuality.FULL);
+    }
+
+    /**
+     * @return One image per instruction that could be rendered, in the order of the instructions.
+     */
+    public ImageResponse call(ImagePrompt prompt, ImageQuality quality) {
         List<ImageGeneration> allImageGenerations = new ArrayList<>();
         for (ImageMessage message : prompt.getInstructions()) {
-            StableDiffusionImageResponse response = client.promptTextToImage(message.getText());
+            StableDiffusionImageResponse response = client.promptTextToImage(message.getText(), quality);
 
-            if (!response.getImages().isEmpty()) {
+            if (response.getImages() != null && !response.getImages().isEmpty()) {
                 Image image = new Image(response.getImages().getFirst(), "data:image/png;base64," + response.getImages().getFirst());
                 allImageGenerations.add(new ImageGeneration(image));
             }
@@ -6,5 +6,5 @@ import lombok.Builder;
 import java.util.Map;
 
 @Builder
-public record AIAsset(String modelName, Map<PromptType, AIPrompt> prompts) {
-}
\ No newline at end of file
+public record AIAsset(String modelName, Map<PromptType, AIPrompt> prompts, Map<PromptType, ModelRoute> routes) {
+}
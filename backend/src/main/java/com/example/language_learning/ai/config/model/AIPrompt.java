@@ -1,9 +1,22 @@
 package com.example.language_learning.ai.config.model;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.networknt.schema.JsonSchema;
 import lombok.Builder;
-import org.springframework.core.io.Resource;
 
+import java.util.Map;
+
+/**
+ * The instruction template and response schema of a single prompt.
+ * The instruction template and the schema are compiled and rendered once when the prompts are loaded,
+ * so generation requests only look them up and render the template with their own parameters.
+ *
+ * @param instruction The compiled instruction template.
+ * @param schema The raw schema.
+ * @param compiledSchema The compiled validator for the schema. It is thread-safe and shared by all requests.
+ * @param schemaText The pretty-printed schema that is embedded in the user message.
+ * @param schemaFormat The schema as a map, which is passed to Ollama's {@code format} option to constrain decoding.
+ */
 @Builder
-public record AIPrompt(Resource instruction, JsonNode schema) {
-}
\ No newline at end of file
+public record AIPrompt(CompiledPromptTemplate instruction, JsonNode schema, JsonSchema compiledSchema, String schemaText, Map<String, Object> schemaFormat) {
+}
@@ -0,0 +1,106 @@
+package com.example.language_learning.ai.config.model;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenStream;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.compiler.FormalArgument;
+import org.stringtemplate.v4.compiler.STException;
+import org.stringtemplate.v4.compiler.STLexer;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+
+import java.util.*;
+
+/**
+ * An instruction template that is read and compiled once, using the same {@code {variable}} syntax as Spring AI's PromptTemplate.
+ * <p>
+ * The template's variables are declared as formal arguments of the compiled template, so rendering only creates a new
+ * instance that shares the compiled template and never modifies it. That makes a single instance safe to render from
+ * concurrent requests.
+ */
+public final class CompiledPromptTemplate {
+    private static final String TEMPLATE_NAME = "/prompt";
+
+    private final String name;
+    private final STGroup group;
+    private final Set<String> variables;
+
+    private CompiledPromptTemplate(String name, STGroup group, Set<String> variables) {
+        this.name = name;
+        this.group = group;
+        this.variables = variables;
+    }
+
+    /**
+     * @param name The name of the template (e.g., its file name), used in error messages.
+     * @param template The template text.
+     */
+    public static CompiledPromptTemplate compile(String name, String template) {
+        ErrorBuffer errors = new ErrorBuffer();
+        STGroup group = new STGroup('{', '}');
+        group.setListener(errors);
+
+        Set<String> variables;
+        CompiledST compiled;
+        try {
+            variables = findVariables(new ST(group, template));
+            List<FormalArgument> arguments = new ArrayList<>();
+            variables.forEach(variable -> arguments.add(new FormalArgument(variable)));
+            // Compiled directly rather than through STGroup.defineTemplate, which trims a leading and a trailing newline
+            // that Spring AI's PromptTemplate keeps.
+            compiled = group.compile(group.getFileName(), TEMPLATE_NAME, arguments, template, null);
+        }
+        catch (STException e) {
+            throw new IllegalArgumentException("Invalid prompt template " + name + ": " + errors, e);
+        }
+        if (!errors.errors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid prompt template " + name + ": " + errors);
+        }
+        compiled.name = TEMPLATE_NAME;
+        group.rawDefineTemplate(TEMPLATE_NAME, compiled, null);
+        compiled.defineImplicitlyDefinedTemplates(group);
+        return new CompiledPromptTemplate(name, group, Collections.unmodifiableSet(variables));
+    }
+
+    /**
+     * Renders the template with the given parameters. Parameters that the template does not use are ignored.
+     *
+     * @throws IllegalStateException if a variable of the template has no parameter.
+     */
+    public String render(Map<String, Object> params) {
+        ST st = group.getInstanceOf(TEMPLATE_NAME);
+        List<String> missing = new ArrayList<>();
+        for (String variable : variables) {
+            if (!params.containsKey(variable)) {
+                missing.add(variable);
+                continue;
+            }
+            st.add(variable, params.get(variable));
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Prompt template " + name + " is missing values for the variables: " + missing);
+        }
+        return st.render();
+    }
+
+    public Set<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Collects the names of the attributes referenced by the template, i.e., every identifier that directly follows an opening delimiter.
+     */
+    private static Set<String> findVariables(ST st) {
+        Set<String> variables = new LinkedHashSet<>();
+        TokenStream tokens = st.impl.tokens;
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            Token token = tokens.get(i);
+            Token next = tokens.get(i + 1);
+            if (token.getType() == STLexer.LDELIM && next.getType() == STLexer.ID) {
+                variables.add(next.getText());
+            }
+        }
+        return variables;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.language_learning.ai.config.model;
+
+import com.example.language_learning.ai.enums.ModelTier;
+
+/**
+ * The model a prompt of one language runs on.
+ *
+ * @param tier The tier of the model, used to group metrics.
+ * @param clientName The name of the ChatClient bean for the model.
+ */
+public record ModelRoute(ModelTier tier, String clientName) {
+}
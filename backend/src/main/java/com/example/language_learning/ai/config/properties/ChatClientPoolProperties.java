@@ -0,0 +1,13 @@
+package com.example.language_learning.ai.config.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * @param failureThreshold The number of consecutive connection failures after which an Ollama server is ejected from its pool.
+ * @param healthCheckTimeout How long a server may take to answer a health check.
+ */
+@ConfigurationProperties(prefix = "spring.ai.pool")
+public record ChatClientPoolProperties(int failureThreshold, Duration healthCheckTimeout) {
+}
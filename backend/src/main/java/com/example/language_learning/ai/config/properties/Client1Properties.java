@@ -2,8 +2,22 @@ package com.example.language_learning.ai.config.properties;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * @param baseUrl The Ollama server of the client.
+ * @param baseUrls Further Ollama servers serving the same model, whose load is balanced with the first one.
+ */
 @ConfigurationProperties(prefix = "spring.ai.ollama1")
-public record Client1Properties(String baseUrl, ChatProperties chat) {
+public record Client1Properties(String baseUrl, List<String> baseUrls, ChatProperties chat) {
     public record ChatProperties(String model, Options options) {}
-    public record Options(String format, int numCtx, int numPredict, double temperature) {}
+    public record Options(String format, int numCtx, int numPredict, double temperature, String keepAlive) {}
+
+    public List<String> allBaseUrls() {
+        return Stream.concat(Stream.of(baseUrl), (baseUrls != null) ? baseUrls.stream() : Stream.empty())
+                .filter(url -> url != null && !url.isBlank())
+                .distinct()
+                .toList();
+    }
 }
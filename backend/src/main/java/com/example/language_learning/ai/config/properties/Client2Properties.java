@@ -5,5 +5,5 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "spring.ai.ollama2")
 public record Client2Properties(String baseUrl, ChatProperties chat) {
     public record ChatProperties(String model, Options options) {}
-    public record Options(String format, int numCtx, int numPredict, double temperature) {}
+    public record Options(String format, int numCtx, int numPredict, double temperature, String keepAlive) {}
 }*/
@@ -0,0 +1,12 @@
+package com.example.language_learning.ai.config.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * The small model that light prompts are routed to. It runs on the same Ollama server as client 1.
+ */
+@ConfigurationProperties(prefix = "spring.ai.ollama-light")
+public record LightClientProperties(ChatProperties chat) {
+    public record ChatProperties(String model, Options options) {}
+    public record Options(String format, int numCtx, int numPredict, double temperature, String keepAlive) {}
+}
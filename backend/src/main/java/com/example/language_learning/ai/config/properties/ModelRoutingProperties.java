@@ -0,0 +1,15 @@
+package com.example.language_learning.ai.config.properties;
+
+import com.example.language_learning.ai.enums.ModelTier;
+import com.example.language_learning.ai.enums.PromptType;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * @param lightClient The ChatClient bean for the light tier. If blank, every prompt runs on the language's heavy model.
+ * @param overrides Per language, the prompt types whose tier differs from {@link PromptType#getDefaultTier()}.
+ */
+@ConfigurationProperties(prefix = "spring.ai.routing")
+public record ModelRoutingProperties(String lightClient, Map<String, Map<PromptType, ModelTier>> overrides) {
+}
@@ -0,0 +1,19 @@
+package com.example.language_learning.ai.config.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "spring.ai.sizing")
+public record PromptSizingProperties(
+    boolean enabled,
+    Tokenizer tokenizer,
+    int minNumPredict,
+    double percentile,
+    double headroom,
+    int window,
+    int minSamples
+) {
+    /**
+     * The {@code tokenizer.json} of a Hugging Face repository at a pinned revision, and the SHA-256 it must have.
+     */
+    public record Tokenizer(String endpoint, String repository, String revision, String sha256) {}
+}
@@ -6,18 +6,25 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "spring.ai.stablediffusion")
 public record StableDiffusionProperties (
     String baseUrl,
+    int concurrency,
     Image image
 )   {
-    public record Image(Options options) {}
+    public record Image(Options options, Preview preview) {}
     public record Options(
             String model,
             int width,
             int height,
             int steps,
-            int batchSize,
             String negativePrompt,
             double cfgScale,
             String samplerName,
             List<String> styles
     ) {}
+    // A fast render shown until the full-quality image is ready. Everything not set here is shared with the full render.
+    public record Preview(
+            boolean enabled,
+            int width,
+            int height,
+            int steps
+    ) {}
 }
@@ -1,18 +1,22 @@
 package com.example.language_learning.ai.contexts;
 
+import com.example.language_learning.ai.components.StreamedItemListener;
+import com.example.language_learning.ai.config.ChatClientPool;
 import com.example.language_learning.ai.config.model.AIPrompt;
+import com.example.language_learning.ai.config.model.ModelRoute;
 import com.fasterxml.jackson.databind.JavaType;
-import org.springframework.ai.chat.client.ChatClient;
 
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 public record AIGenerationContext (
-    ChatClient chatClient,
+    ChatClientPool chatClientPool,
+    ModelRoute modelRoute,
     Map<String, Object> params,
     AIPrompt aiPrompt,
     JavaType apiDtoType,
     int maxRetries,
     AtomicInteger attemptCounter,
     boolean withModeration,
-    String language
+    String language,
+    StreamedItemListener streamedItemListener
 ) {}
@@ -1,7 +1,10 @@
 package com.example.language_learning.ai.contexts;
 
+import com.example.language_learning.lessonbook.chapter.ChapterMetadataDTO;
 import com.example.language_learning.lessonbook.chapter.LessonChapter;
-import com.example.language_learning.lessonbook.chapter.lesson.data.Lesson;
+import com.example.language_learning.shared.enums.LessonType;
+import com.example.language_learning.lessonbook.chapter.lesson.dtos.LessonDTO;
+import com.example.language_learning.lessonbook.chapter.lesson.dtos.VocabularyLessonDTO;
 import com.example.language_learning.lessonbook.requests.ChapterGenerationRequest;
 import com.example.language_learning.user.User;
 import lombok.Getter;
@@ -9,11 +12,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * The context object that holds all the data that persists across all states of the lessonChapter generation process.
+ * The context object that holds all the data that persists across all steps of the lessonChapter generation process.
+ * Independent steps of the generation workflow run concurrently, so every field written by more than one step
+ * must be thread-safe. Fields written by a single step are only read by the steps that depend on it.
+ * <p>
+ * The outputs of the generation steps are kept as DTOs, so they can be checkpointed and restored when a job is retried.
  */
 @Getter
 @Setter
@@ -24,6 +32,58 @@ public class ChapterGenerationContext {
     private final String taskId;
     private final Long chapterId;
     private final User user;
-    private LessonChapter lessonChapter;
-    private List<Lesson> lessonsToPersist = new ArrayList<>();
-}
\ No newline at end of file
+    private volatile LessonChapter lessonChapter;
+    private volatile ChapterMetadataDTO metadata;
+    private volatile VocabularyLessonDTO vocabularyLesson;
+    private volatile LessonType specificLessonType;
+    private volatile LessonDTO specificLesson;
+    // Keyed by lesson type, so each persist step can pick up the lesson it is responsible for.
+    @ToString.Exclude
+    private final Map<LessonType, LessonDTO> generatedLessons = new ConcurrentSkipListMap<>();
+    @ToString.Exclude
+    private final AtomicInteger progress = new AtomicInteger();
+
+    /**
+     * The checkpointed output of the vocabulary step, which also decides which specific lesson follows.
+     */
+    public record VocabularyCheckpoint(VocabularyLessonDTO lesson, LessonType specificLessonType) {}
+
+    public void addLesson(LessonDTO lesson) {
+        generatedLessons.put(lesson.type(), lesson);
+    }
+
+    public LessonDTO getLesson(LessonType type) {
+        return generatedLessons.get(type);
+    }
+
+    public VocabularyCheckpoint captureVocabulary() {
+        return new VocabularyCheckpoint(vocabularyLesson, specificLessonType);
+    }
+
+    public void restoreVocabulary(VocabularyCheckpoint checkpoint) {
+        this.vocabularyLesson = checkpoint.lesson();
+        this.specificLessonType = checkpoint.specificLessonType();
+        addLesson(checkpoint.lesson());
+    }
+
+    public void restoreSpecificLesson(LessonDTO lesson) {
+        this.specificLesson = lesson;
+        addLesson(lesson);
+    }
+
+    /**
+     * Raises the reported progress to the given value, ignoring it if a concurrently running step has already reported further progress.
+     * @return true if the progress was advanced and an update should be sent.
+     */
+    public boolean advanceProgress(int value) {
+        return progress.getAndAccumulate(value, Math::max) < value;
+    }
+
+    /**
+     * Raises the reported progress to at least the given value for an update that must be sent regardless, such as a new page.
+     * @return The progress to report, which may be higher than the given value if a concurrently running step has already reported further progress.
+     */
+    public int reportProgress(int value) {
+        return progress.accumulateAndGet(value, Math::max);
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.language_learning.ai.enums;
+
+/**
+ * How an image is rendered. A preview is a fast, low-step render that is shown until the full-quality image replaces it.
+ */
+public enum ImageQuality {
+    PREVIEW,
+    FULL
+}
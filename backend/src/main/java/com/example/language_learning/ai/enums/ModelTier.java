@@ -0,0 +1,10 @@
+package com.example.language_learning.ai.enums;
+
+/**
+ * The size of model a prompt needs. Short prompts with small responses run on a light model,
+ * while long structured generations run on the language's heavy model.
+ */
+public enum ModelTier {
+    LIGHT,
+    HEAVY
+}
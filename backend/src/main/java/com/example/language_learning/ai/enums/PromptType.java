@@ -7,21 +7,22 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public enum PromptType {
     // Lessonbook prompts
-    LESSON_METADATA("lessons/metadata", "chapter_metadata"),
-    VOCABULARY_LESSON("lessons/vocabulary", "vocabulary_lesson"),
-    GRAMMAR_LESSON("lessons/grammar", "grammar_lesson"),
-    CONJUGATION_LESSON("lessons/conjugation", "conjugation_lesson"),
-    PRACTICE_LESSON("lessons/practice", "practice_lesson"),
-    READING_COMPREHENSION_LESSON("lessons/reading", "reading_comprehension_lesson"),
+    LESSON_METADATA("lessons/metadata", "chapter_metadata", ModelTier.LIGHT),
+    VOCABULARY_LESSON("lessons/vocabulary", "vocabulary_lesson", ModelTier.HEAVY),
+    GRAMMAR_LESSON("lessons/grammar", "grammar_lesson", ModelTier.HEAVY),
+    CONJUGATION_LESSON("lessons/conjugation", "conjugation_lesson", ModelTier.HEAVY),
+    PRACTICE_LESSON("lessons/practice", "practice_lesson", ModelTier.HEAVY),
+    READING_COMPREHENSION_LESSON("lessons/reading", "reading_comprehension_lesson", ModelTier.HEAVY),
 
     // Storybook prompts
-    STORY_METADATA("storybook/metadata", "story_metadata"),
-    STORY_PAGES("storybook/pages", "story_pages"),
+    STORY_METADATA("storybook/metadata", "story_metadata", ModelTier.LIGHT),
+    STORY_PAGES("storybook/pages", "story_pages", ModelTier.HEAVY),
 
     // Shared prompts
-    TRANSLATE("translation", "translation"),
-    PROOFREAD("proofread", "proofread");
+    TRANSLATE("translation", "translation", ModelTier.LIGHT),
+    PROOFREAD("proofread", "proofread", ModelTier.LIGHT);
 
     private final String category;
     private final String fileName;
+    private final ModelTier defaultTier;
 }
@@ -0,0 +1,55 @@
+package com.example.language_learning.ai.services;
+
+import com.example.language_learning.ai.enums.ModelTier;
+import com.example.language_learning.ai.enums.PromptType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Records latency and response validity per model tier, so the routing of prompt types to tiers can be checked against real requests.
+ */
+@Service
+@RequiredArgsConstructor
+public class AIGenerationMetrics {
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * The result of validating one attempt's response.
+     */
+    public enum Validity {
+        VALID,
+        SANITIZED,
+        INVALID,
+        UNPARSEABLE,
+        ABORTED
+    }
+
+    /**
+     * Records the total duration of a generation, including all of its retries.
+     */
+    public void recordGeneration(ModelTier tier, String clientName, PromptType promptType, Duration duration, boolean completed) {
+        Timer.builder("ai.generation.duration")
+                .description("Duration of AI generations, including retries")
+                .tag("tier", tier.name())
+                .tag("client", clientName)
+                .tag("promptType", promptType.name())
+                .tag("outcome", completed ? "completed" : "failed")
+                .register(meterRegistry)
+                .record(duration);
+    }
+
+    /**
+     * Counts the validity of a single attempt's response.
+     */
+    public void recordAttempt(ModelTier tier, PromptType promptType, Validity validity) {
+        meterRegistry.counter("ai.generation.attempts",
+                "tier", tier.name(),
+                "promptType", promptType.name(),
+                "validity", validity.name().toLowerCase())
+                .increment();
+    }
+}
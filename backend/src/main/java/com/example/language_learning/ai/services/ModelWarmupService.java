@@ -0,0 +1,181 @@
+package com.example.language_learning.ai.services;
+
+import com.example.language_learning.ai.config.ChatClientPool;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Loads every model into memory on every Ollama server at startup, so the first generation does not pay the model's load time.
+ * <p>
+ * Each endpoint of each ChatClient pool gets a minimal request that generates a single token. The same request is sent
+ * on a schedule during business hours, so Ollama's {@code keep_alive} never unloads a model that is about to be used.
+ * Endpoints whose warm-up failed are retried until they succeed. Readiness waits for the warm-up through the
+ * {@code ollamaModels} health indicator.
+ */
+@Service
+@Slf4j
+public class ModelWarmupService {
+    private static final String WARMUP_PROMPT = "Reply with an empty JSON object.";
+
+    private final Map<String, ChatClientPool> chatClientPools;
+    private final Map<String, EndpointStatus> statuses = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final Duration timeout;
+    private volatile boolean finished;
+
+    /**
+     * The result of the latest warm-up of one endpoint.
+     *
+     * @param warm Whether the latest warm-up succeeded.
+     * @param lastWarmed When the endpoint last answered a warm-up, or null if it never did.
+     * @param durationMillis How long the latest warm-up took, which includes loading the model if it was not in memory.
+     * @param error The error of the latest warm-up, or null if it succeeded.
+     */
+    public record EndpointStatus(boolean warm, Instant lastWarmed, long durationMillis, String error) {}
+
+    public ModelWarmupService(
+            Map<String, ChatClientPool> chatClientPools,
+            @Value("${spring.ai.warmup.enabled:true}") boolean enabled,
+            @Value("${spring.ai.warmup.timeout:120s}") Duration timeout
+    ) {
+        this.chatClientPools = chatClientPools;
+        this.enabled = enabled;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Warms up every endpoint in the background, so the application finishes starting while the models load.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void warmUpOnStartup() {
+        if (!enabled) {
+            log.info("Model warm-up is disabled.");
+            finished = true;
+            return;
+        }
+        log.info("Warming up {} model(s) on their Ollama servers...", chatClientPools.size());
+        warmUp(key -> true)
+                .doFinally(signal -> {
+                    finished = true;
+                    log.info("Model warm-up finished.");
+                })
+                .subscribe();
+    }
+
+    /**
+     * Keeps the models in memory during business hours by resetting Ollama's keep-alive timer on every endpoint.
+     */
+    @Scheduled(cron = "${spring.ai.warmup.keep-warm-cron:0 */10 8-19 * * MON-FRI}")
+    public void keepWarm() {
+        if (enabled && finished) {
+            warmUp(key -> true).block();
+        }
+    }
+
+    /**
+     * Retries the endpoints whose latest warm-up failed, e.g., because their server was still starting.
+     */
+    @Scheduled(fixedDelayString = "${spring.ai.warmup.retry-interval-ms:60000}")
+    public void retryCold() {
+        if (enabled && finished) {
+            warmUp(key -> {
+                EndpointStatus status = statuses.get(key);
+                return status == null || !status.warm();
+            }).block();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Whether the warm-up at startup has finished, whether or not it succeeded everywhere.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return The warm-up status of every endpoint of the pool, by base URL.
+     */
+    public Map<String, EndpointStatus> getStatuses(ChatClientPool pool) {
+        Map<String, EndpointStatus> poolStatuses = new LinkedHashMap<>();
+        for (ChatClientPool.Endpoint endpoint : pool.getEndpoints()) {
+            EndpointStatus status = statuses.get(key(pool, endpoint));
+            if (status != null) {
+                poolStatuses.put(endpoint.getBaseUrl(), status);
+            }
+        }
+        return poolStatuses;
+    }
+
+    public Collection<ChatClientPool> getPools() {
+        return chatClientPools.values();
+    }
+
+    /**
+     * Warms up the endpoints whose key matches the filter, all of them in parallel.
+     */
+    private Mono<Void> warmUp(Predicate<String> filter) {
+        List<Map.Entry<ChatClientPool, ChatClientPool.Endpoint>> targets = chatClientPools.values().stream()
+                .flatMap(pool -> pool.getEndpoints().stream().map(endpoint -> Map.entry(pool, endpoint)))
+                .filter(target -> filter.test(key(target.getKey(), target.getValue())))
+                .toList();
+        return Flux.fromIterable(targets)
+                .flatMap(target -> warmUp(target.getKey(), target.getValue()))
+                .then();
+    }
+
+    private Mono<Void> warmUp(ChatClientPool pool, ChatClientPool.Endpoint endpoint) {
+        String key = key(pool, endpoint);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return Mono.fromCallable(() -> endpoint.getChatClient().prompt()
+                            .user(WARMUP_PROMPT)
+                            .options(OllamaOptions.builder().numPredict(1).build())
+                            .call()
+                            .content())
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .timeout(timeout)
+                    .doOnSuccess(content -> {
+                        long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                        EndpointStatus previous = statuses.get(key);
+                        if (previous == null || !previous.warm()) {
+                            log.info("Model '{}' is warm on {} after {} ms.", pool.getName(), endpoint.getBaseUrl(), millis);
+                        }
+                        statuses.put(key, new EndpointStatus(true, Instant.now(), millis, null));
+                    })
+                    .onErrorResume(e -> {
+                        long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                        log.warn("Could not warm up model '{}' on {}: {}", pool.getName(), endpoint.getBaseUrl(), e.getMessage());
+                        EndpointStatus previous = statuses.get(key);
+                        Instant lastWarmed = (previous != null) ? previous.lastWarmed() : null;
+                        statuses.put(key, new EndpointStatus(false, lastWarmed, millis, e.getMessage()));
+                        return Mono.empty();
+                    })
+                    .then();
+        });
+    }
+
+    private static String key(ChatClientPool pool, ChatClientPool.Endpoint endpoint) {
+        return pool.getName() + "@" + endpoint.getBaseUrl();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.language_learning.ai.services;
+
+import com.example.language_learning.ai.config.ChatClientPool;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports the warm-up of the models as the {@code ollamaModels} health component, which is part of the readiness group.
+ * <p>
+ * It is OUT_OF_SERVICE while the startup warm-up runs, UP once every model is warm on at least one server, and DOWN otherwise.
+ */
+@Component
+@RequiredArgsConstructor
+public class OllamaModelsHealthIndicator implements HealthIndicator {
+    private final ModelWarmupService modelWarmupService;
+
+    @Override
+    public Health health() {
+        if (!modelWarmupService.isEnabled()) {
+            return Health.up().withDetail("warmup", "disabled").build();
+        }
+        if (!modelWarmupService.isFinished()) {
+            return Health.outOfService().withDetail("warmup", "in progress").build();
+        }
+        boolean allWarm = true;
+        Map<String, Object> details = new LinkedHashMap<>();
+        for (ChatClientPool pool : modelWarmupService.getPools()) {
+            Map<String, ModelWarmupService.EndpointStatus> statuses = modelWarmupService.getStatuses(pool);
+            allWarm &= statuses.values().stream().anyMatch(ModelWarmupService.EndpointStatus::warm);
+            details.put(pool.getName(), statuses);
+        }
+        return (allWarm ? Health.up() : Health.down()).withDetails(details).build();
+    }
+}
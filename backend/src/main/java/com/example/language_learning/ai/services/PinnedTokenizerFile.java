@@ -0,0 +1,83 @@
+package com.example.language_learning.ai.services;
+
+import com.example.language_learning.ai.config.properties.PromptSizingProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+
+/**
+ * Resolves a tokenizer file of a Hugging Face repository at a pinned revision, and keeps it in a local cache (DJL's cache
+ * directory in production).
+ * <p>
+ * The file is only used if its SHA-256 matches the configured checksum, whether it was just downloaded or found in the
+ * cache, so every node counts tokens with exactly the same tokenizer.
+ */
+@Slf4j
+final class PinnedTokenizerFile {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final Path cacheDir;
+
+    PinnedTokenizerFile(HttpClient httpClient, Path cacheDir) {
+        this.httpClient = httpClient;
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @return The path of the verified tokenizer file in the cache.
+     * @throws IOException If the file could not be downloaded, or its checksum does not match.
+     */
+    Path resolve(PromptSizingProperties.Tokenizer tokenizer) throws IOException, InterruptedException {
+        Path file = cacheDir.resolve("tokenizers").resolve(tokenizer.repository()).resolve(tokenizer.revision()).resolve("tokenizer.json");
+        if (Files.exists(file)) {
+            if (sha256(file).equalsIgnoreCase(tokenizer.sha256())) {
+                return file;
+            }
+            log.warn("The cached tokenizer {} does not match its checksum. Downloading it again.", file);
+        }
+
+        Files.createDirectories(file.getParent());
+        URI uri = URI.create(tokenizer.endpoint() + "/" + tokenizer.repository() + "/resolve/" + tokenizer.revision() + "/tokenizer.json");
+        Path download = Files.createTempFile(file.getParent(), "tokenizer", ".download");
+        try {
+            log.info("Downloading the tokenizer for prompt sizing from {}.", uri);
+            HttpResponse<Path> response = httpClient.send(HttpRequest.newBuilder(uri).timeout(TIMEOUT).GET().build(),
+                    HttpResponse.BodyHandlers.ofFile(download));
+            if (response.statusCode() != 200) {
+                throw new IOException("Downloading " + uri + " failed with status " + response.statusCode() + ".");
+            }
+            String checksum = sha256(download);
+            if (!checksum.equalsIgnoreCase(tokenizer.sha256())) {
+                throw new IOException("The tokenizer downloaded from " + uri + " has the SHA-256 " + checksum + " instead of " + tokenizer.sha256() + ".");
+            }
+            return Files.move(download, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(download);
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        try (DigestInputStream in = new DigestInputStream(Files.newInputStream(file), MessageDigest.getInstance("SHA-256"))) {
+            in.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(in.getMessageDigest().digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.language_learning.ai.services;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.util.Utils;
+import com.example.language_learning.ai.config.properties.PromptSizingProperties;
+import com.example.language_learning.ai.enums.PromptType;
+import com.example.language_learning.shared.exceptions.AIEngineException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sizes {@code num_predict} for each request instead of sending the same large value for every prompt.
+ * <p>
+ * {@code num_predict} comes from a percentile of the output lengths recently observed for the prompt type, bounded by the
+ * model's configured {@code num_predict}. {@code num_ctx} is never changed per request: Ollama reloads a model whenever
+ * {@code num_ctx} changes, so every request keeps the context window the model was configured and warmed up with.
+ * Prompt tokens are counted with the model's own tokenizer, pinned to a revision and checksum and cached in DJL's cache
+ * directory, only to check that the prompt and the output fit that window.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class PromptSizingService {
+    /**
+     * The tokens the chat template adds around the messages, e.g., role markers.
+     */
+    private static final int CHAT_TEMPLATE_TOKENS = 64;
+
+    private final PromptSizingProperties properties;
+    private final Map<PromptType, OutputLengths> outputLengths = new ConcurrentHashMap<>();
+
+    @Value("classpath:prompts/system/system_prompt.txt")
+    private Resource systemPrompt;
+
+    private HuggingFaceTokenizer tokenizer;
+    private int systemPromptTokens;
+
+    @PostConstruct
+    public void init() throws Exception {
+        if (!properties.enabled()) {
+            log.info("Prompt sizing is disabled. Requests use the client's default num_predict.");
+            return;
+        }
+        if (properties.tokenizer() != null) {
+            this.tokenizer = loadTokenizer(properties.tokenizer());
+        }
+        else {
+            log.warn("No tokenizer is configured for prompt sizing. Prompt tokens will be estimated from their length instead.");
+        }
+        this.systemPromptTokens = countTokens(systemPrompt.getContentAsString(StandardCharsets.UTF_8));
+    }
+
+    private HuggingFaceTokenizer loadTokenizer(PromptSizingProperties.Tokenizer pinned) throws InterruptedException {
+        try {
+            Path file = new PinnedTokenizerFile(HttpClient.newHttpClient(), Utils.getCacheDir()).resolve(pinned);
+            log.info("Loading tokenizer for prompt sizing: {}", file);
+            return HuggingFaceTokenizer.newInstance(file, Map.of("truncation", "false", "padding", "false"));
+        }
+        catch (IOException e) {
+            log.error("Could not load the tokenizer of {} at revision {}. Prompt tokens will be estimated from their length instead.",
+                    pinned.repository(), pinned.revision(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Counts the tokens of the text. Without a tokenizer, the count is a conservative estimate of one token per two characters.
+     */
+    public int countTokens(String text) {
+        if (tokenizer == null) {
+            return (text.length() + 1) / 2;
+        }
+        return tokenizer.encode(text, false, false).getIds().length;
+    }
+
+    /**
+     * @param prompt Everything sent to the model besides the system prompt, i.e., the user message and any partial output being continued.
+     * @param minNumPredict A lower bound for {@code num_predict}, e.g., after a response of this prompt type was truncated.
+     * @param numCtx The model's fixed context window.
+     * @param defaultNumPredict The model's configured {@code num_predict}, used until enough outputs have been observed and as their upper bound.
+     * @return The {@code num_predict} for the request, or empty if sizing is disabled.
+     * @throws AIEngineException If the prompt leaves less than {@code min-num-predict} tokens of the context window for the output.
+     */
+    public Optional<Integer> sizeNumPredict(PromptType promptType, String prompt, int minNumPredict, int numCtx, int defaultNumPredict) {
+        if (!properties.enabled()) {
+            return Optional.empty();
+        }
+        int numPredict = Math.max(predictOutputTokens(promptType, defaultNumPredict), minNumPredict);
+        int promptTokens = systemPromptTokens + countTokens(prompt) + CHAT_TEMPLATE_TOKENS;
+        int available = numCtx - promptTokens;
+        if (available < properties.minNumPredict()) {
+            throw new AIEngineException("The prompt for " + promptType + " takes about " + promptTokens + " tokens, which leaves only "
+                    + Math.max(available, 0) + " of the model's " + numCtx + " token context for the response.");
+        }
+        if (numPredict > available) {
+            log.warn("The prompt for {} takes about {} tokens of the model's {} token context. Limiting num_predict from {} to {}.",
+                    promptType, promptTokens, numCtx, numPredict, available);
+            numPredict = available;
+        }
+        return Optional.of(numPredict);
+    }
+
+    /**
+     * Records how many tokens a complete response of the prompt type took.
+     */
+    public void recordOutput(PromptType promptType, int evalCount) {
+        if (evalCount > 0) {
+            outputLengths.computeIfAbsent(promptType, type -> new OutputLengths(properties.window())).add(evalCount);
+        }
+    }
+
+    /**
+     * Until enough responses have been observed, the model's configured {@code num_predict} is used, as before sizing existed.
+     */
+    private int predictOutputTokens(PromptType promptType, int defaultNumPredict) {
+        OutputLengths lengths = outputLengths.get(promptType);
+        if (lengths == null || lengths.size() < properties.minSamples()) {
+            return defaultNumPredict;
+        }
+        int predicted = (int) Math.ceil(lengths.percentile(properties.percentile()) * properties.headroom());
+        return Math.clamp(predicted, Math.min(properties.minNumPredict(), defaultNumPredict), defaultNumPredict);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (tokenizer != null) {
+            tokenizer.close();
+        }
+    }
+
+    /**
+     * The most recent output lengths of one prompt type, in a fixed-size ring.
+     */
+    private static final class OutputLengths {
+        private final int[] values;
+        private int next;
+        private int size;
+
+        private OutputLengths(int window) {
+            this.values = new int[window];
+        }
+
+        private synchronized void add(int value) {
+            values[next] = value;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized int percentile(double percentile) {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return sorted[Math.clamp(index, 0, size - 1)];
+        }
+    }
+}
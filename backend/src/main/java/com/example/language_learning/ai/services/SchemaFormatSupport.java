@@ -0,0 +1,75 @@
+package com.example.language_learning.ai.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks which chat clients reject a JSON schema as Ollama's {@code format}, e.g., because their server runs an older
+ * Ollama version that only accepts {@code "json"}.
+ * <p>
+ * Only a bad request that names the format or the schema counts as a rejection, so errors such as a model that has not
+ * been pulled yet or a rate limit never turn off constrained decoding. A client that rejected the format is tried with it
+ * again after {@code spring.ai.schema-format-retry-after}, in case its server has been upgraded in the meantime.
+ */
+@Component
+@Slf4j
+public class SchemaFormatSupport {
+    private final Duration retryAfter;
+    private final Clock clock;
+    private final Map<ChatClient, Instant> unsupportedUntil = new ConcurrentHashMap<>();
+
+    public SchemaFormatSupport(@Value("${spring.ai.schema-format-retry-after:PT30M}") Duration retryAfter) {
+        this(retryAfter, Clock.systemUTC());
+    }
+
+    SchemaFormatSupport(Duration retryAfter, Clock clock) {
+        this.retryAfter = retryAfter;
+        this.clock = clock;
+    }
+
+    /**
+     * @return Whether the client may be sent a schema format, i.e., it has not rejected one recently.
+     */
+    public boolean isSupported(ChatClient chatClient) {
+        Instant until = unsupportedUntil.get(chatClient);
+        if (until == null) {
+            return true;
+        }
+        if (clock.instant().isBefore(until)) {
+            return false;
+        }
+        if (unsupportedUntil.remove(chatClient, until)) {
+            log.info("Trying the JSON schema format again for a model that rejected it {} ago.", retryAfter);
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the error is the model's server rejecting the schema format.
+     */
+    public boolean isFormatRejected(Throwable error) {
+        if (!(error instanceof WebClientResponseException response) || response.getStatusCode().value() != HttpStatus.BAD_REQUEST.value()) {
+            return false;
+        }
+        String body = response.getResponseBodyAsString().toLowerCase(Locale.ROOT);
+        return body.contains("format") || body.contains("schema");
+    }
+
+    /**
+     * Sends the client plain JSON format requests until {@code spring.ai.schema-format-retry-after} has passed.
+     */
+    public void markUnsupported(ChatClient chatClient) {
+        unsupportedUntil.put(chatClient, clock.instant().plus(retryAfter));
+    }
+}
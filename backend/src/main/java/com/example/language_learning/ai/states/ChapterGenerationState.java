@@ -1,52 +1,20 @@
 package com.example.language_learning.ai.states;
 
-import com.example.language_learning.lessonbook.chapter.ChapterMetadataDTO;
-import com.example.language_learning.lessonbook.chapter.lesson.dtos.LessonDTO;
-import com.example.language_learning.lessonbook.chapter.lesson.dtos.VocabularyLessonDTO;
-import com.example.language_learning.shared.utils.StateMachine.TerminalState;
-
 /**
- * A sealed interface representing the distinct states of the lessonChapter generation process.
- * Each state can carry the specific, type-safe data needed for the next step in the workflow.
+ * A sealed interface representing the distinct steps of the lessonChapter generation process.
+ * The steps are executed by a {@link com.example.language_learning.shared.utils.DagWorkflow}, so they carry no data themselves;
+ * each step reads its inputs from, and writes its outputs to, the shared ChapterGenerationContext.
  */
 public sealed interface ChapterGenerationState {
     record INITIAL() implements ChapterGenerationState {}
     record METADATA() implements ChapterGenerationState {}
-    record VOCABULARY_LESSON(ChapterMetadataDTO metadataDto) implements ChapterGenerationState {}
-    record GRAMMAR_LESSON(VocabularyLessonDTO vocabularyDto) implements ChapterGenerationState {}
-    record CONJUGATION_LESSON(VocabularyLessonDTO vocabularyDto) implements ChapterGenerationState {}
-    record PRACTICE_LESSON(VocabularyLessonDTO vocabularyDto, LessonDTO specificLesson) implements ChapterGenerationState {}
-    record READING_LESSON(VocabularyLessonDTO vocabularyDto, LessonDTO specificLesson) implements ChapterGenerationState {}
-    record PERSIST_PAGES() implements ChapterGenerationState {}
-    record COMPLETED() implements ChapterGenerationState, TerminalState {}
-    record FAILED(String reason) implements ChapterGenerationState, TerminalState {}
-
-    static ChapterGenerationState INITIAL = new INITIAL();
-    static ChapterGenerationState METADATA = new METADATA();
-    static ChapterGenerationState PERSIST_PAGES = new PERSIST_PAGES();
-    static ChapterGenerationState COMPLETED = new COMPLETED();
-
-    public static ChapterGenerationState VOCABULARY_LESSON(ChapterMetadataDTO metadataDto) {
-        return new VOCABULARY_LESSON(metadataDto);
-    }
-
-    public static ChapterGenerationState GRAMMAR_LESSON(VocabularyLessonDTO vocabularyDto) {
-        return new GRAMMAR_LESSON(vocabularyDto);
-    }
-
-    public static ChapterGenerationState CONJUGATION_LESSON(VocabularyLessonDTO vocabularyDto) {
-        return new CONJUGATION_LESSON(vocabularyDto);
-    }
-
-    public static ChapterGenerationState PRACTICE_LESSON(VocabularyLessonDTO vocabularyDto, LessonDTO specificLesson) {
-        return new PRACTICE_LESSON(vocabularyDto, specificLesson);
-    }
-
-    public static ChapterGenerationState READING_LESSON(VocabularyLessonDTO vocabularyDto, LessonDTO specificLesson) {
-        return new READING_LESSON(vocabularyDto, specificLesson);
-    }
-
-    public static ChapterGenerationState FAILED(String reason) {
-        return new FAILED(reason);
-    }
-}
\ No newline at end of file
+    record VOCABULARY_LESSON() implements ChapterGenerationState {}
+    record GRAMMAR_LESSON() implements ChapterGenerationState {}
+    record CONJUGATION_LESSON() implements ChapterGenerationState {}
+    record PRACTICE_LESSON() implements ChapterGenerationState {}
+    record READING_LESSON() implements ChapterGenerationState {}
+    record PERSIST_VOCABULARY_PAGE() implements ChapterGenerationState {}
+    record PERSIST_SPECIFIC_PAGE() implements ChapterGenerationState {}
+    record PERSIST_PRACTICE_PAGE() implements ChapterGenerationState {}
+    record PERSIST_READING_PAGE() implements ChapterGenerationState {}
+}
@@ -1,5 +1,6 @@
 package com.example.language_learning.config;
 
+import com.example.language_learning.shared.exceptions.GenerationQueueFullException;
 import graphql.GraphQLError;
 import graphql.GraphqlErrorBuilder;
 import graphql.schema.DataFetchingEnvironment;
@@ -30,6 +31,14 @@ public class GraphQlExceptionConfig {
                             .build();
                 }
 
+                if (ex instanceof GenerationQueueFullException) {
+                    return GraphqlErrorBuilder.newError(env)
+                            .message(ex.getMessage())
+                            .errorType(ErrorType.BAD_REQUEST)
+                            .extensions(Map.of("classification", "QUEUE_FULL"))
+                            .build();
+                }
+
                 // For all other exceptions, log them in detail for debugging
                 log.error("Unhandled exception during GraphQL data fetching: Path [{}], Exception [{}], Message [{}]",
                         env.getExecutionStepInfo().getPath(), ex.getClass().getName(), ex.getMessage(), ex);
@@ -1,8 +1,12 @@
 package com.example.language_learning.config;
 
 import com.example.language_learning.ai.actions.AIGenerationActions;
+import com.example.language_learning.ai.actions.StoryGenerationActions;
 import com.example.language_learning.ai.contexts.AIGenerationContext;
+import com.example.language_learning.ai.contexts.StoryGenerationContext;
 import com.example.language_learning.ai.states.AIGenerationState;
+import com.example.language_learning.ai.states.StoryGenerationState;
+import com.example.language_learning.shared.jobs.GenerationCheckpoints;
 import com.example.language_learning.shared.utils.ReactiveStateMachine;
 import com.example.language_learning.shared.utils.ReactiveStateMachineFactory;
 import org.springframework.context.annotation.Bean;
@@ -23,4 +27,20 @@ public class ReactiveStateMachineConfig {
                 .build();
         return new ReactiveStateMachineFactory<>(actionMap, AIGenerationState.MODERATION);
     }
+
+    @Bean
+    ReactiveStateMachineFactory<StoryGenerationState, StoryGenerationContext> storyGenerationStateMachineFactory(StoryGenerationActions actions, GenerationCheckpoints checkpoints) {
+        var actionMap = new ReactiveStateMachine.GraphBuilder<StoryGenerationState, StoryGenerationContext>()
+                .addState(StoryGenerationState.INITIAL.class, actions::handleInitialGeneration)
+                .addState(StoryGenerationState.METADATA.class, actions::handleMetadataGeneration)
+                .addState(StoryGenerationState.STORY_GENERATION.class, actions::handleStoryGeneration)
+                .addState(StoryGenerationState.PERSIST_PAGES.class, actions::handlePersistPages)
+                .build();
+        // The initial state always runs to load the story into the context. A retried job then resumes from its last saved state.
+        var checkpointing = new ReactiveStateMachine.Checkpointing<>(
+                StoryGenerationState.class,
+                StoryGenerationState.INITIAL.class,
+                checkpoints.forWorkflow(StoryGenerationContext::getTaskId));
+        return new ReactiveStateMachineFactory<>(actionMap, StoryGenerationState.INITIAL, checkpointing);
+    }
 }
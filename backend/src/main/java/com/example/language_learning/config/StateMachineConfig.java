@@ -1,13 +1,14 @@
 package com.example.language_learning.config;
 
 import com.example.language_learning.ai.actions.ChapterGenerationActions;
-import com.example.language_learning.ai.actions.StoryGenerationActions;
 import com.example.language_learning.ai.contexts.ChapterGenerationContext;
-import com.example.language_learning.ai.contexts.StoryGenerationContext;
+import com.example.language_learning.ai.contexts.ChapterGenerationContext.VocabularyCheckpoint;
 import com.example.language_learning.ai.states.ChapterGenerationState;
-import com.example.language_learning.ai.states.StoryGenerationState;
-import com.example.language_learning.shared.utils.StateMachine;
-import com.example.language_learning.shared.utils.StateMachineFactory;
+import com.example.language_learning.lessonbook.chapter.ChapterMetadataDTO;
+import com.example.language_learning.lessonbook.chapter.lesson.dtos.LessonDTO;
+import com.example.language_learning.shared.enums.LessonType;
+import com.example.language_learning.shared.jobs.GenerationCheckpoints;
+import com.example.language_learning.shared.utils.DagWorkflow;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -15,31 +16,51 @@ import org.springframework.context.annotation.Configuration;
 public class StateMachineConfig {
 
     @Bean
-    public StateMachineFactory<ChapterGenerationState, ChapterGenerationContext> chapterGenerationStateMachineFactory(ChapterGenerationActions actions) {
-        var actionMap =
-                new StateMachine.GraphBuilder<ChapterGenerationState, ChapterGenerationContext>()
-                        .addState(ChapterGenerationState.INITIAL.class, actions::handleInitialGeneration)
-                        .addState(ChapterGenerationState.METADATA.class, actions::handleMetadataGeneration)
-                        .addState(ChapterGenerationState.VOCABULARY_LESSON.class, actions::handleVocabularyGeneration)
-                        .addState(ChapterGenerationState.GRAMMAR_LESSON.class, actions::handleGrammarGeneration)
-                        .addState(ChapterGenerationState.CONJUGATION_LESSON.class, actions::handleConjugationGeneration)
-                        .addState(ChapterGenerationState.PRACTICE_LESSON.class, actions::handlePracticeGeneration)
-                        .addState(ChapterGenerationState.READING_LESSON.class, actions::handleReadingGeneration)
-                        .addState(ChapterGenerationState.PERSIST_PAGES.class, actions::handlePersistPages)
-                        .build();
-        return new StateMachineFactory<>(actionMap, ChapterGenerationState.INITIAL);
-    }
-
-    @Bean
-    public StateMachineFactory<StoryGenerationState, StoryGenerationContext> storyGenerationStateMachineFactory(StoryGenerationActions actions) {
-        var actionMap =
-                new StateMachine.GraphBuilder<StoryGenerationState, StoryGenerationContext>()
-                        .addState(StoryGenerationState.INITIAL.class, actions::handleInitialGeneration)
-                        .addState(StoryGenerationState.METADATA.class, actions::handleMetadataGeneration)
-                        .addState(StoryGenerationState.STORY_GENERATION.class, actions::handleStoryGeneration)
-                        .addState(StoryGenerationState.IMAGE_GENERATION.class, actions::handleImageGeneration)
-                        .addState(StoryGenerationState.PERSIST_PAGES.class, actions::handlePersistPages)
-                        .build();
-        return new StateMachineFactory<>(actionMap, StoryGenerationState.INITIAL);
+    public DagWorkflow<Class<? extends ChapterGenerationState>, ChapterGenerationContext> chapterGenerationWorkflow(ChapterGenerationActions actions, GenerationCheckpoints checkpoints) {
+        return new DagWorkflow.GraphBuilder<Class<? extends ChapterGenerationState>, ChapterGenerationContext>()
+                .addStep(ChapterGenerationState.INITIAL.class, actions::handleInitialGeneration)
+                .addStep(ChapterGenerationState.METADATA.class, actions::handleMetadataGeneration,
+                        ChapterGenerationState.INITIAL.class)
+                .addStep(ChapterGenerationState.VOCABULARY_LESSON.class, actions::handleVocabularyGeneration,
+                        ChapterGenerationState.METADATA.class)
+                .addConditionalStep(ChapterGenerationState.GRAMMAR_LESSON.class,
+                        context -> context.getSpecificLessonType() == LessonType.GRAMMAR,
+                        actions::handleGrammarGeneration,
+                        ChapterGenerationState.VOCABULARY_LESSON.class)
+                .addConditionalStep(ChapterGenerationState.CONJUGATION_LESSON.class,
+                        context -> context.getSpecificLessonType() == LessonType.CONJUGATION,
+                        actions::handleConjugationGeneration,
+                        ChapterGenerationState.VOCABULARY_LESSON.class)
+                // Practice and reading lessons are independent of each other, so they are generated in parallel.
+                .addStep(ChapterGenerationState.PRACTICE_LESSON.class, actions::handlePracticeGeneration,
+                        ChapterGenerationState.GRAMMAR_LESSON.class, ChapterGenerationState.CONJUGATION_LESSON.class)
+                .addStep(ChapterGenerationState.READING_LESSON.class, actions::handleReadingGeneration,
+                        ChapterGenerationState.GRAMMAR_LESSON.class, ChapterGenerationState.CONJUGATION_LESSON.class)
+                // Each page is persisted and streamed as soon as its lesson is ready. Every persist step also waits for the
+                // previous page, so pages are stored, and ordered by ID, in their canonical order even when reading finishes first.
+                .addStep(ChapterGenerationState.PERSIST_VOCABULARY_PAGE.class, actions::handlePersistVocabularyPage,
+                        ChapterGenerationState.VOCABULARY_LESSON.class)
+                .addStep(ChapterGenerationState.PERSIST_SPECIFIC_PAGE.class, actions::handlePersistSpecificPage,
+                        ChapterGenerationState.PERSIST_VOCABULARY_PAGE.class, ChapterGenerationState.GRAMMAR_LESSON.class, ChapterGenerationState.CONJUGATION_LESSON.class)
+                .addStep(ChapterGenerationState.PERSIST_PRACTICE_PAGE.class, actions::handlePersistPracticePage,
+                        ChapterGenerationState.PERSIST_SPECIFIC_PAGE.class, ChapterGenerationState.PRACTICE_LESSON.class)
+                .addStep(ChapterGenerationState.PERSIST_READING_PAGE.class, actions::handlePersistReadingPage,
+                        ChapterGenerationState.PERSIST_PRACTICE_PAGE.class, ChapterGenerationState.READING_LESSON.class)
+                // Every AI step saves its output, so a retried job only regenerates the steps that had not completed.
+                // The initial step always runs to load the chapter, and the persist steps skip pages that are already stored, so none of them is checkpointed.
+                .checkpoint(ChapterGenerationState.METADATA.class,
+                        new DagWorkflow.Checkpoint<>(ChapterMetadataDTO.class, ChapterGenerationContext::getMetadata, ChapterGenerationContext::setMetadata))
+                .checkpoint(ChapterGenerationState.VOCABULARY_LESSON.class,
+                        new DagWorkflow.Checkpoint<>(VocabularyCheckpoint.class, ChapterGenerationContext::captureVocabulary, ChapterGenerationContext::restoreVocabulary))
+                .checkpoint(ChapterGenerationState.GRAMMAR_LESSON.class,
+                        new DagWorkflow.Checkpoint<>(LessonDTO.class, ChapterGenerationContext::getSpecificLesson, ChapterGenerationContext::restoreSpecificLesson))
+                .checkpoint(ChapterGenerationState.CONJUGATION_LESSON.class,
+                        new DagWorkflow.Checkpoint<>(LessonDTO.class, ChapterGenerationContext::getSpecificLesson, ChapterGenerationContext::restoreSpecificLesson))
+                .checkpoint(ChapterGenerationState.PRACTICE_LESSON.class,
+                        new DagWorkflow.Checkpoint<>(LessonDTO.class, context -> context.getLesson(LessonType.PRACTICE), ChapterGenerationContext::addLesson))
+                .checkpoint(ChapterGenerationState.READING_LESSON.class,
+                        new DagWorkflow.Checkpoint<>(LessonDTO.class, context -> context.getLesson(LessonType.READING_COMPREHENSION), ChapterGenerationContext::addLesson))
+                .checkpointStore(checkpoints.forWorkflow(ChapterGenerationContext::getTaskId))
+                .build();
     }
 }
@@ -0,0 +1,11 @@
+package com.example.language_learning.lessonbook.chapter;
+
+import com.example.language_learning.lessonbook.requests.ChapterGenerationRequest;
+
+/**
+ * The data stored with a chapter generation job, enough to restart the generation on any node.
+ */
+public record ChapterGenerationJobPayload(
+    ChapterGenerationRequest request,
+    Long chapterId
+) {}
@@ -1,6 +1,7 @@
 package com.example.language_learning.lessonbook.chapter;
 
 import com.example.language_learning.user.User;
+import com.example.language_learning.user.UserRepository;
 import com.example.language_learning.shared.exceptions.PageGenerationException;
 import com.example.language_learning.shared.mapper.DtoMapper;
 import com.example.language_learning.lessonbook.requests.ChapterGenerationRequest;
@@ -9,27 +10,35 @@ import com.example.language_learning.ai.contexts.ChapterGenerationContext;
 import com.example.language_learning.ai.inputs.ChapterPrepInput;
 import com.example.language_learning.ai.outputs.ChapterPrepOutput;
 import com.example.language_learning.ai.states.ChapterGenerationState;
+import com.example.language_learning.lessonbook.chapter.lesson.page.LessonPageService;
+import com.example.language_learning.shared.jobs.GenerationJob;
+import com.example.language_learning.shared.jobs.GenerationJobHandler;
+import com.example.language_learning.shared.jobs.GenerationJobQueue;
+import com.example.language_learning.shared.jobs.GenerationJobType;
 import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
 import com.example.language_learning.shared.services.ProgressService;
-import com.example.language_learning.shared.utils.StateMachineFactory;
+import com.example.language_learning.shared.utils.DagWorkflow;
 import com.example.language_learning.shared.utils.SyncWorkflow;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionSynchronization;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class LessonChapterGenerationService {
+public class LessonChapterGenerationService implements GenerationJobHandler {
     private final SyncWorkflow<ChapterPrepInput, ChapterPrepOutput> chapterPrepWorkflow;
-    private final StateMachineFactory<ChapterGenerationState, ChapterGenerationContext> stateMachineFactory;
-    private final JobQueueService jobQueueService;
+    private final DagWorkflow<Class<? extends ChapterGenerationState>, ChapterGenerationContext> chapterGenerationWorkflow;
+    private final GenerationJobQueue generationJobQueue;
     private final ProgressService progressService;
+    private final JobQueueService jobQueueService;
     private final DtoMapper dtoMapper;
     private final LessonChapterService lessonChapterService;
+    private final LessonPageService lessonPageService;
+    private final UserRepository userRepository;
 
 
     @Transactional
@@ -41,14 +50,14 @@ public class LessonChapterGenerationService {
         // 2. Execute the synchronous workflow to prepare all necessary data.
         chapterPrepWorkflow.execute(input, output);
 
-        // 3. Kick off the lessonChapter generation pipeline to create the associated lesson lessonPages asynchronously
-        //    after the current transaction successfully commits
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-            @Override
-            public void afterCommit() {
-                generateChapterAsync(request, output.getTaskId(), output.getLessonChapter().getId(), user);
-            }
-        });
+        // 3. Enqueue the lessonChapter generation job to create the associated lesson lessonPages asynchronously.
+        //    The job is stored with the chapter, so it only becomes claimable once the current transaction commits.
+        generationJobQueue.enqueue(
+                GenerationJobType.CHAPTER_GENERATION,
+                output.getTaskId(),
+                user,
+                new ChapterGenerationJobPayload(request, output.getLessonChapter().getId())
+        );
 
         // 4. Immediately return the response to the user.
         return GenerationResponse.builder()
@@ -57,36 +66,46 @@ public class LessonChapterGenerationService {
                 .build();
     }
 
-    private void generateChapterAsync(ChapterGenerationRequest request, String taskId, Long chapterId, User user) {
-        // Asynchronously start the page(s) generation for the lessonChapter generation subscription
-        Runnable chapterGenerationJob = () -> {
-            ChapterGenerationContext context = new ChapterGenerationContext(request, taskId, chapterId, user);
+    @Override
+    public GenerationJobType jobType() {
+        return GenerationJobType.CHAPTER_GENERATION;
+    }
+
+    @Override
+    public Mono<Void> handle(GenerationJob job) {
+        ChapterGenerationJobPayload payload = generationJobQueue.readPayload(job, ChapterGenerationJobPayload.class);
+        return jobQueueService.submit(Backend.DB, () -> userRepository.findById(job.userId())
+                        .orElseThrow(() -> new IllegalStateException("User " + job.userId() + " for task " + job.taskId() + " no longer exists.")))
+                .flatMap(user -> generateChapterAsync(payload.request(), job.taskId(), payload.chapterId(), user));
+    }
 
-            var sm = stateMachineFactory.createInstance();
+    @Override
+    public void onFailed(GenerationJob job, Throwable cause) {
+        log.debug("DIAGNOSTIC: LessonChapterGenerationService - Failure handler entered for task {}.", job.taskId());
+        ChapterGenerationJobPayload payload = generationJobQueue.readPayload(job, ChapterGenerationJobPayload.class);
+        // Pages are persisted as soon as they are generated, so a chapter that failed late is kept with the pages it already has.
+        if (lessonPageService.hasPages(payload.chapterId())) {
+            log.info("Keeping chapter {} with its completed pages after generation failed for task {}.", payload.chapterId(), job.taskId());
+        }
+        else {
+            lessonChapterService.deleteChapter(payload.chapterId());
+        }
+        // The PageGenerationException is created to ensure a consistent exception type is logged.
+        Exception error = new PageGenerationException(cause.getMessage(), cause);
+        log.error("Chapter generation failed for task {}: {}", job.taskId(), error.getMessage(), error);
+        userRepository.findById(job.userId()).ifPresent(user -> progressService.sendError(job.taskId(), error, user));
+    }
 
-            try {
-                sm.runToCompletion(context)
-                    .onCompletion(ChapterGenerationState.COMPLETED.class, completed -> {
-                        progressService.sendCompletion(context.getTaskId(), "Chapter generation complete.", user);
-                        log.info("Chapter generation process completed successfully for task {}.", context.getTaskId());
-                    })
-                    .onError(ChapterGenerationState.FAILED.class, failedState -> {
-                        log.debug("DIAGNOSTIC: LessonChapterGenerationService - State machine .onError entered for task {}.", context.getTaskId());
-                        lessonChapterService.deleteChapter(chapterId);
-                        // The PageGenerationException is created to ensure a consistent exception type is logged.
-                        Exception error = new PageGenerationException(failedState.reason());
-                        log.error("Chapter generation failed for task {}: {}", context.getTaskId(), error.getMessage(), error);
-                        progressService.sendError(context.getTaskId(), error, user);
-                    })
-                    .execute();
-            }
-            catch (Exception e) {
-                // This catch block prevents the job thread from dying due to the exception re-thrown by .execute().
-                // The error message has already been sent by the state machine's .onError handler.
-                log.error("DIAGNOSTIC: LessonChapterGenerationService - Caught exception from state machine execution for task {}. Thread will terminate gracefully.", taskId, e);
-            }
-        };
+    private Mono<Void> generateChapterAsync(ChapterGenerationRequest request, String taskId, Long chapterId, User user) {
+        // Start the page(s) generation for the lessonChapter generation subscription.
+        // The workflow is non-blocking, so it only occupies a thread while a step is doing actual work.
+        // Failures are left to the job dispatcher, which retries the job from its checkpoints before giving up on it.
+        ChapterGenerationContext context = new ChapterGenerationContext(request, taskId, chapterId, user);
 
-        jobQueueService.submitJob(chapterGenerationJob);
+        return chapterGenerationWorkflow.run(context)
+                .doOnSuccess(ignored -> {
+                    progressService.sendCompletion(context.getTaskId(), "Chapter generation complete.", user);
+                    log.info("Chapter generation process completed successfully for task {}.", context.getTaskId());
+                });
     }
 }
@@ -42,15 +42,7 @@ public class LessonChapterGraphQlController {
         return progressService.getProgressUpdate(taskId, user)
                 .doOnSubscribe(sub -> {
                     log.info("User {} subscribed to Lesson Chapter Generation Task: {}", user.getUsername(), taskId);
-
-                    var latestUpdate = progressService.getLatestUpdate(taskId);
-                    if (latestUpdate != null && latestUpdate.userId().equals(user.getId())) {
-                        var sink = progressService.getSink(taskId);
-                        if (sink != null) {
-                            log.info("Emitting latest cached update for task {} to subscriber.", taskId);
-                            sink.tryEmitNext(latestUpdate.update());
-                        }
-                    }
+                    progressService.resendLatestUpdate(taskId, user);
                 })
                 .filter(update -> taskId.equals(update.taskId()))
                 .onErrorResume(error -> {
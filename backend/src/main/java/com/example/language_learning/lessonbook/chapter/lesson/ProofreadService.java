@@ -4,6 +4,8 @@ import com.example.language_learning.ai.AIEngine;
 import com.example.language_learning.ai.components.AIRequest;
 import com.example.language_learning.ai.enums.PromptType;
 import com.example.language_learning.lessonbook.chapter.lesson.page.question.LessonQuestionRepository;
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Priority;
 import com.example.language_learning.user.User;
 import com.example.language_learning.lessonbook.chapter.lesson.responses.PracticeLessonCheckResponse;
 import com.example.language_learning.lessonbook.chapter.lesson.requests.PracticeLessonCheckRequest;
@@ -39,6 +41,8 @@ public class ProofreadService {
                         .build();
 
                 return aiEngine.generate(aiRequest);
-            });
+            })
+            // A user is waiting on the result, so it is served ahead of background generation.
+            .contextWrite(JobQueueService.forUser(Priority.INTERACTIVE, user.getId()));
     }
 }
@@ -1,5 +1,6 @@
 package com.example.language_learning.lessonbook.chapter.lesson.page;
 
+import com.example.language_learning.shared.enums.LessonType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,5 +10,9 @@ import java.util.Optional;
 
 @Repository
 public interface LessonPageRepository extends JpaRepository<LessonPage, Long>, LessonPageRepositoryCustom {
-}
 
+    @Query("SELECT p FROM LessonPage p JOIN p.lesson l WHERE p.lessonChapter.id = :chapterId AND l.type = :type")
+    Optional<LessonPage> findByChapterIdAndLessonType(@Param("chapterId") Long chapterId, @Param("type") LessonType type);
+
+    boolean existsByLessonChapterId(Long chapterId);
+}
@@ -1,9 +1,16 @@
 package com.example.language_learning.lessonbook.chapter.lesson.page;
 
 import com.example.language_learning.lessonbook.chapter.LessonChapter;
+import com.example.language_learning.lessonbook.chapter.lesson.data.Lesson;
 
 import java.util.List;
 
 public interface LessonPageRepositoryCustom {
     void batchInsertPages(LessonChapter chapter, List<LessonPage> lessonPages);
+
+    /**
+     * Inserts a single page along with its lesson content.
+     * @return The ID of the new page.
+     */
+    Long insertPage(LessonChapter chapter, Lesson lesson);
 }
@@ -57,16 +57,7 @@ public class LessonPageRepositoryImpl implements LessonPageRepositoryCustom {
 
         // 1. Iterate through each page, persist its lesson content, and prepare the page record.
         for (LessonPage page : lessonPages) {
-            Lesson lesson = page.getLesson();
-            Long newLessonId = null;
-
-            switch (lesson.getType()) {
-                case VOCABULARY -> newLessonId = persistVocabularyLesson((VocabularyLesson) lesson, now);
-                case GRAMMAR -> newLessonId = persistGrammarLesson((GrammarLesson) lesson, now);
-                case CONJUGATION -> newLessonId = persistConjugationLesson((ConjugationLesson) lesson, now);
-                case PRACTICE -> newLessonId = persistPracticeLesson((PracticeLesson) lesson, now);
-                case READING_COMPREHENSION -> newLessonId = persistReadingLesson((ReadingComprehensionLesson) lesson, now);
-            }
+            Long newLessonId = persistLesson(page.getLesson(), now);
 
             if (newLessonId != null) {
                 LessonPageRecord pageRecord = dsl.newRecord(LESSON_PAGE);
@@ -83,6 +74,33 @@ public class LessonPageRepositoryImpl implements LessonPageRepositoryCustom {
         }
     }
 
+    @Override
+    @Transactional
+    public Long insertPage(LessonChapter chapter, Lesson lesson) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+        Long newLessonId = persistLesson(lesson, now);
+        if (newLessonId == null) {
+            return null;
+        }
+
+        LessonPageRecord newPageRecord = dsl.insertInto(LESSON_PAGE, LESSON_PAGE.LESSON_CHAPTER_ID, LESSON_PAGE.LESSON_ID, LESSON_PAGE.CREATED_AT)
+                .values(chapter.getId(), newLessonId, now)
+                .returning(LESSON_PAGE.ID)
+                .fetchOne();
+        return (newPageRecord != null) ? newPageRecord.getId() : null;
+    }
+
+    private Long persistLesson(Lesson lesson, LocalDateTime timestamp) {
+        return switch (lesson.getType()) {
+            case VOCABULARY -> persistVocabularyLesson((VocabularyLesson) lesson, timestamp);
+            case GRAMMAR -> persistGrammarLesson((GrammarLesson) lesson, timestamp);
+            case CONJUGATION -> persistConjugationLesson((ConjugationLesson) lesson, timestamp);
+            case PRACTICE -> persistPracticeLesson((PracticeLesson) lesson, timestamp);
+            case READING_COMPREHENSION -> persistReadingLesson((ReadingComprehensionLesson) lesson, timestamp);
+        };
+    }
+
     private Long persistBaseLesson(Lesson lesson, LocalDateTime timestamp) {
         LessonRecord newLessonRecord = dsl.insertInto(LESSON, LESSON.TITLE, LESSON.TYPE, LESSON.CREATED_AT)
                 .values(lesson.getTitle(), lesson.getType().name(), timestamp)
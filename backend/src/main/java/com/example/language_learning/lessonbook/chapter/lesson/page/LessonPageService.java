@@ -3,6 +3,7 @@ package com.example.language_learning.lessonbook.chapter.lesson.page;
 import com.example.language_learning.lessonbook.chapter.LessonChapter;
 import com.example.language_learning.lessonbook.chapter.lesson.data.Lesson;
 import com.example.language_learning.lessonbook.chapter.LessonChapterRepository;
+import com.example.language_learning.shared.mapper.DtoMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -17,6 +18,7 @@ public class LessonPageService {
 
     private final LessonPageRepository lessonPageRepository;
     private final LessonChapterRepository lessonChapterRepository;
+    private final DtoMapper dtoMapper;
 
     /**
      * Creates a new Page entity, links it to a lessonChapter and a lesson,
@@ -56,4 +58,27 @@ public class LessonPageService {
                 .collect(Collectors.toList());
         lessonPageRepository.batchInsertPages(managedLessonChapter, lessonPages);
     }
+
+    /**
+     * Persists the page for a single generated lesson and returns it as it was stored, including the IDs of its questions.
+     * A chapter holds at most one page per lesson type, so if a previous attempt of the generation job already persisted
+     * a page of this type, that page is returned instead of persisting the lesson again.
+     */
+    @Transactional
+    public LessonPageDTO persistLessonPage(LessonChapter lessonChapter, Lesson lesson) {
+        LessonPage lessonPage = lessonPageRepository.findByChapterIdAndLessonType(lessonChapter.getId(), lesson.getType())
+                .orElseGet(() -> {
+                    Long pageId = lessonPageRepository.insertPage(lessonChapter, lesson);
+                    if (pageId == null) {
+                        throw new IllegalStateException("Failed to insert the " + lesson.getType() + " page for chapter " + lessonChapter.getId());
+                    }
+                    return lessonPageRepository.findById(pageId)
+                            .orElseThrow(() -> new IllegalStateException("Page " + pageId + " was not found after it was inserted."));
+                });
+        return dtoMapper.toDto(lessonPage);
+    }
+
+    public boolean hasPages(Long chapterId) {
+        return lessonPageRepository.existsByLessonChapterId(chapterId);
+    }
 }
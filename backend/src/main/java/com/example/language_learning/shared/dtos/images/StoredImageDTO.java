@@ -0,0 +1,13 @@
+package com.example.language_learning.shared.dtos.images;
+
+/**
+ * An image saved to storage.
+ *
+ * @param url The URL of the image at its rendered resolution.
+ * @param srcset The image's size variants as an HTML {@code srcset} value, e.g., {@code "a-256w.jpg 256w, a.jpg 512w"},
+ *               or null if the image has no variants.
+ */
+public record StoredImageDTO(
+    String url,
+    String srcset
+) {}
@@ -0,0 +1,17 @@
+package com.example.language_learning.shared.exceptions;
+
+import lombok.Getter;
+
+/**
+ * Thrown into a streamed AI response to cancel it once the output can no longer become valid,
+ * so the model does not keep generating tokens that would be thrown away anyway.
+ */
+@Getter
+public class AIStreamAbortedException extends RuntimeException {
+    private final String partialResponse;
+
+    public AIStreamAbortedException(String message, String partialResponse) {
+        super(message);
+        this.partialResponse = partialResponse;
+    }
+}
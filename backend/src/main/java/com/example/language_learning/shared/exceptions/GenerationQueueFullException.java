@@ -0,0 +1,7 @@
+package com.example.language_learning.shared.exceptions;
+
+public class GenerationQueueFullException extends RuntimeException {
+    public GenerationQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.language_learning.shared.jobs;
+
+import lombok.RequiredArgsConstructor;
+import org.jooq.DSLContext;
+import org.jooq.JSONB;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static com.example.language_learning.generated.jooq.tables.GenerationCheckpoint.GENERATION_CHECKPOINT;
+
+/**
+ * jOOQ-based access to the checkpoints saved by generation jobs, one row per completed step of a task.
+ */
+@Repository
+@RequiredArgsConstructor
+public class GenerationCheckpointRepository {
+
+    private final DSLContext dsl;
+
+    public Optional<String> find(String taskId, String step) {
+        return dsl.select(GENERATION_CHECKPOINT.OUTPUT)
+                .from(GENERATION_CHECKPOINT)
+                .where(GENERATION_CHECKPOINT.TASK_ID.eq(taskId))
+                .and(GENERATION_CHECKPOINT.STEP.eq(step))
+                .fetchOptional(GENERATION_CHECKPOINT.OUTPUT)
+                .map(JSONB::data);
+    }
+
+    public void upsert(String taskId, String step, String output) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        dsl.insertInto(GENERATION_CHECKPOINT)
+                .set(GENERATION_CHECKPOINT.TASK_ID, taskId)
+                .set(GENERATION_CHECKPOINT.STEP, step)
+                .set(GENERATION_CHECKPOINT.OUTPUT, JSONB.valueOf(output))
+                .set(GENERATION_CHECKPOINT.CREATED_AT, now)
+                .set(GENERATION_CHECKPOINT.UPDATED_AT, now)
+                .onConflict(GENERATION_CHECKPOINT.TASK_ID, GENERATION_CHECKPOINT.STEP)
+                .doUpdate()
+                .set(GENERATION_CHECKPOINT.OUTPUT, JSONB.valueOf(output))
+                .set(GENERATION_CHECKPOINT.UPDATED_AT, now)
+                .execute();
+    }
+
+    public int deleteAll(String taskId) {
+        return dsl.deleteFrom(GENERATION_CHECKPOINT)
+                .where(GENERATION_CHECKPOINT.TASK_ID.eq(taskId))
+                .execute();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.language_learning.shared.jobs;
+
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
+import com.example.language_learning.shared.utils.WorkflowCheckpointStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Function;
+
+/**
+ * Stores the checkpoints of generation workflows as JSON in the database, keyed by the task id of their job.
+ * Checkpoints live as long as their job is in progress and are cleared once the job completes or is given up on.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class GenerationCheckpoints {
+
+    private final GenerationCheckpointRepository generationCheckpointRepository;
+    private final JobQueueService jobQueueService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Creates a checkpoint store for a workflow whose context carries the task id of its generation job.
+     */
+    public <C> WorkflowCheckpointStore<C> forWorkflow(Function<C, String> taskId) {
+        return new WorkflowCheckpointStore<>() {
+            @Override
+            public <T> Mono<T> load(C context, String step, Class<T> outputType) {
+                return jobQueueService.submit(Backend.DB, () -> generationCheckpointRepository.find(taskId.apply(context), step)
+                        .map(output -> read(output, outputType))
+                        .orElse(null));
+            }
+
+            @Override
+            public Mono<Void> save(C context, String step, Object output) {
+                return jobQueueService.submit(Backend.DB, () -> {
+                    generationCheckpointRepository.upsert(taskId.apply(context), step, objectMapper.writeValueAsString(output));
+                    log.debug("Saved checkpoint of step {} for task {}.", step, taskId.apply(context));
+                    return output;
+                }).then();
+            }
+        };
+    }
+
+    public void clear(String taskId) {
+        int deleted = generationCheckpointRepository.deleteAll(taskId);
+        if (deleted > 0) {
+            log.debug("Cleared {} checkpoint(s) for task {}.", deleted, taskId);
+        }
+    }
+
+    private <T> T read(String output, Class<T> outputType) {
+        try {
+            return objectMapper.readValue(output, outputType);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException("Could not read a checkpoint as " + outputType.getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.language_learning.shared.jobs;
+
+/**
+ * A generation job claimed from the durable job table.
+ *
+ * @param payload The serialized JSON payload describing the work, as written by the submitting service.
+ * @param attempts The number of times the job has been claimed, including the current claim.
+ */
+public record GenerationJob(Long id, GenerationJobType type, String taskId, Long userId, String payload, int attempts) {}
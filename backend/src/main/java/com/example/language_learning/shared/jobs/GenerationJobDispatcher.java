@@ -0,0 +1,244 @@
+package com.example.language_learning.shared.jobs;
+
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
+import com.example.language_learning.shared.services.JobQueueService.Priority;
+import com.example.language_learning.shared.services.ProgressService;
+import com.example.language_learning.shared.services.ReactiveJobExecutor;
+import com.example.language_learning.user.User;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Claims generation jobs from the durable job table and runs them with the matching {@link GenerationJobHandler}.
+ * <p>
+ * Each node claims at most {@code app.generation-jobs.max-concurrent} jobs at a time and holds a lease on each of them,
+ * which it renews while the job is running. If a node dies, its leases expire and the jobs are claimed again by
+ * another node (or by the same node after a restart). A job that fails is returned to the queue as well. Either way,
+ * a job is attempted up to {@code app.generation-jobs.max-attempts} times, resuming from the checkpoints saved by its
+ * earlier attempts, before its handler is told to give up on it.
+ * <p>
+ * Jobs are claimed fairly between users (see {@link GenerationJobRepository#claim}), and their backend calls run with
+ * {@link Priority#BACKGROUND} priority on behalf of their user. Users whose jobs were enqueued on this node are told
+ * how many jobs are ahead of theirs until their job is claimed.
+ */
+@Component
+@Slf4j
+public class GenerationJobDispatcher {
+
+    private final GenerationJobRepository generationJobRepository;
+    private final GenerationCheckpoints generationCheckpoints;
+    private final ReactiveJobExecutor reactiveJobExecutor;
+    private final JobQueueService jobQueueService;
+    private final ProgressService progressService;
+    private final Map<GenerationJobType, GenerationJobHandler> handlers;
+    private final String nodeId;
+    private final int maxConcurrentJobs;
+    private final int maxAttempts;
+    private final int maxRunningPerUser;
+    private final Duration leaseDuration;
+    /**
+     * The subscriptions of the jobs running on this node, by job id.
+     */
+    private final Map<Long, Disposable.Swap> runningJobs = new ConcurrentHashMap<>();
+    private final Map<String, QueuedTask> queuedTasks = new ConcurrentHashMap<>();
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+    private volatile boolean accepting = true;
+
+    public GenerationJobDispatcher(
+            GenerationJobRepository generationJobRepository,
+            GenerationCheckpoints generationCheckpoints,
+            ReactiveJobExecutor reactiveJobExecutor,
+            JobQueueService jobQueueService,
+            ProgressService progressService,
+            List<GenerationJobHandler> handlers,
+            @Value("${app.generation-jobs.node-id:}") String nodeId,
+            @Value("${app.generation-jobs.max-concurrent:10}") int maxConcurrentJobs,
+            @Value("${app.generation-jobs.max-attempts:3}") int maxAttempts,
+            @Value("${app.generation-jobs.max-running-per-user:1}") int maxRunningPerUser,
+            @Value("${app.generation-jobs.lease-duration:5m}") Duration leaseDuration
+    ) {
+        this.generationJobRepository = generationJobRepository;
+        this.generationCheckpoints = generationCheckpoints;
+        this.reactiveJobExecutor = reactiveJobExecutor;
+        this.jobQueueService = jobQueueService;
+        this.progressService = progressService;
+        this.handlers = handlers.stream().collect(Collectors.toMap(GenerationJobHandler::jobType, Function.identity()));
+        this.nodeId = (nodeId == null || nodeId.isBlank()) ? "node-" + UUID.randomUUID() : nodeId;
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.maxAttempts = maxAttempts;
+        this.maxRunningPerUser = maxRunningPerUser;
+        this.leaseDuration = leaseDuration;
+        log.info("Generation job dispatcher {} started for job types {}.", this.nodeId, this.handlers.keySet());
+    }
+
+    /**
+     * Claims jobs as soon as they are committed on this node, instead of waiting for the next poll.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onJobEnqueued(GenerationJobEnqueuedEvent event) {
+        log.debug("Job for task {} was enqueued. Polling for new jobs.", event.taskId());
+        queuedTasks.put(event.taskId(), new QueuedTask(event.user()));
+        jobQueueService.submitJob(Backend.DB, this::poll);
+    }
+
+    @Scheduled(fixedDelayString = "${app.generation-jobs.poll-interval-ms:2000}")
+    public void poll() {
+        if (!accepting || !polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            generationJobRepository.failAbandoned(maxAttempts).forEach(this::abandon);
+
+            int capacity = maxConcurrentJobs - runningJobs.size();
+            if (capacity > 0) {
+                List<GenerationJob> claimed = generationJobRepository.claim(nodeId, capacity, maxAttempts, maxRunningPerUser, leaseDuration);
+                if (!claimed.isEmpty()) {
+                    log.info("Node {} claimed {} generation job(s).", nodeId, claimed.size());
+                }
+                claimed.forEach(this::dispatch);
+            }
+            reportQueuePositions();
+        }
+        catch (Exception e) {
+            log.error("Failed to poll for generation jobs on node {}.", nodeId, e);
+        }
+        finally {
+            polling.set(false);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.generation-jobs.lease-renewal-interval-ms:60000}")
+    public void renewLeases() {
+        if (runningJobs.isEmpty()) {
+            return;
+        }
+        try {
+            int renewed = generationJobRepository.renewLeases(nodeId, Set.copyOf(runningJobs.keySet()), leaseDuration);
+            log.debug("Node {} renewed the lease on {} of {} running job(s).", nodeId, renewed, runningJobs.size());
+        }
+        catch (Exception e) {
+            log.error("Failed to renew generation job leases on node {}.", nodeId, e);
+        }
+    }
+
+    private void dispatch(GenerationJob job) {
+        GenerationJobHandler handler = handlers.get(job.type());
+        Mono<Void> execution = (handler == null)
+                ? Mono.error(new IllegalStateException("No handler registered for job type " + job.type()))
+                : Mono.defer(() -> handler.handle(job))
+                        .contextWrite(JobQueueService.forUser(Priority.BACKGROUND, job.userId()));
+
+        // Tracked before subscribing, since the job may finish (and stop being tracked) before subscribe returns.
+        Disposable.Swap subscription = Disposables.swap();
+        runningJobs.put(job.id(), subscription);
+        log.info("Starting {} job {} for task {} (attempt {}).", job.type(), job.id(), job.taskId(), job.attempts());
+
+        subscription.update(reactiveJobExecutor.submitBackgroundJob(execution)
+                .doFinally(signal -> runningJobs.remove(job.id(), subscription))
+                .subscribe(
+                        null,
+                        error -> jobQueueService.submitJob(Backend.DB, () -> onJobFailed(job, error)),
+                        () -> jobQueueService.submitJob(Backend.DB, () -> {
+                            log.info("{} job {} for task {} completed.", job.type(), job.id(), job.taskId());
+                            generationJobRepository.markCompleted(job.id(), nodeId);
+                            generationCheckpoints.clear(job.taskId());
+                        })
+                ));
+    }
+
+    private void onJobFailed(GenerationJob job, Throwable error) {
+        if (job.attempts() < maxAttempts) {
+            log.warn("{} job {} for task {} failed on attempt {} of {}. It will be retried: {}",
+                    job.type(), job.id(), job.taskId(), job.attempts(), maxAttempts, error.getMessage());
+            generationJobRepository.retry(job.id(), nodeId, error.getMessage());
+            return;
+        }
+        log.error("{} job {} for task {} failed on its final attempt: {}", job.type(), job.id(), job.taskId(), error.getMessage());
+        if (generationJobRepository.markFailed(job.id(), nodeId, error.getMessage())) {
+            giveUp(job, error);
+        }
+    }
+
+    /**
+     * Sends each waiting task on this node the number of jobs ahead of it, whenever that number changes.
+     * Tasks that are no longer queued, because this or another node has claimed them, stop being tracked.
+     */
+    private void reportQueuePositions() {
+        if (queuedTasks.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> jobsAhead = generationJobRepository.countQueuedAhead(Set.copyOf(queuedTasks.keySet()));
+        queuedTasks.keySet().retainAll(jobsAhead.keySet());
+        jobsAhead.forEach((taskId, ahead) -> {
+            QueuedTask task = queuedTasks.get(taskId);
+            if (task != null && task.lastReportedAhead != ahead) {
+                task.lastReportedAhead = ahead;
+                String message = (ahead == 0)
+                        ? "Waiting for a free generation slot..."
+                        : "Waiting in queue: " + ahead + " generation(s) ahead of yours...";
+                progressService.sendUpdate(taskId, 0, message, task.user);
+            }
+        });
+    }
+
+    private void abandon(GenerationJob job) {
+        log.error("{} job {} for task {} was abandoned after {} attempts.", job.type(), job.id(), job.taskId(), job.attempts());
+        jobQueueService.submitJob(Backend.DB, () -> giveUp(job,
+                new IllegalStateException("The job was interrupted " + job.attempts() + " times and has been abandoned.")));
+    }
+
+    private void giveUp(GenerationJob job, Throwable cause) {
+        GenerationJobHandler handler = handlers.get(job.type());
+        try {
+            if (handler != null) {
+                handler.onFailed(job, cause);
+            }
+        }
+        finally {
+            generationCheckpoints.clear(job.taskId());
+        }
+    }
+
+    private static final class QueuedTask {
+        private final User user;
+        private volatile int lastReportedAhead = -1;
+
+        private QueuedTask(User user) {
+            this.user = user;
+        }
+    }
+
+    /**
+     * Stops claiming new jobs, cancels the running ones and hands them back to the queue, so another node can resume them
+     * right away instead of waiting for their leases to expire. The jobs are cancelled first, so they stop calling the
+     * backends and saving checkpoints before another node claims them.
+     */
+    @PreDestroy
+    public void shutdown() {
+        accepting = false;
+        Map<Long, Disposable.Swap> running = Map.copyOf(runningJobs);
+        running.values().forEach(Disposable::dispose);
+        try {
+            int requeued = generationJobRepository.requeue(nodeId, running.keySet());
+            log.info("Node {} is shutting down. Returned {} running generation job(s) to the queue.", nodeId, requeued);
+        }
+        catch (Exception e) {
+            log.error("Failed to return running generation jobs to the queue on shutdown of node {}.", nodeId, e);
+        }
+    }
+}
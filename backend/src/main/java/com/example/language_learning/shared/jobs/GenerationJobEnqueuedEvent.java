@@ -0,0 +1,9 @@
+package com.example.language_learning.shared.jobs;
+
+import com.example.language_learning.user.User;
+
+/**
+ * Published when a job is written to the job table, so the local dispatcher can claim it without waiting for its next poll
+ * and keep the user informed of its position in the queue.
+ */
+public record GenerationJobEnqueuedEvent(String taskId, User user) {}
@@ -0,0 +1,25 @@
+package com.example.language_learning.shared.jobs;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Executes the generation jobs of a single {@link GenerationJobType} claimed by the {@link GenerationJobDispatcher}.
+ */
+public interface GenerationJobHandler {
+
+    GenerationJobType jobType();
+
+    /**
+     * Runs the job. The returned Mono should complete once the job has finished successfully, or error if it failed.
+     * A failed job is retried until it runs out of attempts, so this should not clean up after a failure.
+     * Workflows that checkpoint their steps resume from their last completed step when the job is retried.
+     */
+    Mono<Void> handle(GenerationJob job);
+
+    /**
+     * Called once a job has been given up on, either because it failed on its final attempt or because its lease
+     * expired too many times, e.g., because every node that claimed it crashed. Handlers should clean up any
+     * partially generated data and notify the user.
+     */
+    void onFailed(GenerationJob job, Throwable cause);
+}
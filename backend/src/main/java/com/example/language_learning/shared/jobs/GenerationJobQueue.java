@@ -0,0 +1,87 @@
+package com.example.language_learning.shared.jobs;
+
+import com.example.language_learning.shared.exceptions.GenerationQueueFullException;
+import com.example.language_learning.user.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+/**
+ * The entry point for submitting long-running generation work.
+ * Jobs are written to the durable job table, so they survive restarts and can be claimed by any backend node.
+ * When called inside a transaction, the job only becomes visible once that transaction commits.
+ * Each user may have at most {@code app.generation-jobs.max-queued-per-user} jobs queued or running at once.
+ */
+@Service
+@Slf4j
+public class GenerationJobQueue {
+
+    private final GenerationJobRepository generationJobRepository;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int maxQueuedPerUser;
+
+    public GenerationJobQueue(
+            GenerationJobRepository generationJobRepository,
+            ObjectMapper objectMapper,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${app.generation-jobs.max-queued-per-user:5}") int maxQueuedPerUser
+    ) {
+        this.generationJobRepository = generationJobRepository;
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.maxQueuedPerUser = maxQueuedPerUser;
+    }
+
+    /**
+     * The limit is checked and the job inserted while holding a lock on the user's row, so concurrent requests of the same
+     * user cannot both pass it.
+     *
+     * @throws GenerationQueueFullException If the user already has the maximum number of jobs queued or running.
+     */
+    public void enqueue(GenerationJobType type, String taskId, User user, Object payload) {
+        int active = generationJobRepository.insertIfBelowLimit(type, taskId, user.getId(), serialize(type, taskId, payload), maxQueuedPerUser);
+        if (active >= maxQueuedPerUser) {
+            log.warn("Rejected {} job for task {}: user {} already has {} job(s) queued or running.", type, taskId, user.getId(), active);
+            throw new GenerationQueueFullException("You already have " + active + " generations in progress. Please wait for one of them to finish.");
+        }
+
+        log.info("Enqueued {} job for task {}.", type, taskId);
+        eventPublisher.publishEvent(new GenerationJobEnqueuedEvent(taskId, user));
+    }
+
+    /**
+     * Enqueues a job that continues the work of a job that is already running, e.g., the images of a generated story.
+     * It does not count against the user's limit, since the user's original request was already admitted, and enqueueing
+     * the same task twice, e.g., from a retried job, is a no-op. The job is claimed on the dispatcher's next poll.
+     */
+    public void enqueueFollowUp(GenerationJobType type, String taskId, Long userId, Object payload) {
+        if (generationJobRepository.insertIfAbsent(type, taskId, userId, serialize(type, taskId, payload))) {
+            log.info("Enqueued follow-up {} job for task {}.", type, taskId);
+        }
+        else {
+            log.info("Follow-up {} job for task {} was already enqueued.", type, taskId);
+        }
+    }
+
+    public <T> T readPayload(GenerationJob job, Class<T> payloadType) {
+        try {
+            return objectMapper.readValue(job.payload(), payloadType);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read the payload of " + job.type() + " job " + job.taskId(), e);
+        }
+    }
+
+    private String serialize(GenerationJobType type, String taskId, Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize the payload for " + type + " job " + taskId, e);
+        }
+    }
+}
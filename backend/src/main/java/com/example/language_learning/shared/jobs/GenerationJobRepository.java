@@ -0,0 +1,341 @@
+package com.example.language_learning.shared.jobs;
+
+import com.example.language_learning.generated.jooq.tables.records.GenerationJobRecord;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.JSONB;
+import org.jooq.Record1;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.types.DayToSecond;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.language_learning.generated.jooq.tables.GenerationJob.GENERATION_JOB;
+import static com.example.language_learning.generated.jooq.tables.User.USER;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * jOOQ-based access to the durable generation job table.
+ * Jobs are claimed with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so any number of backend nodes can drain the same table
+ * without claiming a job twice. Claims lock the rows of the users they claim for, so per-user limits hold across nodes.
+ */
+@Repository
+@Slf4j
+@RequiredArgsConstructor
+public class GenerationJobRepository {
+
+    private final DSLContext dsl;
+
+    private void insert(GenerationJobType type, String taskId, Long userId, String payload) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        dsl.insertInto(GENERATION_JOB)
+                .set(GENERATION_JOB.JOB_TYPE, type.name())
+                .set(GENERATION_JOB.STATUS, GenerationJobStatus.QUEUED.name())
+                .set(GENERATION_JOB.TASK_ID, taskId)
+                .set(GENERATION_JOB.USER_ID, userId)
+                .set(GENERATION_JOB.PAYLOAD, JSONB.valueOf(payload))
+                .set(GENERATION_JOB.CREATED_AT, now)
+                .set(GENERATION_JOB.UPDATED_AT, now)
+                .execute();
+    }
+
+    /**
+     * Inserts the job unless the user already has {@code limit} jobs queued or running.
+     * <p>
+     * The user's row is locked with {@code SELECT ... FOR UPDATE} until the surrounding transaction commits, so concurrent
+     * requests of the same user, on any node, are admitted one at a time and cannot both pass the limit.
+     *
+     * @return The number of jobs the user had queued or running. The job was only inserted if this is below the limit.
+     */
+    @Transactional
+    public int insertIfBelowLimit(GenerationJobType type, String taskId, Long userId, String payload, int limit) {
+        dsl.select(USER.ID)
+                .from(USER)
+                .where(USER.ID.eq(userId))
+                .forUpdate()
+                .fetch();
+        int active = countActive(userId);
+        if (active < limit) {
+            insert(type, taskId, userId, payload);
+        }
+        return active;
+    }
+
+    /**
+     * Inserts the job unless a job with the same task id already exists.
+     *
+     * @return Whether the job was inserted.
+     */
+    public boolean insertIfAbsent(GenerationJobType type, String taskId, Long userId, String payload) {
+        LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+        return dsl.insertInto(GENERATION_JOB)
+                .set(GENERATION_JOB.JOB_TYPE, type.name())
+                .set(GENERATION_JOB.STATUS, GenerationJobStatus.QUEUED.name())
+                .set(GENERATION_JOB.TASK_ID, taskId)
+                .set(GENERATION_JOB.USER_ID, userId)
+                .set(GENERATION_JOB.PAYLOAD, JSONB.valueOf(payload))
+                .set(GENERATION_JOB.CREATED_AT, now)
+                .set(GENERATION_JOB.UPDATED_AT, now)
+                .onConflict(GENERATION_JOB.TASK_ID)
+                .doNothing()
+                .execute() > 0;
+    }
+
+    /**
+     * Atomically claims up to {@code limit} jobs for the given node.
+     * <p>
+     * Running jobs whose lease has expired, because the node that claimed them stopped renewing it, are reclaimed first.
+     * The remaining capacity is filled with queued jobs in a fair order: each queued job's turn is the number of jobs its
+     * user already has running plus its place among that user's queued jobs. Jobs are claimed by lowest turn, and then
+     * oldest first, so users take turns instead of one user's batch filling every slot, and no user gets more than
+     * {@code maxRunningPerUser} jobs running at once. Reclaimed jobs take their turns the same way, counting only the
+     * user's jobs whose lease is still live.
+     * <p>
+     * The rows of the users with claimable jobs are locked first, in id order, like {@link #insertIfBelowLimit} does.
+     * Nodes claiming at the same time therefore count and claim one after the other for a shared user, and cannot
+     * together push that user past {@code maxRunningPerUser}.
+     */
+    @Transactional
+    public List<GenerationJob> claim(String owner, int limit, int maxAttempts, int maxRunningPerUser, Duration lease) {
+        Condition expiredLease = GENERATION_JOB.STATUS.eq(GenerationJobStatus.RUNNING.name())
+                .and(GENERATION_JOB.LEASE_EXPIRES_AT.lt(currentOffsetDateTime()));
+        dsl.select(USER.ID)
+                .from(USER)
+                .where(USER.ID.in(select(GENERATION_JOB.USER_ID)
+                        .from(GENERATION_JOB)
+                        .where(GENERATION_JOB.STATUS.eq(GenerationJobStatus.QUEUED.name()).or(expiredLease))
+                        .and(GENERATION_JOB.ATTEMPTS.lt(maxAttempts))))
+                .orderBy(USER.ID)
+                .forUpdate()
+                .fetch();
+
+        var expiredJob = GENERATION_JOB.as("expired");
+        var live = GENERATION_JOB.as("live");
+        Field<Integer> liveForUser = field(selectCount()
+                .from(live)
+                .where(live.USER_ID.eq(expiredJob.USER_ID))
+                .and(live.STATUS.eq(GenerationJobStatus.RUNNING.name()))
+                .and(live.LEASE_EXPIRES_AT.ge(currentOffsetDateTime())));
+        var fairlyExpired = fairTurns(expiredJob, liveForUser,
+                expiredJob.STATUS.eq(GenerationJobStatus.RUNNING.name())
+                        .and(expiredJob.LEASE_EXPIRES_AT.lt(currentOffsetDateTime()))
+                        .and(expiredJob.ATTEMPTS.lt(maxAttempts)),
+                maxRunningPerUser, limit);
+        List<GenerationJob> claimed = new ArrayList<>(markClaimed(owner, lease, fairlyExpired));
+        if (claimed.size() >= limit) {
+            return claimed;
+        }
+
+        // Expired jobs that were not reclaimed still count as running, since they are reclaimed once their user's turn comes.
+        var queued = GENERATION_JOB.as("queued");
+        var running = GENERATION_JOB.as("running");
+        Field<Integer> runningForUser = field(selectCount()
+                .from(running)
+                .where(running.USER_ID.eq(queued.USER_ID))
+                .and(running.STATUS.eq(GenerationJobStatus.RUNNING.name())));
+        var fairlyQueued = fairTurns(queued, runningForUser,
+                queued.STATUS.eq(GenerationJobStatus.QUEUED.name()).and(queued.ATTEMPTS.lt(maxAttempts)),
+                maxRunningPerUser, limit - claimed.size());
+        claimed.addAll(markClaimed(owner, lease, fairlyQueued));
+        return claimed;
+    }
+
+    /**
+     * Selects and locks up to {@code limit} of the candidate jobs, by lowest turn and then oldest first. A job's turn is
+     * its user's running jobs plus its place among the user's candidates, and only jobs whose turn is within
+     * {@code maxRunningPerUser} are selected.
+     */
+    private Select<Record1<Long>> fairTurns(com.example.language_learning.generated.jooq.tables.GenerationJob candidate,
+                                            Field<Integer> runningForUser, Condition isCandidate, int maxRunningPerUser, int limit) {
+        Table<?> candidates = select(
+                        candidate.ID,
+                        rowNumber().over(partitionBy(candidate.USER_ID).orderBy(candidate.CREATED_AT.asc())).plus(runningForUser).as("turn"))
+                .from(candidate)
+                .where(isCandidate)
+                .asTable("candidates");
+        Field<Long> candidateId = candidates.field(candidate.ID);
+        Field<Integer> turn = candidates.field("turn", Integer.class);
+
+        return dsl.select(GENERATION_JOB.ID)
+                .from(GENERATION_JOB)
+                .join(candidates).on(candidateId.eq(GENERATION_JOB.ID))
+                .where(turn.le(maxRunningPerUser))
+                .orderBy(turn.asc(), GENERATION_JOB.CREATED_AT.asc())
+                .limit(limit)
+                .forUpdate()
+                .of(GENERATION_JOB)
+                .skipLocked();
+    }
+
+    /**
+     * @return The number of jobs the user has queued or running.
+     */
+    public int countActive(Long userId) {
+        return dsl.fetchCount(GENERATION_JOB, GENERATION_JOB.USER_ID.eq(userId)
+                .and(GENERATION_JOB.STATUS.in(GenerationJobStatus.QUEUED.name(), GenerationJobStatus.RUNNING.name())));
+    }
+
+    /**
+     * @return For each of the given tasks that is still queued, the number of queued jobs that were submitted before it.
+     */
+    public Map<String, Integer> countQueuedAhead(Collection<String> taskIds) {
+        if (taskIds.isEmpty()) {
+            return Map.of();
+        }
+        var ahead = GENERATION_JOB.as("ahead");
+        Field<Integer> jobsAhead = field(selectCount()
+                .from(ahead)
+                .where(ahead.STATUS.eq(GenerationJobStatus.QUEUED.name()))
+                .and(ahead.CREATED_AT.lt(GENERATION_JOB.CREATED_AT)));
+        return dsl.select(GENERATION_JOB.TASK_ID, jobsAhead)
+                .from(GENERATION_JOB)
+                .where(GENERATION_JOB.TASK_ID.in(taskIds))
+                .and(GENERATION_JOB.STATUS.eq(GenerationJobStatus.QUEUED.name()))
+                .fetchMap(GENERATION_JOB.TASK_ID, jobsAhead);
+    }
+
+    /**
+     * Marks running jobs whose lease expired after their final attempt as failed.
+     * @return The abandoned jobs, so their handlers can clean up.
+     */
+    @Transactional
+    public List<GenerationJob> failAbandoned(int maxAttempts) {
+        var abandoned = dsl.select(GENERATION_JOB.ID)
+                .from(GENERATION_JOB)
+                .where(GENERATION_JOB.STATUS.eq(GenerationJobStatus.RUNNING.name()))
+                .and(GENERATION_JOB.LEASE_EXPIRES_AT.lt(currentOffsetDateTime()))
+                .and(GENERATION_JOB.ATTEMPTS.ge(maxAttempts))
+                .forUpdate()
+                .skipLocked();
+
+        return dsl.update(GENERATION_JOB)
+                .set(GENERATION_JOB.STATUS, GenerationJobStatus.FAILED.name())
+                .set(GENERATION_JOB.LEASE_OWNER, (String) null)
+                .set(GENERATION_JOB.LEASE_EXPIRES_AT, (OffsetDateTime) null)
+                .set(GENERATION_JOB.LAST_ERROR, "The job was abandoned after its lease expired " + maxAttempts + " times.")
+                .set(GENERATION_JOB.UPDATED_AT, LocalDateTime.now(ZoneOffset.UTC))
+                .where(GENERATION_JOB.ID.in(abandoned))
+                .returning()
+                .fetch()
+                .map(this::toJob);
+    }
+
+    public int renewLeases(String owner, Collection<Long> jobIds, Duration lease) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return dsl.update(GENERATION_JOB)
+                .set(GENERATION_JOB.LEASE_EXPIRES_AT, leaseExpiry(lease))
+                .where(GENERATION_JOB.ID.in(jobIds))
+                .and(GENERATION_JOB.LEASE_OWNER.eq(owner))
+                .and(GENERATION_JOB.STATUS.eq(GenerationJobStatus.RUNNING.name()))
+                .execute();
+    }
+
+    public void markCompleted(Long jobId, String owner) {
+        finish(jobId, owner, GenerationJobStatus.COMPLETED, null);
+    }
+
+    /**
+     * @return false if this node no longer holds the job's lease, in which case another node is now responsible for it.
+     */
+    public boolean markFailed(Long jobId, String owner, String error) {
+        return finish(jobId, owner, GenerationJobStatus.FAILED, error);
+    }
+
+    /**
+     * Returns a failed job to the queue so it can be attempted again. Its attempts are kept, so it is eventually given up on.
+     */
+    public void retry(Long jobId, String owner, String error) {
+        int updated = dsl.update(GENERATION_JOB)
+                .set(GENERATION_JOB.STATUS, GenerationJobStatus.QUEUED.name())
+                .set(GENERATION_JOB.LEASE_OWNER, (String) null)
+                .set(GENERATION_JOB.LEASE_EXPIRES_AT, (OffsetDateTime) null)
+                .set(GENERATION_JOB.LAST_ERROR, error)
+                .set(GENERATION_JOB.UPDATED_AT, LocalDateTime.now(ZoneOffset.UTC))
+                .where(GENERATION_JOB.ID.eq(jobId))
+                .and(GENERATION_JOB.LEASE_OWNER.eq(owner))
+                .execute();
+        if (updated == 0) {
+            log.warn("Could not requeue generation job {}: this node no longer holds its lease.", jobId);
+        }
+    }
+
+    /**
+     * Returns the given jobs to the queue so another node can pick them up, e.g., during a graceful shutdown.
+     */
+    public int requeue(String owner, Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return dsl.update(GENERATION_JOB)
+                .set(GENERATION_JOB.STATUS, GenerationJobStatus.QUEUED.name())
+                .set(GENERATION_JOB.LEASE_OWNER, (String) null)
+                .set(GENERATION_JOB.LEASE_EXPIRES_AT, (OffsetDateTime) null)
+                .set(GENERATION_JOB.ATTEMPTS, GENERATION_JOB.ATTEMPTS.minus(1))
+                .set(GENERATION_JOB.UPDATED_AT, LocalDateTime.now(ZoneOffset.UTC))
+                .where(GENERATION_JOB.ID.in(jobIds))
+                .and(GENERATION_JOB.LEASE_OWNER.eq(owner))
+                .and(GENERATION_JOB.STATUS.eq(GenerationJobStatus.RUNNING.name()))
+                .execute();
+    }
+
+    private boolean finish(Long jobId, String owner, GenerationJobStatus status, String error) {
+        // Only the current lease owner may finish a job; if the lease was lost, another node now owns it.
+        int updated = dsl.update(GENERATION_JOB)
+                .set(GENERATION_JOB.STATUS, status.name())
+                .set(GENERATION_JOB.LEASE_OWNER, (String) null)
+                .set(GENERATION_JOB.LEASE_EXPIRES_AT, (OffsetDateTime) null)
+                .set(GENERATION_JOB.LAST_ERROR, error)
+                .set(GENERATION_JOB.UPDATED_AT, LocalDateTime.now(ZoneOffset.UTC))
+                .where(GENERATION_JOB.ID.eq(jobId))
+                .and(GENERATION_JOB.LEASE_OWNER.eq(owner))
+                .execute();
+        if (updated == 0) {
+            log.warn("Could not mark generation job {} as {}: this node no longer holds its lease.", jobId, status);
+        }
+        return updated > 0;
+    }
+
+    private List<GenerationJob> markClaimed(String owner, Duration lease, Select<Record1<Long>> claimable) {
+        return dsl.update(GENERATION_JOB)
+                .set(GENERATION_JOB.STATUS, GenerationJobStatus.RUNNING.name())
+                .set(GENERATION_JOB.LEASE_OWNER, owner)
+                .set(GENERATION_JOB.LEASE_EXPIRES_AT, leaseExpiry(lease))
+                .set(GENERATION_JOB.ATTEMPTS, GENERATION_JOB.ATTEMPTS.plus(1))
+                .set(GENERATION_JOB.UPDATED_AT, LocalDateTime.now(ZoneOffset.UTC))
+                .where(GENERATION_JOB.ID.in(claimable))
+                .returning()
+                .fetch()
+                .map(this::toJob);
+    }
+
+    private Field<OffsetDateTime> leaseExpiry(Duration lease) {
+        // Lease times are computed by the database so that clock drift between nodes does not matter.
+        return currentOffsetDateTime().plus(DayToSecond.valueOf(lease));
+    }
+
+    private GenerationJob toJob(GenerationJobRecord record) {
+        return new GenerationJob(
+                record.getId(),
+                GenerationJobType.valueOf(record.getJobType()),
+                record.getTaskId(),
+                record.getUserId(),
+                record.getPayload().data(),
+                record.getAttempts()
+        );
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.language_learning.shared.jobs;
+
+public enum GenerationJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package com.example.language_learning.shared.jobs;
+
+public enum GenerationJobType {
+    CHAPTER_GENERATION,
+    STORY_GENERATION,
+    STORY_IMAGES
+}
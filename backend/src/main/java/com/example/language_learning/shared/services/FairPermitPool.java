@@ -0,0 +1,159 @@
+package com.example.language_learning.shared.services;
+
+import com.example.language_learning.shared.services.JobQueueService.Priority;
+import com.example.language_learning.shared.services.JobQueueService.SchedulingKey;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A pool of permits for a single backend that hands out free permits fairly instead of first come, first served.
+ * <p>
+ * Waiters are grouped by {@link Priority} and, within a priority, by owner (usually a user). When a permit is released
+ * it goes to the highest priority class that has waiters, and within that class the owners take turns (round-robin),
+ * so one owner with many waiting requests cannot starve the others.
+ * <p>
+ * Acquiring never blocks: the returned {@link Permit} completes its future once the permit has been granted.
+ */
+class FairPermitPool {
+
+    private final Map<Priority, LinkedHashMap<Object, Deque<Permit>>> waiting = new EnumMap<>(Priority.class);
+    private int capacity;
+    private int available;
+
+    FairPermitPool(int capacity) {
+        this.capacity = capacity;
+        this.available = capacity;
+        for (Priority priority : Priority.values()) {
+            waiting.put(priority, new LinkedHashMap<>());
+        }
+    }
+
+    Permit acquire(SchedulingKey key) {
+        Permit permit = new Permit(key);
+        boolean granted;
+        synchronized (this) {
+            granted = available > 0 && !hasWaiters();
+            if (granted) {
+                available--;
+                permit.granted = true;
+            }
+            else {
+                waiting.get(key.priority()).computeIfAbsent(key.owner(), owner -> new ArrayDeque<>()).addLast(permit);
+            }
+        }
+        if (granted) {
+            permit.future.complete(null);
+        }
+        return permit;
+    }
+
+    /**
+     * Changes the number of permits. Added permits go to waiters right away. When the pool shrinks, permits in use are
+     * kept until they are released, and only then taken out of circulation.
+     */
+    void resize(int newCapacity) {
+        List<Permit> granted = new ArrayList<>();
+        synchronized (this) {
+            available += newCapacity - capacity;
+            capacity = newCapacity;
+            while (available > 0) {
+                Permit next = pollNextWaiter();
+                if (next == null) {
+                    break;
+                }
+                available--;
+                next.granted = true;
+                granted.add(next);
+            }
+        }
+        granted.forEach(permit -> permit.future.complete(null));
+    }
+
+    synchronized int getCapacity() {
+        return capacity;
+    }
+
+    synchronized int getWaiting() {
+        return waiting.values().stream()
+                .flatMap(owners -> owners.values().stream())
+                .mapToInt(Deque::size)
+                .sum();
+    }
+
+    private void release(Permit permit) {
+        Permit next;
+        synchronized (this) {
+            if (!permit.granted) {
+                // The permit was never granted, so the waiter only has to leave the queue.
+                Deque<Permit> queue = waiting.get(permit.key.priority()).get(permit.key.owner());
+                if (queue != null) {
+                    queue.remove(permit);
+                    if (queue.isEmpty()) {
+                        waiting.get(permit.key.priority()).remove(permit.key.owner());
+                    }
+                }
+                return;
+            }
+            // A pool that shrank while the permit was in use takes it out of circulation instead of passing it on.
+            next = (available < 0) ? null : pollNextWaiter();
+            if (next == null) {
+                available++;
+                return;
+            }
+            next.granted = true;
+        }
+        // Complete outside the lock, since the waiter's continuation runs synchronously.
+        next.future.complete(null);
+    }
+
+    private Permit pollNextWaiter() {
+        for (LinkedHashMap<Object, Deque<Permit>> owners : waiting.values()) {
+            Iterator<Map.Entry<Object, Deque<Permit>>> iterator = owners.entrySet().iterator();
+            if (!iterator.hasNext()) {
+                continue;
+            }
+            Map.Entry<Object, Deque<Permit>> first = iterator.next();
+            Permit next = first.getValue().pollFirst();
+            iterator.remove();
+            if (!first.getValue().isEmpty()) {
+                // Move the owner to the back of the line so every other owner gets a turn first.
+                owners.put(first.getKey(), first.getValue());
+            }
+            return next;
+        }
+        return null;
+    }
+
+    private boolean hasWaiters() {
+        return waiting.values().stream().anyMatch(owners -> !owners.isEmpty());
+    }
+
+    /**
+     * A single request for a permit. It must always be released, whether or not it was ever granted. Releasing it more than once has no effect.
+     */
+    final class Permit {
+        private final SchedulingKey key;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private boolean granted;
+        private boolean released;
+
+        private Permit(SchedulingKey key) {
+            this.key = key;
+        }
+
+        CompletableFuture<Void> granted() {
+            return future;
+        }
+
+        void release() {
+            synchronized (FairPermitPool.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            FairPermitPool.this.release(this);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.example.language_learning.shared.services;
 
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
 import com.example.language_learning.shared.exceptions.ImageDownloadException;
 import com.example.language_learning.shared.exceptions.ImageProcessingException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
@@ -16,7 +22,11 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -25,66 +35,147 @@ import java.util.UUID;
 public class ImageService {
     private final StorageProvider storageProvider;
 
-    // --- Configuration for Image Resizing ---
-    private static final int TARGET_WIDTH = 1024;
-    private static final int TARGET_HEIGHT = 1024;
+    // --- Configuration for Image Variants ---
+    // Images are stored at the resolution they were rendered at, plus a downscaled copy for every smaller width.
+    @Value("${app.images.variant-widths:256,512}")
+    private List<Integer> variantWidths;
+    @Value("${app.images.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+
+    /**
+     * Saves a rendered image as a JPEG at its own resolution, together with a smaller copy for every configured
+     * variant width below it, so clients can download the size they display.
+     */
+    public StoredImageDTO saveImageFromBase64(String base64ImageData) {
+        byte[] imageData = decodeBase64(base64ImageData);
+        BufferedImage image = readImage(imageData);
+        if (image == null) {
+            log.warn("Could not decode image data; saving it without variants.");
+            // The Stable Diffusion API defaults to PNG.
+            return new StoredImageDTO(storageProvider.save(imageData, generateUniqueFileName(".png")), null);
+        }
 
+        String baseName = UUID.randomUUID().toString();
+        String fileUrl = storageProvider.save(encodeJpeg(image), baseName + ".jpg");
+        List<String> srcset = new ArrayList<>();
+        variantWidths.stream()
+                .filter(width -> width > 0 && width < image.getWidth())
+                .distinct()
+                .sorted()
+                .forEach(width -> {
+                    String variantUrl = storageProvider.save(encodeJpeg(scaleToWidth(image, width)), baseName + "-" + width + "w.jpg");
+                    srcset.add(variantUrl + " " + width + "w");
+                });
+        srcset.add(fileUrl + " " + image.getWidth() + "w");
+        log.info("Successfully uploaded image {} with {} size variant(s) to storage.", baseName, srcset.size() - 1);
+        return new StoredImageDTO(fileUrl, String.join(", ", srcset));
+    }
 
-    public String saveImageFromBase64(String base64ImageData) {
-        // The base64 string might include a data URI prefix (e.g., "data:image/png;base64,").
-        // We need to strip this prefix before decoding.
-        String pureBase64 = base64ImageData;
-        int commaIndex = base64ImageData.indexOf(',');
-        if (commaIndex != -1) {
-            pureBase64 = base64ImageData.substring(commaIndex + 1);
-        }
-        byte[] imageData = Base64.getDecoder().decode(pureBase64);
-        byte[] resizedImageData = resizeImageData(imageData);
-        // The Stable Diffusion API defaults to PNG.
-        String fileName = generateUniqueFileName(".png");
-        String fileUrl = storageProvider.save(resizedImageData, fileName);
-        log.info("Successfully uploaded image {} to storage.", fileName);
+    /**
+     * Saves a preview image at the resolution it was rendered at. Previews are only shown until the full image
+     * replaces them, so they get no size variants.
+     */
+    public String savePreviewFromBase64(String base64ImageData) {
+        byte[] imageData = decodeBase64(base64ImageData);
+        BufferedImage image = readImage(imageData);
+        String fileName = generateUniqueFileName((image != null) ? "-preview.jpg" : "-preview.png");
+        String fileUrl = storageProvider.save((image != null) ? encodeJpeg(image) : imageData, fileName);
+        log.info("Successfully uploaded preview image {} to storage.", fileName);
         return fileUrl;
     }
 
+    /**
+     * Removes a saved image and all of its size variants from storage, e.g., because the page it was rendered for
+     * never used it.
+     */
+    public void deleteImage(StoredImageDTO image) {
+        Set<String> fileNames = new LinkedHashSet<>();
+        fileNames.add(extractFileNameFromUrl(image.url()));
+        if (image.srcset() != null) {
+            for (String candidate : image.srcset().split(",")) {
+                String variantUrl = candidate.strip().split(" ")[0];
+                if (!variantUrl.isEmpty()) {
+                    fileNames.add(extractFileNameFromUrl(variantUrl));
+                }
+            }
+        }
+        fileNames.forEach(storageProvider::remove);
+        log.info("Removed image {} with {} file(s) from storage.", image.url(), fileNames.size());
+    }
+
     public String saveImageFromUrl(String imageUrl) {
         byte[] imageData = downloadImage(imageUrl);
-        byte[] resizedImageData = resizeImageData(imageData);
         String extension = extractExtensionFromUrl(imageUrl);
         String fileName = generateUniqueFileName(extension);
-        String fileUrl = storageProvider.save(resizedImageData, fileName);
+        String fileUrl = storageProvider.save(imageData, fileName);
         log.info("Successfully uploaded image {} from URL {} to storage.", fileName, imageUrl);
         return fileUrl;
     }
 
-    private byte[] resizeImageData(byte[] originalImageData) {
+    private byte[] decodeBase64(String base64ImageData) {
+        // The base64 string might include a data URI prefix (e.g., "data:image/png;base64,").
+        // We need to strip this prefix before decoding.
+        String pureBase64 = base64ImageData;
+        int commaIndex = base64ImageData.indexOf(',');
+        if (commaIndex != -1) {
+            pureBase64 = base64ImageData.substring(commaIndex + 1);
+        }
+        return Base64.getDecoder().decode(pureBase64);
+    }
+
+    private BufferedImage readImage(byte[] imageData) {
         try {
-            ByteArrayInputStream bis = new ByteArrayInputStream(originalImageData);
-            BufferedImage originalImage = ImageIO.read(bis);
+            return ImageIO.read(new ByteArrayInputStream(imageData));
+        }
+        catch (IOException e) {
+            log.error("Failed to read image", e);
+            throw new ImageProcessingException("Failed to read image", e);
+        }
+    }
 
-            if (originalImage == null) {
-                log.warn("Could not decode image data; skipping resize.");
-                return originalImageData;
-            }
+    private BufferedImage scaleToWidth(BufferedImage originalImage, int width) {
+        int height = Math.max(1, Math.round((float) originalImage.getHeight() * width / originalImage.getWidth()));
+        BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaledImage.createGraphics();
 
-            BufferedImage resizedImage = new BufferedImage(TARGET_WIDTH, TARGET_HEIGHT, BufferedImage.TYPE_INT_RGB);
-            Graphics2D graphics = resizedImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.drawImage(originalImage, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaledImage;
+    }
 
-            graphics.drawImage(originalImage, 0, 0, TARGET_WIDTH, TARGET_HEIGHT, null);
+    private byte[] encodeJpeg(BufferedImage image) {
+        // JPEG has no alpha channel, so the image is drawn onto an RGB canvas first.
+        BufferedImage rgbImage = image;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = rgbImage.createGraphics();
+            graphics.drawImage(image, 0, 0, Color.WHITE, null);
             graphics.dispose();
+        }
 
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ImageIO.write(resizedImage, "png", bos);
-            return bos.toByteArray();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam params = writer.getDefaultWriteParam();
+        params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        params.setCompressionQuality(jpegQuality);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(rgbImage, null, null), params);
         }
         catch (IOException e) {
-            log.error("Failed to resize image", e);
-            throw new ImageProcessingException("Failed to resize image", e);
+            log.error("Failed to encode image", e);
+            throw new ImageProcessingException("Failed to encode image", e);
+        }
+        finally {
+            writer.dispose();
         }
+        return bos.toByteArray();
     }
 
     private byte[] downloadImage(String imageUrl) {
@@ -121,6 +212,10 @@ public class ImageService {
         return ".png";
     }
 
+    private String extractFileNameFromUrl(String fileUrl) {
+        return fileUrl.substring(fileUrl.lastIndexOf('/') + 1);
+    }
+
     private String generateUniqueFileName(String extension) {
         return UUID.randomUUID().toString() + extension;
     }
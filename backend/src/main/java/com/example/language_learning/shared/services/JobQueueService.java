@@ -1,70 +1,202 @@
 package com.example.language_learning.shared.services;
 
-import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Runs blocking jobs and limits how many jobs may use each downstream backend at once.
+ * <p>
+ * In the default {@code virtual} mode every job gets its own virtual thread, so the number of threads is no longer
+ * the limit on concurrency. Instead, each {@link Backend} has its own pool of permits configured under
+ * {@code app.job-queue.permits}. A job waiting for a busy GPU only parks its own virtual thread and never delays
+ * jobs that need a different backend, such as a persist step that only needs the database.
+ * The {@code platform} mode keeps the previous behaviour of a fixed pool of {@code app.job-queue.workers} threads.
+ * <p>
+ * When a backend is saturated, its permits are handed out by {@link Priority} first and then round-robin between users,
+ * so interactive requests overtake background generation and a single user cannot starve everyone else.
+ * Reactive callers declare who they are running for with {@link #forUser(Priority, Long)} in the Reactor context.
+ */
 @Service
 @Slf4j
 public class JobQueueService {
-    private final BlockingQueue<Runnable> jobQueue = new LinkedBlockingQueue<>();
-    private final ExecutorService executorService;
-    private final int workerCount;
 
-    public JobQueueService(@Value("${app.job-queue.workers:5}") int workerCount) {
-        this.workerCount = workerCount;
-        this.executorService = Executors.newFixedThreadPool(workerCount);
+    /**
+     * The downstream systems whose capacity is limited independently.
+     */
+    public enum Backend {
+        LLM,
+        IMAGE,
+        DB
+    }
+
+    /**
+     * Priority classes for backend permits, from highest to lowest.
+     */
+    public enum Priority {
+        /** A user is waiting on the response, e.g., proofreading or translating a sentence. */
+        INTERACTIVE,
+        /** Long-running work whose progress is streamed to the user, e.g., chapter and story generation. */
+        BACKGROUND
     }
 
-    @PostConstruct
-    public void startWorkers() {
-        log.info("Starting {} job queue workers.", workerCount);
-        for (int i = 0; i < workerCount; i++) {
-            executorService.submit(this::work);
+    /**
+     * Identifies the owner of a permit request for fair scheduling.
+     */
+    public record SchedulingKey(Priority priority, Object owner) {}
+
+    private static final SchedulingKey DEFAULT_KEY = new SchedulingKey(Priority.BACKGROUND, "system");
+
+    private final ExecutorService executorService;
+    private final Scheduler scheduler;
+    private final Map<Backend, FairPermitPool> permits = new EnumMap<>(Backend.class);
+
+    public JobQueueService(
+            @Value("${app.job-queue.mode:virtual}") String mode,
+            @Value("${app.job-queue.workers:5}") int workerCount,
+            @Value("${app.job-queue.permits.llm:2}") int llmPermits,
+            @Value("${app.job-queue.permits.image:1}") int imagePermits,
+            @Value("${app.job-queue.permits.db:10}") int dbPermits
+    ) {
+        if ("platform".equalsIgnoreCase(mode)) {
+            log.info("Starting job queue with {} platform worker threads.", workerCount);
+            this.executorService = Executors.newFixedThreadPool(workerCount);
+        }
+        else {
+            log.info("Starting job queue with one virtual thread per job.");
+            this.executorService = Executors.newVirtualThreadPerTaskExecutor();
         }
+        this.scheduler = Schedulers.fromExecutorService(executorService, "job-queue");
+
+        // The LLM permits are resized to the number of Ollama servers by OllamaServerPermits once the servers are known.
+        permits.put(Backend.LLM, new FairPermitPool(llmPermits));
+        permits.put(Backend.IMAGE, new FairPermitPool(imagePermits));
+        permits.put(Backend.DB, new FairPermitPool(dbPermits));
+        log.info("Job queue permits - LLM: {}, IMAGE: {}, DB: {}", llmPermits, imagePermits, dbPermits);
+    }
+
+    /**
+     * @return A Reactor context that schedules every backend call made by the pipeline it is written to on behalf of the given user.
+     */
+    public static Context forUser(Priority priority, Long userId) {
+        return Context.of(SchedulingKey.class, new SchedulingKey(priority, userId));
+    }
+
+    /**
+     * Changes the number of permits of a backend, e.g., to match the number of servers behind it once they are known.
+     */
+    public void setPermits(Backend backend, int count) {
+        FairPermitPool pool = permits.get(backend);
+        int previous = pool.getCapacity();
+        pool.resize(count);
+        log.info("Job queue permits - {}: {} (was {})", backend, count, previous);
+    }
+
+    public void submitJob(Runnable job) {
+        executorService.execute(() -> runJob(job));
+        log.info("Submitted a new job to the queue.");
     }
 
-    private void work() {
-        while( !Thread.currentThread().isInterrupted()) {
+    /**
+     * Submits a fire-and-forget job that holds a permit for the given backend while it runs.
+     */
+    public void submitJob(Backend backend, Runnable job) {
+        executorService.execute(() -> runJob(() -> {
             try {
-                Runnable job = jobQueue.take();
-                log.info("Worker thread [{}] picked up a job. Queue size: {}", Thread.currentThread().getName(), jobQueue.size());
-                job.run();
+                withPermit(backend, () -> {
+                    job.run();
+                    return null;
+                });
             }
             catch (InterruptedException e) {
-                log.warn("Job queue worker thread [{}] was interrupted.", Thread.currentThread().getName());
+                log.warn("Job thread [{}] was interrupted while waiting for a {} permit.", Thread.currentThread().getName(), backend);
                 Thread.currentThread().interrupt();
-                break;
+            }
+            catch (RuntimeException e) {
+                throw e;
             }
             catch (Exception e) {
-                log.error("Uncaught exception during job execution in worker [{}].", Thread.currentThread().getName(), e);
+                throw new IllegalStateException(e);
             }
+        }));
+        log.info("Submitted a new {} job to the queue.", backend);
+    }
+
+    /**
+     * Runs a blocking task on a job thread while holding a permit for the given backend.
+     * Reactive pipelines use this to perform blocking calls (e.g., JPA) without tying up their own threads.
+     *
+     * @return A Mono that emits the task's result, or completes empty if the result is null.
+     */
+    public <T> Mono<T> submit(Backend backend, Callable<T> task) {
+        return limit(backend, Mono.fromCallable(task).subscribeOn(scheduler));
+    }
+
+    /**
+     * Runs a blocking task on a job thread without holding a backend permit, e.g., to process the result of a backend call
+     * without keeping the backend's permit while doing so.
+     *
+     * @return A Mono that emits the task's result, or completes empty if the result is null.
+     */
+    public <T> Mono<T> submit(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(scheduler);
+    }
+
+    /**
+     * Limits a non-blocking operation to the capacity of the given backend.
+     * The source is only subscribed once a permit has been granted, and the permit is released once it terminates or is cancelled.
+     * Waiting for a permit does not hold any thread.
+     */
+    public <T> Mono<T> limit(Backend backend, Mono<T> source) {
+        return Mono.deferContextual(context -> {
+            SchedulingKey key = context.getOrDefault(SchedulingKey.class, DEFAULT_KEY);
+            FairPermitPool pool = permits.get(backend);
+            FairPermitPool.Permit permit = pool.acquire(key);
+            if (!permit.granted().isDone()) {
+                log.debug("Waiting for a {} permit as {}. Requests waiting: {}", backend, key, pool.getWaiting());
+            }
+            return Mono.fromFuture(permit.granted(), true)
+                    .then(source)
+                    .doFinally(signal -> permit.release());
+        });
+    }
+
+    private <T> T withPermit(Backend backend, Callable<T> task) throws Exception {
+        FairPermitPool.Permit permit = permits.get(backend).acquire(DEFAULT_KEY);
+        try {
+            permit.granted().get();
+            return task.call();
+        }
+        finally {
+            permit.release();
         }
-        log.info("Worker thread [{}] is shutting down.", Thread.currentThread().getName());
     }
 
-    public void submitJob(Runnable job) {
+    private void runJob(Runnable job) {
         try {
-            jobQueue.put(job);
-            log.info("Submitted a new job to the queue. Current queue size: {}", jobQueue.size());
+            log.debug("Job thread [{}] picked up a job.", Thread.currentThread().getName());
+            job.run();
         }
-        catch (InterruptedException e) {
-            log.error("Failed to submit job to the queue as the thread was interrupted.", e);
-            Thread.currentThread().interrupt();
+        catch (Exception e) {
+            log.error("Uncaught exception during job execution in thread [{}].", Thread.currentThread().getName(), e);
         }
     }
 
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down job queue executor service...");
+        scheduler.dispose();
         executorService.shutdownNow();
     }
-
- }
+}
@@ -0,0 +1,144 @@
+package com.example.language_learning.shared.services;
+
+import com.example.language_learning.shared.dtos.progress.ProgressUpdateDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smooths the cosmetic progress updates delivered to a subscriber so the client can display each message for a minimum amount of time.
+ * <p>
+ * Generation workers publish updates as fast as the work happens and never wait on the UI. The pacing is applied per subscription:
+ * <ul>
+ *     <li>Updates carrying page data, as well as completion and error updates, are emitted immediately and never dropped.
+ *         Pacing them would only delay content the user is waiting for.</li>
+ *     <li>Message-only updates are emitted no more often than once per {@code app.progress.min-display-interval}, counted from the last update of any kind.</li>
+ *     <li>A message-only update that is still waiting for its slot is replaced by a newer update (coalescing), since only the latest message matters.</li>
+ * </ul>
+ * Waiting is done with timers on a shared scheduler, so no thread is held while an update is pending.
+ */
+@Slf4j
+@Component
+public class ProgressPacer {
+    private final Duration minDisplayInterval;
+    private final Scheduler scheduler;
+
+    @Autowired
+    public ProgressPacer(@Value("${app.progress.min-display-interval:1500ms}") Duration minDisplayInterval) {
+        this(minDisplayInterval, Schedulers.parallel());
+    }
+
+    ProgressPacer(Duration minDisplayInterval, Scheduler scheduler) {
+        this.minDisplayInterval = minDisplayInterval;
+        this.scheduler = scheduler;
+    }
+
+    public Flux<ProgressUpdateDTO> pace(Flux<ProgressUpdateDTO> updates) {
+        if (minDisplayInterval.isZero() || minDisplayInterval.isNegative()) {
+            return updates;
+        }
+        return Flux.create(sink -> new PacedSubscription(sink).start(updates));
+    }
+
+    private final class PacedSubscription {
+        private final FluxSink<ProgressUpdateDTO> sink;
+        private final Scheduler.Worker worker = scheduler.createWorker();
+        private ProgressUpdateDTO pendingMessage;
+        private long nextEmissionMillis = scheduler.now(TimeUnit.MILLISECONDS);
+        private Disposable scheduledDrain;
+        private boolean drainScheduled = false;
+        private boolean upstreamDone = false;
+
+        private PacedSubscription(FluxSink<ProgressUpdateDTO> sink) {
+            this.sink = sink;
+        }
+
+        private void start(Flux<ProgressUpdateDTO> updates) {
+            Disposable upstream = updates.subscribe(this::onNext, this::onError, this::onComplete);
+            sink.onDispose(Disposables.composite(upstream, worker));
+        }
+
+        private synchronized void onNext(ProgressUpdateDTO update) {
+            if (pendingMessage != null) {
+                // A newer update supersedes the message-only update that has not been displayed yet.
+                log.debug("Coalesced a pending progress update for task {}.", update.taskId());
+                pendingMessage = null;
+            }
+            if (isCosmetic(update)) {
+                pendingMessage = update;
+                scheduleDrain();
+            }
+            else {
+                cancelDrain();
+                emit(update);
+            }
+        }
+
+        private synchronized void onError(Throwable error) {
+            upstreamDone = true;
+            cancelDrain();
+            sink.error(error);
+        }
+
+        private synchronized void onComplete() {
+            upstreamDone = true;
+            if (pendingMessage == null) {
+                cancelDrain();
+                sink.complete();
+            }
+        }
+
+        private boolean isCosmetic(ProgressUpdateDTO update) {
+            return update.data() == null && !update.isComplete() && !update.isError();
+        }
+
+        private void emit(ProgressUpdateDTO update) {
+            sink.next(update);
+            nextEmissionMillis = scheduler.now(TimeUnit.MILLISECONDS) + minDisplayInterval.toMillis();
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled || sink.isCancelled()) {
+                return;
+            }
+            drainScheduled = true;
+            long delayMillis = Math.max(0, nextEmissionMillis - scheduler.now(TimeUnit.MILLISECONDS));
+            scheduledDrain = worker.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancelDrain() {
+            if (scheduledDrain != null) {
+                scheduledDrain.dispose();
+                scheduledDrain = null;
+            }
+            drainScheduled = false;
+        }
+
+        private synchronized void drain() {
+            drainScheduled = false;
+            if (pendingMessage == null) {
+                return;
+            }
+            // An update emitted in the meantime may have pushed the slot back.
+            if (scheduler.now(TimeUnit.MILLISECONDS) < nextEmissionMillis) {
+                scheduleDrain();
+                return;
+            }
+            emit(pendingMessage);
+            pendingMessage = null;
+            if (upstreamDone) {
+                sink.complete();
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.example.language_learning.shared.dtos.progress.CachedProgressUpdateDT
 import com.example.language_learning.shared.dtos.progress.ProgressUpdateDTO;
 import com.example.language_learning.storybook.shortstory.page.StoryPageDTO;
 import com.example.language_learning.user.User;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -20,7 +21,9 @@ import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class ProgressService {
+    private final ProgressPacer progressPacer;
     private final Map<String, Sinks.Many<ProgressUpdateDTO>> taskSinks = new ConcurrentHashMap<>();
     private final Map<String, CachedProgressUpdateDTO> latestTaskUpdates = new ConcurrentHashMap<>();
 
@@ -36,12 +39,13 @@ public class ProgressService {
             return Flux.just(cachedUpdate.update());
         }
 
-        return taskSinks
+        // Updates are published as soon as the work happens; pacing for display is applied per subscriber.
+        return progressPacer.pace(taskSinks
                 .computeIfAbsent(taskId, k -> {
                     log.info("Creating new sink for task {}.", taskId);
                     return Sinks.many().multicast().onBackpressureBuffer();
                 })
-                .asFlux();
+                .asFlux());
     }
 
     public void sendUpdate(String taskId, int progress, String message, User user) {
@@ -80,7 +84,35 @@ public class ProgressService {
     private void completeSink(String taskId) {
         Sinks.Many<ProgressUpdateDTO> sink = taskSinks.remove(taskId);
         if (sink != null) {
-            sink.tryEmitComplete();
+            synchronized (sink) {
+                sink.tryEmitComplete();
+            }
+        }
+    }
+
+    /**
+     * Emits the task's latest update again, e.g., to a client that has just subscribed, if the update belongs to the user.
+     */
+    public void resendLatestUpdate(String taskId, User user) {
+        CachedProgressUpdateDTO latestUpdate = getLatestUpdate(taskId);
+        Sinks.Many<ProgressUpdateDTO> sink = taskSinks.get(taskId);
+        if (latestUpdate != null && latestUpdate.userId().equals(user.getId()) && sink != null) {
+            log.info("Emitting latest cached update for task {} to subscriber.", taskId);
+            emit(taskId, sink, latestUpdate.update());
+        }
+    }
+
+    /**
+     * Emits an update into the task's sink. The steps of a task may run in parallel on different threads, and a sink
+     * rejects an emission that overlaps another one with FAIL_NON_SERIALIZED, so emissions into a sink take turns.
+     */
+    private void emit(String taskId, Sinks.Many<ProgressUpdateDTO> sink, ProgressUpdateDTO update) {
+        Sinks.EmitResult result;
+        synchronized (sink) {
+            result = sink.tryEmitNext(update);
+        }
+        if (result.isFailure()) {
+            log.warn("Failed to emit progress update for task {}. Result: {}", taskId, result);
         }
     }
 
@@ -99,13 +131,10 @@ public class ProgressService {
 
         var sink = taskSinks.get(taskId);
         if (sink != null) {
-            var result = sink.tryEmitNext(update);
-            if (result.isFailure()) {
-                log.warn("Failed to emit progress update for task {}. Result: {}", taskId, result);
-            }
-            else {
-                log.debug("No active sink for task {}. Update will be cached in latestTaskUpdates.", taskId);
-            }
+            emit(taskId, sink, update);
+        }
+        else {
+            log.debug("No active sink for task {}. Update will be cached in latestTaskUpdates.", taskId);
         }
 
         /*Sinks.Many<ProgressUpdateDTO> sink = taskSinks.computeIfAbsent(taskId, k -> {
@@ -18,6 +18,6 @@ public class TranslationGraphQlController {
     @MutationMapping
     @PreAuthorize("isAuthenticated()")
     public Mono<TranslationResponse> translateText(@Argument TranslationRequest request, @AuthenticationPrincipal User user) {
-        return translationService.translateText(request);
+        return translationService.translateText(request, user);
     }
 }
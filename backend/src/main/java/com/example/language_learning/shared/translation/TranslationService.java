@@ -3,6 +3,9 @@ package com.example.language_learning.shared.translation;
 import com.example.language_learning.ai.AIEngine;
 import com.example.language_learning.ai.components.AIRequest;
 import com.example.language_learning.ai.enums.PromptType;
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Priority;
+import com.example.language_learning.user.User;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
@@ -13,7 +16,7 @@ import reactor.core.publisher.Mono;
 public class TranslationService {
     private final AIEngine aiEngine;
 
-    public Mono<TranslationResponse> translateText(TranslationRequest request) {
+    public Mono<TranslationResponse> translateText(TranslationRequest request, User user) {
         AIRequest<TranslationResponse> aiRequest = AIRequest.builder()
                 .responseClass(TranslationResponse.class)
                 .promptType(PromptType.TRANSLATE)
@@ -23,6 +26,7 @@ public class TranslationService {
                 .withModeration(true)
                 .build();
         
-        return aiEngine.generate(aiRequest);
+        return aiEngine.generate(aiRequest)
+                .contextWrite(JobQueueService.forUser(Priority.INTERACTIVE, user.getId()));
     }
 }
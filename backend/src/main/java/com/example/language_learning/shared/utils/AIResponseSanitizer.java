@@ -1,6 +1,7 @@
 package com.example.language_learning.shared.utils;
 
 import com.example.language_learning.shared.enums.SanitizationPattern;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -75,7 +76,30 @@ public class AIResponseSanitizer {
     }
 
     /**
-     * The main entry point for the pre-validation cleaning of a raw AI response. This method
+     * The main entry point for turning a raw AI response into a tree for schema validation. The response is repaired
+     * and parsed in a single streaming pass by {@link TolerantJsonParser}. Only if it contains an error that cannot be
+     * repaired while streaming does this fall back to the full {@link #repairJson(String)} pipeline.
+     *
+     * @param rawResponse The raw string response from the AI.
+     * @return The parsed JSON value.
+     * @throws JsonProcessingException If the response could not be repaired into valid JSON.
+     */
+    public JsonNode parseJson(String rawResponse) throws JsonProcessingException {
+        try {
+            TolerantJsonParser.Result result = TolerantJsonParser.parse(rawResponse);
+            if (!result.repairs().isEmpty()) {
+                log.info("Repaired the AI response while parsing it: {}", result.repairs());
+            }
+            return result.node();
+        }
+        catch (JsonProcessingException e) {
+            log.warn("Could not parse the AI response in a single pass: {}. Falling back to the full repair pipeline.", e.getMessage());
+            return objectMapper.readTree(repairJson(rawResponse));
+        }
+    }
+
+    /**
+     * The fallback for the pre-validation cleaning of a raw AI response. This method
      * attempts to repair the entire string to fix common syntax errors, then passes the result
      * to the extraction pipeline. This prepares the JSON for schema validation.
      *
@@ -0,0 +1,214 @@
+package com.example.language_learning.shared.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A reactive workflow engine that executes a directed acyclic graph (DAG) of steps.
+ * Unlike the {@link ReactiveStateMachine}, which walks a single path one state at a time, every step here
+ * declares the steps it depends on, and any steps whose dependencies are satisfied run concurrently.
+ * Steps are non-blocking and communicate through the shared context object, so no thread is held while
+ * a step waits on I/O such as an AI call.
+ * <p>
+ * Steps registered with a {@link Checkpoint} save their output to a {@link WorkflowCheckpointStore} once they complete.
+ * When the workflow is run again for the same context, e.g., by a retried job, those steps restore their saved output
+ * into the context instead of executing again, so the run resumes after the last completed step.
+ * <p>
+ * The workflow itself holds no per-run state, so a single instance can be safely shared as a singleton bean.
+ *
+ * @param <K> The type used to identify each step (e.g., a state class).
+ * @param <C> The Context type.
+ */
+@Slf4j
+public class DagWorkflow<K, C> {
+    private final List<Node<K, C>> executionOrder;
+    private final WorkflowCheckpointStore<C> checkpointStore;
+
+    @FunctionalInterface
+    public interface Step<C> {
+        Mono<Void> execute(C context);
+    }
+
+    /**
+     * Describes how the output of a step is taken from the context after it completes, and put back into the context when it is restored.
+     *
+     * @param <T> The type of the step's output, which must be serializable by the checkpoint store.
+     */
+    public record Checkpoint<C, T>(Class<T> outputType, Function<C, T> capture, BiConsumer<C, T> restore) {}
+
+    private record Node<K, C>(K key, Step<C> step, Predicate<C> condition, List<K> dependencies, Checkpoint<C, ?> checkpoint) {}
+
+    private DagWorkflow(List<Node<K, C>> executionOrder, WorkflowCheckpointStore<C> checkpointStore) {
+        this.executionOrder = executionOrder;
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * Assembles the graph into a single Mono for the given context. Nothing runs until the Mono is subscribed.
+     * The Mono completes once every step has finished, or errors as soon as any step fails, in which case
+     * no further steps are started.
+     *
+     * @param context The context for the execution.
+     * @return A Mono that completes when the whole graph has been executed.
+     */
+    public Mono<Void> run(C context) {
+        return Mono.defer(() -> {
+            Map<K, Mono<Void>> steps = new HashMap<>();
+
+            // Nodes are stored in topological order, so every dependency Mono already exists.
+            // Each step is cached so that it executes once, no matter how many steps depend on it.
+            for (Node<K, C> node : executionOrder) {
+                List<Mono<Void>> dependencies = node.dependencies().stream()
+                        .map(steps::get)
+                        .toList();
+
+                Mono<Void> step = Mono.when(dependencies)
+                        .then(Mono.defer(() -> runNode(node, context)))
+                        .cache();
+                steps.put(node.key(), step);
+            }
+            return Mono.when(steps.values());
+        });
+    }
+
+    private Mono<Void> runNode(Node<K, C> node, C context) {
+        String stepName = describe(node.key());
+        if (!node.condition().test(context)) {
+            log.debug("Condition not met for step {}. Marking it as satisfied without executing.", stepName);
+            return Mono.empty();
+        }
+
+        if (node.checkpoint() == null || checkpointStore == null) {
+            return execute(node, context, stepName);
+        }
+        return runCheckpointed(node, node.checkpoint(), context, stepName);
+    }
+
+    private <T> Mono<Void> runCheckpointed(Node<K, C> node, Checkpoint<C, T> checkpoint, C context, String stepName) {
+        return checkpointStore.load(context, stepName, checkpoint.outputType())
+                .onErrorResume(e -> {
+                    log.warn("Could not load the checkpoint of step {}. The step will be executed again.", stepName, e);
+                    return Mono.empty();
+                })
+                .map(output -> {
+                    checkpoint.restore().accept(context, output);
+                    log.info("Restored step {} from its checkpoint instead of executing it.", stepName);
+                    return true;
+                })
+                .switchIfEmpty(Mono.defer(() -> execute(node, context, stepName)
+                        .then(saveCheckpoint(checkpoint, context, stepName))
+                        .thenReturn(true)))
+                .then();
+    }
+
+    private <T> Mono<Void> saveCheckpoint(Checkpoint<C, T> checkpoint, C context, String stepName) {
+        return Mono.defer(() -> checkpointStore.save(context, stepName, checkpoint.capture().apply(context)))
+                // A lost checkpoint only costs a repeated step on retry, so it must not fail the run.
+                .onErrorResume(e -> {
+                    log.warn("Could not save the checkpoint of step {}.", stepName, e);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> execute(Node<K, C> node, C context, String stepName) {
+        log.debug("Executing step {}", stepName);
+        return node.step().execute(context)
+                .doOnSuccess(ignored -> log.debug("Step {} completed.", stepName))
+                .doOnError(e -> log.error("Step {} failed with context {}", stepName, context, e));
+    }
+
+    private static String describe(Object key) {
+        return (key instanceof Class<?> keyClass) ? keyClass.getSimpleName() : String.valueOf(key);
+    }
+
+    public static class GraphBuilder<K, C> {
+        private final Map<K, Node<K, C>> nodes = new LinkedHashMap<>();
+        private WorkflowCheckpointStore<C> checkpointStore;
+
+        @SafeVarargs
+        public final GraphBuilder<K, C> addStep(K key, Step<C> step, K... dependsOn) {
+            return addConditionalStep(key, context -> true, step, dependsOn);
+        }
+
+        /**
+         * Adds a step that only executes when the given condition holds once its dependencies have completed.
+         * A skipped step still counts as satisfied, so its dependents continue to run.
+         */
+        @SafeVarargs
+        public final GraphBuilder<K, C> addConditionalStep(K key, Predicate<C> condition, Step<C> step, K... dependsOn) {
+            if (nodes.containsKey(key)) {
+                throw new IllegalStateException("Step " + describe(key) + " has already been added to the workflow.");
+            }
+            nodes.put(key, new Node<>(key, step, condition, List.of(dependsOn), null));
+            return this;
+        }
+
+        /**
+         * Saves the output of a previously added step once it completes, and restores it instead of executing the step on later runs.
+         * Only takes effect if a {@link #checkpointStore(WorkflowCheckpointStore) checkpoint store} is configured.
+         */
+        public GraphBuilder<K, C> checkpoint(K key, Checkpoint<C, ?> checkpoint) {
+            Node<K, C> node = nodes.get(key);
+            if (node == null) {
+                throw new IllegalStateException("Step " + describe(key) + " must be added before its checkpoint.");
+            }
+            nodes.put(key, new Node<>(key, node.step(), node.condition(), node.dependencies(), checkpoint));
+            return this;
+        }
+
+        public GraphBuilder<K, C> checkpointStore(WorkflowCheckpointStore<C> checkpointStore) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        public DagWorkflow<K, C> build() {
+            if (nodes.isEmpty()) {
+                throw new IllegalStateException("At least one step must be added before building the workflow.");
+            }
+            return new DagWorkflow<>(sortTopologically(), checkpointStore);
+        }
+
+        /**
+         * Orders the nodes so that every node appears after all of its dependencies (Kahn's algorithm),
+         * rejecting graphs with unknown dependencies or cycles.
+         */
+        private List<Node<K, C>> sortTopologically() {
+            Map<K, Integer> inDegree = new HashMap<>();
+            Map<K, List<K>> dependents = new HashMap<>();
+            for (Node<K, C> node : nodes.values()) {
+                inDegree.putIfAbsent(node.key(), 0);
+                for (K dependency : node.dependencies()) {
+                    if (!nodes.containsKey(dependency)) {
+                        throw new IllegalStateException("Step " + describe(node.key()) + " depends on unknown step " + describe(dependency));
+                    }
+                    inDegree.merge(node.key(), 1, Integer::sum);
+                    dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(node.key());
+                }
+            }
+
+            Deque<K> ready = new ArrayDeque<>();
+            nodes.keySet().stream().filter(key -> inDegree.get(key) == 0).forEach(ready::add);
+
+            List<Node<K, C>> ordered = new ArrayList<>();
+            while (!ready.isEmpty()) {
+                K key = ready.poll();
+                ordered.add(nodes.get(key));
+                for (K dependent : dependents.getOrDefault(key, List.of())) {
+                    if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+
+            if (ordered.size() != nodes.size()) {
+                throw new IllegalStateException("The workflow graph contains a cycle and cannot be executed.");
+            }
+            return List.copyOf(ordered);
+        }
+    }
+}
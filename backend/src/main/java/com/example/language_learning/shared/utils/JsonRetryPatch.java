@@ -0,0 +1,257 @@
+package com.example.language_learning.shared.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.networknt.schema.JsonNodePath;
+import com.networknt.schema.ValidationMessage;
+
+import java.util.*;
+
+/**
+ * Builds compact retry feedback for a response that is mostly valid, and merges the model's corrections back into it.
+ * <p>
+ * Instead of sending the whole invalid response and schema again, the retry prompt lists only the failing locations as
+ * JSON pointers, with the current value and the schema fragment of each one. The model answers with a list of patches
+ * (see {@link #PATCH_SCHEMA}), which replace the values at those locations in the cached tree.
+ * <p>
+ * Errors inside an array item, e.g., a story page or a question, are widened to the whole item, so a broken item is
+ * regenerated as one piece next to the items around it, while the valid items are kept as they are.
+ */
+public final class JsonRetryPatch {
+
+    /**
+     * Responses with more failing locations than this are retried in full, since a patch would not be much smaller.
+     */
+    public static final int MAX_TARGETS = 8;
+
+    /**
+     * The schema of the model's answer to a patch prompt.
+     */
+    public static final JsonNode PATCH_SCHEMA;
+    public static final Map<String, Object> PATCH_SCHEMA_FORMAT;
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    static {
+        ObjectNode patch = NODES.objectNode().put("type", "object");
+        ObjectNode patchProperties = patch.putObject("properties");
+        patchProperties.putObject("path").put("type", "string");
+        patchProperties.putObject("value");
+        patch.putArray("required").add("path").add("value");
+
+        ObjectNode schema = NODES.objectNode().put("type", "object");
+        ObjectNode patches = schema.putObject("properties").putObject("patches").put("type", "array").put("minItems", 1);
+        patches.set("items", patch);
+        schema.putArray("required").add("patches");
+        PATCH_SCHEMA = schema;
+        PATCH_SCHEMA_FORMAT = Collections.unmodifiableMap(new ObjectMapper().convertValue(schema, new TypeReference<Map<String, Object>>() {}));
+    }
+
+    /**
+     * A location that failed validation.
+     *
+     * @param pointer The JSON pointer of the location, e.g., {@code /questions/2/answer}.
+     * @param errors The validation errors at this location.
+     */
+    public record Target(String pointer, List<String> errors) {}
+
+    private JsonRetryPatch() {}
+
+    /**
+     * Groups the validation errors by the location they apply to. A missing required property is reported at the location of the property itself.
+     *
+     * @return The failing locations, or empty if any error could not be located, in which case the response should be retried in full.
+     */
+    public static Optional<List<Target>> targets(Set<ValidationMessage> errors) {
+        Map<String, List<String>> byPointer = new LinkedHashMap<>();
+        for (ValidationMessage error : errors) {
+            JsonNodePath location = error.getInstanceLocation();
+            if (location == null) {
+                return Optional.empty();
+            }
+            String pointer = toPointer(location);
+            if ("required".equals(error.getMessageKey())) {
+                if (error.getProperty() == null) {
+                    return Optional.empty();
+                }
+                pointer += "/" + escape(error.getProperty());
+            }
+            byPointer.computeIfAbsent(pointer, key -> new ArrayList<>()).add(error.getMessage());
+        }
+        if (byPointer.isEmpty() || byPointer.containsKey("")) {
+            // An error about the root value itself cannot be fixed with a patch.
+            return Optional.empty();
+        }
+        List<Target> targets = byPointer.entrySet().stream()
+                .map(entry -> new Target(entry.getKey(), List.copyOf(entry.getValue())))
+                .toList();
+        return Optional.of(targets);
+    }
+
+    /**
+     * Widens every location inside an array item to the outermost item that contains it, and merges the errors of each item.
+     * Locations outside of arrays are kept as they are.
+     */
+    public static List<Target> widenToItems(JsonNode root, List<Target> targets) {
+        Map<String, List<String>> byPointer = new LinkedHashMap<>();
+        for (Target target : targets) {
+            String pointer = itemPointer(root, target.pointer());
+            byPointer.computeIfAbsent(pointer, key -> new ArrayList<>()).addAll(target.errors());
+        }
+        return byPointer.entrySet().stream()
+                .map(entry -> new Target(entry.getKey(), List.copyOf(entry.getValue())))
+                .toList();
+    }
+
+    /**
+     * Describes the failing locations for the retry prompt, with the current value and the expected schema of each.
+     * Array items also show the items before and after them, so a regenerated item fits in with its neighbours.
+     */
+    public static String describe(JsonNode root, JsonNode schema, List<Target> targets) {
+        StringBuilder message = new StringBuilder();
+        for (Target target : targets) {
+            JsonNode current = root.at(target.pointer());
+            JsonNode fragment = schemaAt(schema, target.pointer());
+            message.append("\n\n### ").append(target.pointer())
+                    .append("\nErrors: ").append(String.join("; ", target.errors()))
+                    .append("\nCurrent value: ").append(current.isMissingNode() ? "(missing)" : current.toString())
+                    .append("\nExpected schema: ").append(fragment == null ? "(any)" : fragment.toString());
+
+            int lastSlash = target.pointer().lastIndexOf('/');
+            if (root.at(target.pointer().substring(0, lastSlash)) instanceof ArrayNode array) {
+                int index = parseIndex(target.pointer().substring(lastSlash + 1), target.pointer());
+                if (index > 0) {
+                    message.append("\nPrevious item (context only): ").append(array.get(index - 1));
+                }
+                if (index + 1 < array.size()) {
+                    message.append("\nNext item (context only): ").append(array.get(index + 1));
+                }
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * Applies the model's patches to a copy of the cached tree. Only the failing locations, or locations inside them, may be patched.
+     *
+     * @return The patched tree.
+     * @throws IllegalArgumentException If the answer is not a valid list of patches for the failing locations.
+     */
+    public static JsonNode apply(JsonNode root, JsonNode answer, List<Target> targets) {
+        JsonNode patches = answer.path("patches");
+        if (!patches.isArray() || patches.isEmpty()) {
+            throw new IllegalArgumentException("The answer does not contain any patches.");
+        }
+
+        JsonNode patched = root.deepCopy();
+        for (JsonNode patch : patches) {
+            String pointer = patch.path("path").asText("");
+            if (targets.stream().noneMatch(target -> pointer.equals(target.pointer()) || pointer.startsWith(target.pointer() + "/"))) {
+                throw new IllegalArgumentException("The patch path '" + pointer + "' is not one of the failing locations.");
+            }
+            if (!patch.has("value")) {
+                throw new IllegalArgumentException("The patch for '" + pointer + "' has no value.");
+            }
+            set(patched, pointer, patch.get("value"));
+        }
+        return patched;
+    }
+
+    private static void set(JsonNode root, String pointer, JsonNode value) {
+        int lastSlash = pointer.lastIndexOf('/');
+        JsonNode parent = root.at(pointer.substring(0, lastSlash));
+        String name = unescape(pointer.substring(lastSlash + 1));
+
+        if (parent instanceof ObjectNode object) {
+            object.set(name, value);
+        }
+        else if (parent instanceof ArrayNode array) {
+            int index = parseIndex(name, pointer);
+            if (index < array.size()) {
+                array.set(index, value);
+            }
+            else if (index == array.size()) {
+                array.add(value);
+            }
+            else {
+                throw new IllegalArgumentException("The patch path '" + pointer + "' is outside of its array.");
+            }
+        }
+        else {
+            throw new IllegalArgumentException("The patch path '" + pointer + "' does not point into an object or array.");
+        }
+    }
+
+    /**
+     * Follows a JSON pointer through the schema's properties and items.
+     *
+     * @return The schema of the location, or null if it is not described by the schema.
+     */
+    private static JsonNode schemaAt(JsonNode schema, String pointer) {
+        JsonNode current = schema;
+        for (String segment : pointer.substring(1).split("/", -1)) {
+            if (current == null) {
+                return null;
+            }
+            if (current.has("properties") && current.get("properties").has(unescape(segment))) {
+                current = current.get("properties").get(unescape(segment));
+            }
+            else if (current.has("items")) {
+                current = current.get("items");
+            }
+            else {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return The pointer of the outermost array item on the way to the given location, or the location itself if it is not inside an array.
+     */
+    private static String itemPointer(JsonNode root, String pointer) {
+        JsonNode current = root;
+        StringBuilder prefix = new StringBuilder();
+        for (String segment : pointer.substring(1).split("/", -1)) {
+            prefix.append('/').append(segment);
+            if (current.isArray()) {
+                return prefix.toString();
+            }
+            current = current.path(unescape(segment));
+            if (current.isMissingNode()) {
+                break;
+            }
+        }
+        return pointer;
+    }
+
+    private static String toPointer(JsonNodePath path) {
+        StringBuilder pointer = new StringBuilder();
+        for (int i = 0; i < path.getNameCount(); i++) {
+            Object element = path.getElement(i);
+            pointer.append('/').append(element instanceof Integer ? element.toString() : escape(String.valueOf(element)));
+        }
+        return pointer.toString();
+    }
+
+    private static int parseIndex(String segment, String pointer) {
+        try {
+            return Integer.parseInt(segment);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The patch path '" + pointer + "' uses '" + segment + "' as an array index.");
+        }
+    }
+
+    private static String escape(String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String unescape(String segment) {
+        return segment.replace("~1", "/").replace("~0", "~");
+    }
+}
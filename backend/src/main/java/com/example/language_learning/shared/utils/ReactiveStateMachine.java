@@ -7,11 +7,22 @@ import reactor.core.publisher.Mono;
 import java.util.*;
 import java.util.function.Function;
 
+/**
+ * A reactive state machine that walks a single path of states, executing the action registered for each state.
+ * <p>
+ * When created with {@link Checkpointing}, every non-terminal state the machine transitions to is saved to a
+ * {@link WorkflowCheckpointStore}. A later run for the same context executes the states up to and including
+ * {@link Checkpointing#resumeAfter()} as usual (so they can rebuild the context), and then continues from the saved state.
+ */
 @Slf4j
 public class ReactiveStateMachine<S, C> {
+    private static final String STATE_CHECKPOINT = "STATE";
+
     @Getter
     private S currentState;
     private final Graph<S, C> graph;
+    private final Checkpointing<S, C> checkpointing;
+    private S resumeState;
 
     /**
      * A marker interface for states that should terminate the state machine's execution.
@@ -39,9 +50,19 @@ public class ReactiveStateMachine<S, C> {
         }
     }
 
-    private ReactiveStateMachine(Map<Class<? extends S>, Action<S, C>> actionMap, S initialState) {
+    /**
+     * Configures the checkpointing of a state machine.
+     *
+     * @param stateType The common type of all states, which must be serializable by the checkpoint store.
+     * @param resumeAfter The state after which a run continues from its saved state, if there is one.
+     * @param store Where the latest state of each run is saved.
+     */
+    public record Checkpointing<S, C>(Class<S> stateType, Class<? extends S> resumeAfter, WorkflowCheckpointStore<C> store) {}
+
+    private ReactiveStateMachine(Map<Class<? extends S>, Action<S, C>> actionMap, S initialState, Checkpointing<S, C> checkpointing) {
         this.graph = new Graph<>(actionMap);
         this.currentState = initialState;
+        this.checkpointing = checkpointing;
     }
 
     public Mono<Boolean> handle(C context) {
@@ -50,6 +71,7 @@ public class ReactiveStateMachine<S, C> {
                 .map(action -> {
                     log.debug("Executing reactive action from state {}", fromState.getClass().getSimpleName());
                     return action.execute(fromState, context)
+                            .flatMap(nextState -> checkpoint(fromState, nextState, context))
                             .map(nextState -> {
                                 synchronized (this) {
                                     log.debug("State transition: {} -> {}", fromState.getClass().getSimpleName(), nextState.getClass().getSimpleName());
@@ -71,7 +93,8 @@ public class ReactiveStateMachine<S, C> {
      * @return A Mono that emits the final, terminal state.
      */
     public ReactiveTerminalOperation<S> runToCompletion(C context) {
-        Mono<S> terminalStateMono = Mono.just(this.getCurrentState())
+        Mono<S> terminalStateMono = loadCheckpoint(context)
+            .then(Mono.fromSupplier(this::getCurrentState))
             .expand(state -> {
                 if (state instanceof ReactiveTerminalState) {
                     return Mono.empty(); // Stop expanding if we've reached a terminal state
@@ -85,6 +108,45 @@ public class ReactiveStateMachine<S, C> {
         return new ReactiveTerminalOperation<>(terminalStateMono);
     }
 
+    private Mono<Void> loadCheckpoint(C context) {
+        if (checkpointing == null) {
+            return Mono.empty();
+        }
+        return checkpointing.store().load(context, STATE_CHECKPOINT, checkpointing.stateType())
+                .doOnNext(savedState -> {
+                    log.info("Found checkpointed state {}. It will be resumed after state {}.",
+                            savedState.getClass().getSimpleName(), checkpointing.resumeAfter().getSimpleName());
+                    this.resumeState = savedState;
+                })
+                .onErrorResume(e -> {
+                    log.warn("Could not load the checkpointed state. The state machine will run from the start.", e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    /**
+     * Replaces the next state with the checkpointed state once the resume point is reached, and saves every non-terminal state.
+     */
+    private Mono<S> checkpoint(S fromState, S nextState, C context) {
+        if (checkpointing == null || nextState instanceof ReactiveTerminalState) {
+            return Mono.just(nextState);
+        }
+        if (resumeState != null && checkpointing.resumeAfter().isInstance(fromState)) {
+            S restoredState = resumeState;
+            resumeState = null;
+            log.info("Resuming from checkpointed state {} instead of {}.", restoredState.getClass().getSimpleName(), nextState.getClass().getSimpleName());
+            return Mono.just(restoredState);
+        }
+        return checkpointing.store().save(context, STATE_CHECKPOINT, nextState)
+                // A lost checkpoint only costs repeated work on retry, so it must not fail the run.
+                .onErrorResume(e -> {
+                    log.warn("Could not checkpoint state {}.", nextState.getClass().getSimpleName(), e);
+                    return Mono.empty();
+                })
+                .thenReturn(nextState);
+    }
+
     public static class ReactiveTerminalOperation<S> {
         private final Mono<S> terminalStateMono;
         private final Map<Class<? extends S>, Function<S, ? extends Mono<?>>> handlers = new HashMap<>();
@@ -134,6 +196,7 @@ public class ReactiveStateMachine<S, C> {
     static class Builder<S, C> {
         private Map<Class<? extends S>, Action<S, C>> actionMap;
         private S initialState;
+        private Checkpointing<S, C> checkpointing;
 
         public Builder<S, C> actionMap(Map<Class<? extends S>, Action<S, C>> actionMap) {
             this.actionMap = actionMap;
@@ -145,11 +208,16 @@ public class ReactiveStateMachine<S, C> {
             return this;
         }
 
+        public Builder<S, C> checkpointing(Checkpointing<S, C> checkpointing) {
+            this.checkpointing = checkpointing;
+            return this;
+        }
+
         public ReactiveStateMachine<S, C> build() {
             if (initialState == null || actionMap == null) {
                 throw new IllegalStateException("Initial state and action map must be set before building the state machine.");
             }
-            return new ReactiveStateMachine<>(actionMap, initialState);
+            return new ReactiveStateMachine<>(actionMap, initialState, checkpointing);
         }
     }
 
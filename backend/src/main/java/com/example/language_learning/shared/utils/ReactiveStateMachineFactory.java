@@ -1,6 +1,5 @@
 package com.example.language_learning.shared.utils;
 
-import lombok.RequiredArgsConstructor;
 import com.example.language_learning.shared.utils.ReactiveStateMachine.*;
 import java.util.Map;
 
@@ -9,15 +8,26 @@ import java.util.Map;
  * This factory is stateless and can be configured as a singleton Spring bean.
  * It holds the blueprint (transitions and initial state) for a specific reactive workflow.
  */
-@RequiredArgsConstructor
 public class ReactiveStateMachineFactory<S, C> {
     private final Map<Class<? extends S>, Action<S, C>> actionMap;
     private final S initialState;
+    private final Checkpointing<S, C> checkpointing;
+
+    public ReactiveStateMachineFactory(Map<Class<? extends S>, Action<S, C>> actionMap, S initialState) {
+        this(actionMap, initialState, null);
+    }
+
+    public ReactiveStateMachineFactory(Map<Class<? extends S>, Action<S, C>> actionMap, S initialState, Checkpointing<S, C> checkpointing) {
+        this.actionMap = actionMap;
+        this.initialState = initialState;
+        this.checkpointing = checkpointing;
+    }
 
     public ReactiveStateMachine<S, C> createInstance() {
         return new ReactiveStateMachine.Builder<S, C>()
                 .initialState(initialState)
                 .actionMap(actionMap)
+                .checkpointing(checkpointing)
                 .build();
     }
 }
@@ -0,0 +1,125 @@
+package com.example.language_learning.shared.utils;
+
+import java.util.function.Consumer;
+
+/**
+ * Reads the items of one array property of a streamed JSON object while the tokens arrive, and hands each object item
+ * to a listener as soon as its closing brace has been received, before the rest of the response is generated.
+ * <p>
+ * Only the array under the given key of the root object is read, e.g., {@code pages} in {@code {"pages": [{...}, {...}]}}.
+ * Items are passed on as their raw JSON text; parsing them, and ignoring items that do not parse, is left to the listener.
+ * <p>
+ * A reader holds the state of a single response and is not thread-safe. Chunks of one stream arrive sequentially.
+ */
+public class StreamingJsonArrayItems {
+    private static final int ROOT_DEPTH = 1;
+    private static final int ITEM_DEPTH = 2;
+
+    private final String property;
+    private final Consumer<String> listener;
+
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private StringBuilder string;
+    private String lastString;
+    private String currentKey;
+    private boolean inArray;
+    private StringBuilder item;
+
+    /**
+     * @param property The key of the array in the root object.
+     * @param listener Receives the JSON text of each complete object item.
+     */
+    public StreamingJsonArrayItems(String property, Consumer<String> listener) {
+        this.property = property;
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds the next chunk of the response to the reader, passing on every item that it completes.
+     */
+    public void accept(String chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            next(chunk.charAt(i));
+        }
+    }
+
+    private void next(char c) {
+        if (item != null) {
+            item.append(c);
+        }
+        if (inString) {
+            readString(c);
+            return;
+        }
+
+        switch (c) {
+            case '"' -> {
+                if (depth > 0) {
+                    inString = true;
+                    string = (depth == ROOT_DEPTH) ? new StringBuilder() : null;
+                }
+            }
+            case ':' -> {
+                if (depth == ROOT_DEPTH) {
+                    currentKey = lastString;
+                }
+            }
+            case '{', '[' -> open(c);
+            case '}', ']' -> close();
+            default -> {
+                // Whitespace, separators and scalars do not change the structure.
+            }
+        }
+    }
+
+    private void readString(char c) {
+        if (escaped) {
+            escaped = false;
+        }
+        else if (c == '\\') {
+            escaped = true;
+        }
+        else if (c == '"') {
+            inString = false;
+            if (string != null) {
+                lastString = string.toString();
+                string = null;
+            }
+            return;
+        }
+        if (string != null) {
+            string.append(c);
+        }
+    }
+
+    private void open(char c) {
+        depth++;
+        if (depth == ITEM_DEPTH && c == '[' && property.equals(currentKey)) {
+            inArray = true;
+        }
+        else if (inArray && depth == ITEM_DEPTH + 1 && c == '{') {
+            item = new StringBuilder("{");
+        }
+    }
+
+    private void close() {
+        if (depth == 0) {
+            return;
+        }
+        depth--;
+        if (inArray && depth == ITEM_DEPTH && item != null) {
+            String complete = item.toString();
+            item = null;
+            listener.accept(complete);
+        }
+        else if (depth < ITEM_DEPTH) {
+            inArray = false;
+            item = null;
+            if (depth == ROOT_DEPTH) {
+                currentKey = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.language_learning.shared.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.*;
+
+/**
+ * Checks the structure of a streamed JSON response against its schema while the tokens arrive, so a response that
+ * can no longer pass validation can be cancelled instead of generated to the end.
+ * <p>
+ * Only violations that {@link AIResponseSanitizer} cannot repair are reported:
+ * <ul>
+ *     <li>Too much text before the JSON value starts, i.e., the model is answering in prose.</li>
+ *     <li>An object or array where the schema expects a different kind of value, or a scalar where it expects an object or array.</li>
+ *     <li>An array with more items than the schema's {@code maxItems}.</li>
+ * </ul>
+ * Scalar type mismatches are left alone because the sanitizer can coerce them. Keys are only tracked when they are
+ * double-quoted. As soon as the guard meets syntax it does not understand, it stops checking rather than risk
+ * cancelling a response the tolerant parser could still repair.
+ * <p>
+ * A guard holds the state of a single response and is not thread-safe. Chunks of one stream arrive sequentially.
+ */
+public class StreamingJsonGuard {
+    private static final int DEFAULT_MAX_PREAMBLE_CHARS = 200;
+
+    private final JsonNode rootSchema;
+    private final int maxPreambleChars;
+    private final StringBuilder received = new StringBuilder();
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private boolean started;
+    private boolean finished;
+    private int preambleChars;
+    private boolean inString;
+    private boolean escaped;
+    private StringBuilder key;
+
+    /**
+     * An open object or array, with the schema its members or items are checked against (null if unchecked).
+     */
+    private static final class Frame {
+        private final boolean object;
+        private final JsonNode schema;
+        private boolean expectingKey;
+        private boolean expectingValue;
+        private String currentKey;
+        private int items;
+
+        private Frame(boolean object, JsonNode schema) {
+            this.object = object;
+            this.schema = schema;
+            this.expectingKey = object;
+            this.expectingValue = !object;
+        }
+    }
+
+    public StreamingJsonGuard(JsonNode schema) {
+        this(schema, DEFAULT_MAX_PREAMBLE_CHARS);
+    }
+
+    public StreamingJsonGuard(JsonNode schema, int maxPreambleChars) {
+        this.rootSchema = schema;
+        this.maxPreambleChars = maxPreambleChars;
+    }
+
+    /**
+     * Feeds the next chunk of the response to the guard.
+     *
+     * @return A description of the violation if the response can no longer become valid, or empty if it may still be valid.
+     */
+    public Optional<String> accept(String chunk) {
+        received.append(chunk);
+        if (finished) {
+            return Optional.empty();
+        }
+        for (int i = 0; i < chunk.length() && !finished; i++) {
+            String violation = next(chunk.charAt(i));
+            if (violation != null) {
+                finished = true;
+                return Optional.of(violation);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return Everything received so far.
+     */
+    public String getReceived() {
+        return received.toString();
+    }
+
+    private String next(char c) {
+        if (!started) {
+            return beforeStart(c);
+        }
+        if (inString) {
+            readString(c);
+            return null;
+        }
+        if (Character.isWhitespace(c)) {
+            return null;
+        }
+
+        Frame frame = frames.peek();
+        if (frame.object && frame.expectingKey) {
+            if (c == '"') {
+                inString = true;
+                key = new StringBuilder();
+                frame.expectingKey = false;
+            }
+            else if (c == '}') {
+                close(c);
+            }
+            else {
+                // Unquoted or single-quoted keys are repaired by the parser, but cannot be tracked reliably here.
+                stop();
+            }
+            return null;
+        }
+        if (frame.expectingValue) {
+            frame.expectingValue = false;
+            if (!frame.object && c == ']') {
+                close(c);
+                return null;
+            }
+            return startValue(frame, c);
+        }
+
+        switch (c) {
+            case ':' -> {
+                if (frame.object) {
+                    frame.expectingValue = true;
+                }
+                else {
+                    stop();
+                }
+            }
+            case ',' -> {
+                if (frame.object) {
+                    frame.expectingKey = true;
+                }
+                else {
+                    frame.expectingValue = true;
+                }
+            }
+            case '}', ']' -> close(c);
+            case '"', '\'', '{', '[' -> stop();
+            default -> {
+                // The remaining characters of a scalar, such as a number or literal.
+            }
+        }
+        return null;
+    }
+
+    private String beforeStart(char c) {
+        if (c == '{' || c == '[') {
+            started = true;
+            return startValue(null, c);
+        }
+        if (!Character.isWhitespace(c) && ++preambleChars > maxPreambleChars) {
+            return "The response started with more than " + maxPreambleChars + " characters of text instead of a JSON value.";
+        }
+        return null;
+    }
+
+    private void readString(char c) {
+        if (escaped) {
+            escaped = false;
+        }
+        else if (c == '\\') {
+            escaped = true;
+        }
+        else if (c == '"') {
+            inString = false;
+            if (key != null) {
+                frames.peek().currentKey = key.toString();
+                key = null;
+            }
+            return;
+        }
+        if (key != null) {
+            key.append(c);
+        }
+    }
+
+    /**
+     * Checks the first character of a value against the schema that applies to it, and opens a frame if it starts a container.
+     */
+    private String startValue(Frame parent, char c) {
+        JsonNode schema = schemaOf(parent);
+        if (parent != null && !parent.object) {
+            parent.items++;
+            JsonNode maxItems = (parent.schema != null) ? parent.schema.get("maxItems") : null;
+            if (maxItems != null && maxItems.isInt() && parent.items > maxItems.asInt()) {
+                return "The array at " + describePath(enclosingFrame()) + " has more than the allowed " + maxItems.asInt() + " items.";
+            }
+        }
+        String path = describePath(parent);
+
+        String kind = switch (c) {
+            case '{' -> "object";
+            case '[' -> "array";
+            case '"' -> "string";
+            case 't', 'f' -> "boolean";
+            case 'n' -> "null";
+            default -> (c == '-' || Character.isDigit(c)) ? "number" : null;
+        };
+        if (kind == null) {
+            // Anything else, e.g., a single-quoted string, is left to the tolerant parser.
+            stop();
+            return null;
+        }
+
+        Set<String> allowed = allowedTypes(schema);
+        boolean containerInvolved = kind.equals("object") || kind.equals("array") || allowed.contains("object") || allowed.contains("array");
+        if (!allowed.isEmpty() && !isAllowed(kind, allowed) && containerInvolved) {
+            return "Expected " + String.join(" or ", allowed) + " at " + path + " but the response contains " + describeKind(kind) + ".";
+        }
+
+        switch (kind) {
+            case "object" -> frames.push(new Frame(true, schema));
+            case "array" -> frames.push(new Frame(false, schema));
+            case "string" -> inString = true;
+            default -> {
+                // Scalars are consumed until the next ',' or closing bracket.
+            }
+        }
+        return null;
+    }
+
+    private void close(char c) {
+        Frame frame = frames.pop();
+        if (frame.object != (c == '}')) {
+            stop();
+            return;
+        }
+        if (frames.isEmpty()) {
+            // Anything after the root value is ignored by the parser.
+            finished = true;
+        }
+    }
+
+    private JsonNode schemaOf(Frame parent) {
+        if (parent == null) {
+            return rootSchema;
+        }
+        if (parent.schema == null) {
+            return null;
+        }
+        if (parent.object) {
+            JsonNode properties = parent.schema.get("properties");
+            return (properties != null && parent.currentKey != null) ? properties.get(parent.currentKey) : null;
+        }
+        return parent.schema.get("items");
+    }
+
+    private static Set<String> allowedTypes(JsonNode schema) {
+        if (schema == null || !schema.has("type")) {
+            return Set.of();
+        }
+        JsonNode type = schema.get("type");
+        if (type.isTextual()) {
+            return Set.of(type.asText());
+        }
+        Set<String> types = new LinkedHashSet<>();
+        type.forEach(t -> types.add(t.asText()));
+        return types;
+    }
+
+    private static String describeKind(String kind) {
+        return switch (kind) {
+            case "null" -> "null";
+            case "object", "array" -> "an " + kind;
+            default -> "a " + kind;
+        };
+    }
+
+    private static boolean isAllowed(String kind, Set<String> allowed) {
+        return allowed.contains(kind) || ("number".equals(kind) && allowed.contains("integer"));
+    }
+
+    /**
+     * @return The frame that contains the innermost open container, or null if that container is the root value.
+     */
+    private Frame enclosingFrame() {
+        Iterator<Frame> iterator = frames.iterator();
+        iterator.next();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Describes where a value of the given parent starts, e.g., {@code $.questions[2]}.
+     */
+    private String describePath(Frame parent) {
+        if (parent == null) {
+            return "$";
+        }
+        StringBuilder path = new StringBuilder("$");
+        List<Frame> outermostFirst = new ArrayList<>(frames);
+        Collections.reverse(outermostFirst);
+        for (Frame frame : outermostFirst) {
+            path.append(frame.object ? "." + frame.currentKey : "[" + Math.max(frame.items - 1, 0) + "]");
+            if (frame == parent) {
+                break;
+            }
+        }
+        return path.toString();
+    }
+
+    private void stop() {
+        finished = true;
+    }
+}
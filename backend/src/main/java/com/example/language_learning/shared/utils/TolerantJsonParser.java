@@ -0,0 +1,172 @@
+package com.example.language_learning.shared.utils;
+
+import com.fasterxml.jackson.core.*;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Parses the JSON value in an AI response straight into a {@link JsonNode} in a single streaming pass.
+ * <p>
+ * The parser tolerates the mistakes language models commonly make: text or code fences around the JSON, comments,
+ * single quotes, unquoted keys, trailing commas, raw control characters in strings and duplicate keys (the last one wins).
+ * If the response is cut off, e.g., because the model ran out of tokens, every container that is still open is closed
+ * and the value parsed so far is returned. Every repair is recorded with the location where it was made.
+ * <p>
+ * Errors that cannot be repaired while streaming, such as a missing comma, are thrown so the caller can fall back
+ * to the more thorough repair pipeline.
+ */
+class TolerantJsonParser {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_YAML_COMMENTS)
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .enable(JsonReadFeature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER)
+            .enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_LEADING_PLUS_SIGN_FOR_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_LEADING_DECIMAL_POINT_FOR_NUMBERS)
+            .enable(JsonReadFeature.ALLOW_TRAILING_DECIMAL_POINT_FOR_NUMBERS)
+            .build();
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    /**
+     * @param node The parsed value.
+     * @param repairs A description of each repair that was needed, including its location in the response.
+     */
+    record Result(JsonNode node, List<String> repairs) {}
+
+    private TolerantJsonParser() {}
+
+    /**
+     * @throws JsonProcessingException If the response contains no JSON value, or an error that cannot be repaired while streaming.
+     */
+    static Result parse(String response) throws JsonProcessingException {
+        List<String> repairs = new ArrayList<>();
+        int start = findStart(response);
+        if (start == -1) {
+            throw new JsonParseException(null, "The response does not contain a JSON object or array.");
+        }
+        if (start > 0) {
+            repairs.add("Skipped " + start + " characters before the JSON value.");
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser(response.substring(start))) {
+            JsonNode root = readTree(parser, repairs);
+            int end = start + (int) parser.currentLocation().getCharOffset();
+            if (end < response.length() && !response.substring(end).isBlank()) {
+                repairs.add("Ignored the text after the JSON value at " + describe(parser.currentLocation()) + ".");
+            }
+            return new Result(root, repairs);
+        }
+        catch (JsonProcessingException e) {
+            throw e;
+        }
+        catch (IOException e) {
+            // Parsing an in-memory string never performs real I/O.
+            throw new JsonParseException(null, "Failed to read the response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds the tree from the token stream, keeping one open container per nesting level.
+     */
+    private static JsonNode readTree(JsonParser parser, List<String> repairs) throws IOException {
+        Deque<JsonNode> containers = new ArrayDeque<>();
+        JsonNode root = null;
+        String fieldName = null;
+
+        try {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                switch (token) {
+                    case FIELD_NAME -> fieldName = parser.currentName();
+                    case START_OBJECT, START_ARRAY -> {
+                        JsonNode container = (token == JsonToken.START_OBJECT) ? NODES.objectNode() : NODES.arrayNode();
+                        if (containers.isEmpty()) {
+                            root = container;
+                        }
+                        else {
+                            add(containers.peek(), fieldName, container);
+                        }
+                        containers.push(container);
+                        fieldName = null;
+                    }
+                    case END_OBJECT, END_ARRAY -> {
+                        containers.pop();
+                        if (containers.isEmpty()) {
+                            // Stop at the end of the root value, so any text after it is never tokenized.
+                            return root;
+                        }
+                    }
+                    default -> {
+                        add(containers.peek(), fieldName, readScalar(parser, token));
+                        fieldName = null;
+                    }
+                }
+            }
+        }
+        catch (JsonEOFException e) {
+            // The response was cut off. Everything parsed so far is already part of the tree, so closing the containers only means dropping them.
+            repairs.add("Closed " + containers.size() + " unterminated container(s) at " + describe(e.getLocation())
+                    + (fieldName != null ? ", dropping the field '" + fieldName + "' that had no value." : "."));
+            return root;
+        }
+        throw new JsonParseException(parser, "The response ended before the JSON value started.");
+    }
+
+    private static JsonNode readScalar(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_STRING -> NODES.textNode(parser.getText());
+            case VALUE_NUMBER_INT -> switch (parser.getNumberType()) {
+                case INT -> NODES.numberNode(parser.getIntValue());
+                case LONG -> NODES.numberNode(parser.getLongValue());
+                default -> NODES.numberNode(parser.getBigIntegerValue());
+            };
+            case VALUE_NUMBER_FLOAT -> parser.isNaN()
+                    ? NODES.nullNode()
+                    : NODES.numberNode(parser.getDoubleValue());
+            case VALUE_TRUE -> NODES.booleanNode(true);
+            case VALUE_FALSE -> NODES.booleanNode(false);
+            default -> NODES.nullNode();
+        };
+    }
+
+    private static void add(JsonNode container, String fieldName, JsonNode value) {
+        if (container instanceof ObjectNode object) {
+            object.set(fieldName, value);
+        }
+        else {
+            ((ArrayNode) container).add(value);
+        }
+    }
+
+    /**
+     * @return The index of the first '{' or '[', which skips any conversational text or code fence before the JSON.
+     */
+    private static int findStart(String response) {
+        for (int i = 0; i < response.length(); i++) {
+            char c = response.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String describe(JsonLocation location) {
+        return (location == null) ? "an unknown location" : "line " + location.getLineNr() + ", column " + location.getColumnNr();
+    }
+}
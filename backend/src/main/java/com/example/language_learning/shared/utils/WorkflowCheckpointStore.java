@@ -0,0 +1,22 @@
+package com.example.language_learning.shared.utils;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Persists the outputs of completed workflow steps, so a workflow that is run again for the same context
+ * (e.g., after its worker died) can resume after the last completed step instead of repeating it.
+ *
+ * @param <C> The Context type, which identifies the run the checkpoints belong to.
+ */
+public interface WorkflowCheckpointStore<C> {
+
+    /**
+     * @return A Mono that emits the saved output of the given step, or completes empty if the step has no checkpoint.
+     */
+    <T> Mono<T> load(C context, String step, Class<T> outputType);
+
+    /**
+     * Saves the output of the given step, replacing any previous checkpoint of that step.
+     */
+    Mono<Void> save(C context, String step, Object output);
+}
@@ -56,6 +56,8 @@ public class StoryBookRepositoryImpl implements StoryBookRepositoryCustom {
                             STORY_PAGE.ID,
                             STORY_PAGE.TYPE,
                             STORY_PAGE.IMAGE_URL,
+                            STORY_PAGE.IMAGE_SRCSET,
+                            STORY_PAGE.PREVIEW_IMAGE_URL,
                             STORY_PAGE.ENGLISH_SUMMARY,
                             STORY_PAGE.CREATED_AT,
                             multiset(
@@ -118,6 +120,8 @@ public class StoryBookRepositoryImpl implements StoryBookRepositoryCustom {
                     storyPage.setId(srp.get(STORY_PAGE.ID));
                     storyPage.setType(StoryPageType.valueOf(srp.get(STORY_PAGE.TYPE, String.class)));
                     storyPage.setImageUrl(srp.get(STORY_PAGE.IMAGE_URL));
+                    storyPage.setImageSrcset(srp.get(STORY_PAGE.IMAGE_SRCSET));
+                    storyPage.setPreviewImageUrl(srp.get(STORY_PAGE.PREVIEW_IMAGE_URL));
                     storyPage.setEnglishSummary(srp.get(STORY_PAGE.ENGLISH_SUMMARY));
                     storyPage.setCreatedAt(srp.get(STORY_PAGE.CREATED_AT));
 
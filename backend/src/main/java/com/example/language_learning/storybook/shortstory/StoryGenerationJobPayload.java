@@ -0,0 +1,11 @@
+package com.example.language_learning.storybook.shortstory;
+
+import com.example.language_learning.storybook.requests.ShortStoryGenerationRequest;
+
+/**
+ * The data stored with a story generation job, enough to restart the generation on any node.
+ */
+public record StoryGenerationJobPayload(
+    ShortStoryGenerationRequest request,
+    Long storyId
+) {}
@@ -4,34 +4,41 @@ import com.example.language_learning.ai.contexts.StoryGenerationContext;
 import com.example.language_learning.ai.inputs.StoryPrepInput;
 import com.example.language_learning.ai.outputs.StoryPrepOutput;
 import com.example.language_learning.ai.states.StoryGenerationState;
-import com.example.language_learning.shared.exceptions.PageGenerationException;
 import com.example.language_learning.shared.exceptions.StoryGenerationException;
 import com.example.language_learning.shared.mapper.DtoMapper;
+import com.example.language_learning.shared.jobs.GenerationJob;
+import com.example.language_learning.shared.jobs.GenerationJobHandler;
+import com.example.language_learning.shared.jobs.GenerationJobQueue;
+import com.example.language_learning.shared.jobs.GenerationJobType;
 import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
 import com.example.language_learning.shared.services.ProgressService;
-import com.example.language_learning.shared.utils.StateMachineFactory;
+import com.example.language_learning.shared.utils.ReactiveStateMachineFactory;
 import com.example.language_learning.shared.utils.SyncWorkflow;
 import com.example.language_learning.storybook.requests.ShortStoryGenerationRequest;
 import com.example.language_learning.storybook.responses.StoryGenerationResponse;
 import com.example.language_learning.user.User;
+import com.example.language_learning.user.UserRepository;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.support.TransactionSynchronization;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Mono;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class StoryGenerationService {
+public class StoryGenerationService implements GenerationJobHandler {
 
     private final SyncWorkflow<StoryPrepInput, StoryPrepOutput> storyPrepWorkflow;
-    private final StateMachineFactory<StoryGenerationState, StoryGenerationContext> stateMachineFactory;
-    private final JobQueueService jobQueueService;
+    private final ReactiveStateMachineFactory<StoryGenerationState, StoryGenerationContext> stateMachineFactory;
+    private final GenerationJobQueue generationJobQueue;
     private final ProgressService progressService;
+    private final JobQueueService jobQueueService;
     private final DtoMapper dtoMapper;
     private final ShortStoryService shortStoryService;
+    private final UserRepository userRepository;
+    private final StoryImagePrefetcher storyImagePrefetcher;
 
     @Transactional
     public StoryGenerationResponse initiateShortStoryGeneration(ShortStoryGenerationRequest request, User user) {
@@ -39,12 +46,12 @@ public class StoryGenerationService {
         StoryPrepOutput output = new StoryPrepOutput();
         storyPrepWorkflow.execute(input, output);
 
-        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-            @Override
-            public void afterCommit() {
-                generateStoryAsync(request, output.getTaskId(), output.getShortStory().getId(), user);
-            }
-        });
+        generationJobQueue.enqueue(
+                GenerationJobType.STORY_GENERATION,
+                output.getTaskId(),
+                user,
+                new StoryGenerationJobPayload(request, output.getShortStory().getId())
+        );
 
         return StoryGenerationResponse.builder()
                 .taskId(output.getTaskId())
@@ -52,33 +59,40 @@ public class StoryGenerationService {
                 .build();
     }
 
-    private void generateStoryAsync(ShortStoryGenerationRequest request, String taskId, Long storyId, User user) {
-        Runnable storyGenerationJob = () -> {
-            StoryGenerationContext context = new StoryGenerationContext(request, taskId, storyId, user);
-            var sm = stateMachineFactory.createInstance();
+    @Override
+    public GenerationJobType jobType() {
+        return GenerationJobType.STORY_GENERATION;
+    }
+
+    @Override
+    public Mono<Void> handle(GenerationJob job) {
+        StoryGenerationJobPayload payload = generationJobQueue.readPayload(job, StoryGenerationJobPayload.class);
+        return jobQueueService.submit(Backend.DB, () -> userRepository.findById(job.userId())
+                        .orElseThrow(() -> new IllegalStateException("User " + job.userId() + " for task " + job.taskId() + " no longer exists.")))
+                .flatMap(user -> generateStoryAsync(payload.request(), job.taskId(), payload.storyId(), user));
+    }
+
+    @Override
+    public void onFailed(GenerationJob job, Throwable cause) {
+        log.debug("DIAGNOSTIC: StoryGenerationService - Failure handler entered for task {}.", job.taskId());
+        StoryGenerationJobPayload payload = generationJobQueue.readPayload(job, StoryGenerationJobPayload.class);
+        shortStoryService.deleteShortStory(payload.storyId());
+        storyImagePrefetcher.discard(payload.storyId());
+        log.error("Story generation failed for task {}: {}", job.taskId(), cause.getMessage(), cause);
+        userRepository.findById(job.userId()).ifPresent(user -> progressService.sendError(job.taskId(), cause, user));
+    }
 
-            try {
-                sm.runToCompletion(context)
-                        .onCompletion(StoryGenerationState.COMPLETED.class, completed -> {
-                            progressService.sendCompletion(context.getTaskId(), "Story generation complete.", user);
-                            log.info("Story generation process completed successfully for task {}.", context.getTaskId());
-                        })
-                        .onError(StoryGenerationState.FAILED.class, failedState -> {
-                            log.debug("DIAGNOSTIC: StoryGenerationService - State machine .onError entered for task {}.", context.getTaskId());
-                            shortStoryService.deleteShortStory(storyId);
-                            Exception error = new StoryGenerationException(failedState.errorMessage());
-                            log.error("Story generation failed for task {}: {}", context.getTaskId(), error.getMessage(), error);
-                            progressService.sendError(context.getTaskId(), error, user);
-                        })
-                        .execute();
-            }
-            catch (Exception e) {
-                // This catch block prevents the job thread from dying due to the exception re-thrown by .execute().
-                // The error message has already been sent by the state machine's .onError handler.
-                log.error("DIAGNOSTIC: StoryGenerationService - Caught exception from state machine execution for task {}. Thread will terminate gracefully.", taskId, e);
-            }
-        };
+    private Mono<Void> generateStoryAsync(ShortStoryGenerationRequest request, String taskId, Long storyId, User user) {
+        // Failures are left to the job dispatcher, which retries the job from its checkpoints before giving up on it.
+        StoryGenerationContext context = new StoryGenerationContext(request, taskId, storyId, user);
 
-        jobQueueService.submitJob(storyGenerationJob);
+        return stateMachineFactory.createInstance()
+                .runToCompletion(context)
+                .onCompletion(StoryGenerationState.COMPLETED.class, completed -> completed)
+                .onError(StoryGenerationState.FAILED.class, failedState -> new StoryGenerationException(failedState.errorMessage()))
+                .<StoryGenerationState>asMono()
+                // The task is completed by the story's image job, which keeps sending illustrated pages to the same subscribers.
+                .doOnSuccess(completed -> log.info("Story generation process completed successfully for task {}.", context.getTaskId()))
+                .then();
     }
 }
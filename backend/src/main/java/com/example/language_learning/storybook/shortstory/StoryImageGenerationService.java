@@ -0,0 +1,152 @@
+package com.example.language_learning.storybook.shortstory;
+
+import com.example.language_learning.ai.AIEngine;
+import com.example.language_learning.ai.enums.ImageQuality;
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
+import com.example.language_learning.shared.jobs.GenerationJob;
+import com.example.language_learning.shared.jobs.GenerationJobHandler;
+import com.example.language_learning.shared.jobs.GenerationJobQueue;
+import com.example.language_learning.shared.jobs.GenerationJobType;
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
+import com.example.language_learning.shared.services.ProgressService;
+import com.example.language_learning.storybook.shortstory.page.StoryPageDTO;
+import com.example.language_learning.storybook.shortstory.page.StoryPageService;
+import com.example.language_learning.user.User;
+import com.example.language_learning.user.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Illustrates the pages of a story in the background, after the story's text has been persisted and shown to the user.
+ * <p>
+ * Each page's image is saved to {@code story_pages.image_url} as soon as it is rendered, and the updated page is sent
+ * to the subscribers of the story's generation task. A failed attempt is retried by the job dispatcher and only renders
+ * the pages that still have no image. If the job is given up on, the story is kept without the missing images.
+ * <p>
+ * Images that {@link StoryImagePrefetcher} started while the story was streaming are used as they are; only the
+ * remaining pages are rendered here. If previews are enabled, those pages are first sent with a fast, low-step preview
+ * in {@code previewImageUrl}, which the client shows until the page is sent again with its full {@code imageUrl}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class StoryImageGenerationService implements GenerationJobHandler {
+
+    private final AIEngine aiEngine;
+    private final GenerationJobQueue generationJobQueue;
+    private final ProgressService progressService;
+    private final JobQueueService jobQueueService;
+    private final StoryPageService storyPageService;
+    private final UserRepository userRepository;
+    private final StoryImagePrefetcher storyImagePrefetcher;
+
+    /**
+     * Enqueues the illustration of the story. Enqueueing the same story again, e.g., from a retried story job, is a no-op.
+     */
+    public void enqueue(String storyTaskId, Long storyId, User user) {
+        generationJobQueue.enqueueFollowUp(GenerationJobType.STORY_IMAGES, storyTaskId + "-images", user.getId(),
+                new StoryImageJobPayload(storyTaskId, storyId));
+    }
+
+    @Override
+    public GenerationJobType jobType() {
+        return GenerationJobType.STORY_IMAGES;
+    }
+
+    @Override
+    public Mono<Void> handle(GenerationJob job) {
+        StoryImageJobPayload payload = generationJobQueue.readPayload(job, StoryImageJobPayload.class);
+        return jobQueueService.submit(Backend.DB, () -> userRepository.findById(job.userId())
+                        .orElseThrow(() -> new IllegalStateException("User " + job.userId() + " for task " + job.taskId() + " no longer exists.")))
+                .flatMap(user -> jobQueueService.submit(Backend.DB, () -> storyPageService.getPagesWithoutImages(payload.storyId()))
+                        .flatMap(pages -> illustrate(payload, pages, user))
+                        .doOnSuccess(done -> progressService.sendCompletion(payload.storyTaskId(), "Story illustrations complete.", user)));
+    }
+
+    @Override
+    public void onFailed(GenerationJob job, Throwable cause) {
+        StoryImageJobPayload payload = generationJobQueue.readPayload(job, StoryImageJobPayload.class);
+        log.error("Illustrating story {} failed for task {}. The story is kept without its missing images: {}", payload.storyId(), job.taskId(), cause.getMessage(), cause);
+        userRepository.findById(job.userId()).ifPresent(user ->
+                progressService.sendCompletion(payload.storyTaskId(), "Some illustrations could not be created.", user));
+    }
+
+    private Mono<Void> illustrate(StoryImageJobPayload payload, List<StoryPageDTO> pages, User user) {
+        if (pages.isEmpty()) {
+            log.info("Story {} has no pages left to illustrate.", payload.storyId());
+            return Mono.empty();
+        }
+
+        // Pages with the same summary share one image.
+        Map<String, List<Long>> pageIdsBySummary = pages.stream()
+                .collect(Collectors.groupingBy(StoryPageDTO::englishSummary, LinkedHashMap::new,
+                        Collectors.mapping(StoryPageDTO::id, Collectors.toList())));
+        progressService.sendUpdate(payload.storyTaskId(), 100, "Creating illustrations for the story...", user);
+
+        Map<String, CompletableFuture<StoredImageDTO>> prefetched = storyImagePrefetcher.take(payload.storyId(), pageIdsBySummary.keySet());
+        List<String> remaining = pageIdsBySummary.keySet().stream()
+                .filter(summary -> !prefetched.containsKey(summary))
+                .toList();
+        log.info("Illustrating {} page summaries of story {}, {} of them prefetched while the story was written.",
+                pageIdsBySummary.size(), payload.storyId(), pageIdsBySummary.size() - remaining.size());
+
+        // A prefetched image that failed is skipped. Its pages keep no image, so the job's retry renders them again.
+        Flux<Map.Entry<String, StoredImageDTO>> prefetchedImages = Flux.fromIterable(pageIdsBySummary.keySet())
+                .filter(prefetched::containsKey)
+                .flatMap(summary -> Mono.fromFuture(prefetched.get(summary))
+                        .map(image -> Map.entry(summary, image))
+                        .onErrorResume(e -> {
+                            log.warn("A prefetched illustration of story {} failed: {}", payload.storyId(), e.getMessage());
+                            return Mono.empty();
+                        }));
+        // The other pages are first sketched as previews, which the full-quality images replace as they are rendered.
+        List<String> withoutPreviews = pages.stream()
+                .filter(page -> page.previewImageUrl() == null && remaining.contains(page.englishSummary()))
+                .map(StoryPageDTO::englishSummary)
+                .distinct()
+                .toList();
+        Flux<Map.Entry<String, StoredImageDTO>> renderedImages = remaining.isEmpty()
+                ? Flux.empty()
+                : renderPreviews(payload, withoutPreviews, pageIdsBySummary, user).thenMany(aiEngine.streamImages(remaining));
+
+        return Flux.merge(prefetchedImages, renderedImages)
+                .concatMap(imageByPrompt -> jobQueueService.submit(Backend.DB, () -> storyPageService.setImage(
+                        payload.storyId(), pageIdsBySummary.get(imageByPrompt.getKey()), imageByPrompt.getValue())))
+                .flatMapIterable(updatedPages -> updatedPages)
+                .doOnNext(page -> progressService.sendPageUpdate(payload.storyTaskId(), 100, "Illustrated a page.", page, user))
+                .count()
+                .flatMap(illustrated -> (illustrated < pages.size())
+                        ? Mono.error(new IllegalStateException((pages.size() - illustrated) + " page(s) of story " + payload.storyId() + " could not be illustrated."))
+                        : Mono.empty());
+    }
+
+    /**
+     * Renders fast previews of the summaries and sends each page with its preview as soon as it is saved.
+     * Previews are optional, so a failed preview only means the page waits for its full image.
+     */
+    private Mono<Void> renderPreviews(StoryImageJobPayload payload, List<String> summaries, Map<String, List<Long>> pageIdsBySummary, User user) {
+        if (!aiEngine.isImagePreviewEnabled() || summaries.isEmpty()) {
+            return Mono.empty();
+        }
+        return aiEngine.streamImages(summaries, ImageQuality.PREVIEW)
+                .concatMap(previewByPrompt -> jobQueueService.submit(Backend.DB, () -> storyPageService.setPreviewImageUrl(
+                        payload.storyId(), pageIdsBySummary.get(previewByPrompt.getKey()), previewByPrompt.getValue().url())))
+                .flatMapIterable(updatedPages -> updatedPages)
+                .doOnNext(page -> progressService.sendPageUpdate(payload.storyTaskId(), 100, "Sketched a page.", page, user))
+                .onErrorResume(e -> {
+                    log.warn("Previews of story {} could not be rendered. Its pages wait for their full images: {}", payload.storyId(), e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.language_learning.storybook.shortstory;
+
+/**
+ * The data stored with a story image job, which illustrates the pages of a story after its text has been persisted.
+ *
+ * @param storyTaskId The task id of the story's generation, whose subscribers receive the illustrated pages.
+ */
+public record StoryImageJobPayload(
+    String storyTaskId,
+    Long storyId
+) {}
@@ -0,0 +1,190 @@
+package com.example.language_learning.storybook.shortstory;
+
+import com.example.language_learning.ai.AIEngine;
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
+import com.example.language_learning.shared.services.ImageService;
+import com.example.language_learning.shared.services.JobQueueService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.context.ContextView;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Starts rendering a page's illustration as soon as the page's summary has been streamed by the model,
+ * while the rest of the story is still being written.
+ * <p>
+ * The images are held by story until the story's image job takes them, for the latest attempt of the story's
+ * generation only: once a later attempt streams its pages, the renders of the earlier attempt are cancelled.
+ * Renders run with the Reactor context of the generation that streamed them, so they take their image permits
+ * for the story's user. The images live in this node's memory only: if the image job runs elsewhere, or its summaries
+ * differ from the streamed ones, it renders the pages itself. Images that are never taken are evicted after a while.
+ * Renders that are dropped, whether superseded, not kept, discarded or evicted, are cancelled, and the images they
+ * already stored are deleted so they do not linger in storage without a page.
+ */
+@Component
+@Slf4j
+public class StoryImagePrefetcher {
+
+    private final AIEngine aiEngine;
+    private final ImageService imageService;
+    private final JobQueueService jobQueueService;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Map<Long, Prefetch> prefetchesByStory = new ConcurrentHashMap<>();
+
+    /**
+     * The images being rendered for one attempt of a story's generation, by summary.
+     */
+    private record Prefetch(int attempt, Instant started, Map<String, CompletableFuture<StoredImageDTO>> images) {}
+
+    public StoryImagePrefetcher(AIEngine aiEngine, ImageService imageService, JobQueueService jobQueueService,
+                                @Value("${app.images.prefetch-ttl:PT30M}") Duration ttl) {
+        this(aiEngine, imageService, jobQueueService, ttl, Clock.systemUTC());
+    }
+
+    StoryImagePrefetcher(AIEngine aiEngine, ImageService imageService, JobQueueService jobQueueService, Duration ttl, Clock clock) {
+        this.aiEngine = aiEngine;
+        this.imageService = imageService;
+        this.jobQueueService = jobQueueService;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Starts rendering the image for a page summary of the story, unless it is already being rendered.
+     * A summary of a later attempt cancels the renders of the earlier attempt; a summary of an earlier attempt is ignored.
+     *
+     * @param context The Reactor context of the generation, which decides who the image permit is taken for.
+     */
+    public void prefetch(Long storyId, int attempt, String summary, ContextView context) {
+        prefetchesByStory.compute(storyId, (id, current) -> {
+            Prefetch prefetch = current;
+            if (prefetch != null && prefetch.attempt() > attempt) {
+                return prefetch;
+            }
+            if (prefetch == null || prefetch.attempt() < attempt) {
+                if (prefetch != null) {
+                    log.info("Attempt {} of story {} superseded attempt {}. Cancelling its {} prefetched illustration(s).",
+                            attempt, storyId, prefetch.attempt(), prefetch.images().size());
+                    release(prefetch);
+                }
+                prefetch = new Prefetch(attempt, clock.instant(), new HashMap<>());
+            }
+            prefetch.images().computeIfAbsent(summary, key -> {
+                log.info("Prefetching the illustration of a page of story {}.", storyId);
+                return render(key, context);
+            });
+            return prefetch;
+        });
+    }
+
+    /**
+     * Hands the story's prefetched images of the given summaries over to the caller, and cancels the others.
+     *
+     * @return The images being rendered for the summaries, by summary. Empty if none were prefetched on this node.
+     */
+    public Map<String, CompletableFuture<StoredImageDTO>> take(Long storyId, Set<String> summaries) {
+        Prefetch prefetch = prefetchesByStory.remove(storyId);
+        if (prefetch == null) {
+            return Map.of();
+        }
+        Map<String, CompletableFuture<StoredImageDTO>> taken = new HashMap<>();
+        prefetch.images().forEach((summary, image) -> {
+            if (summaries.contains(summary)) {
+                taken.put(summary, image);
+            }
+            else {
+                release(image);
+            }
+        });
+        if (taken.size() < prefetch.images().size()) {
+            log.info("Cancelled {} prefetched illustration(s) of story {} whose summaries were not kept.", prefetch.images().size() - taken.size(), storyId);
+        }
+        return taken;
+    }
+
+    /**
+     * Drops the story's prefetched images, e.g., because the story's generation failed.
+     */
+    public void discard(Long storyId) {
+        Prefetch prefetch = prefetchesByStory.remove(storyId);
+        if (prefetch != null) {
+            release(prefetch);
+            log.info("Discarded {} prefetched illustration(s) of story {}.", prefetch.images().size(), storyId);
+        }
+    }
+
+    /**
+     * Drops the prefetched images that were never taken, e.g., because the story's image job ran on another node.
+     */
+    @Scheduled(fixedDelayString = "${app.images.prefetch-eviction-interval-ms:60000}")
+    public void evictExpired() {
+        Instant expiry = clock.instant().minus(ttl);
+        prefetchesByStory.forEach((storyId, prefetch) -> {
+            if (prefetch.started().isBefore(expiry) && prefetchesByStory.remove(storyId, prefetch)) {
+                release(prefetch);
+                log.info("Evicted {} prefetched illustration(s) of story {} that were never taken.", prefetch.images().size(), storyId);
+            }
+        });
+    }
+
+    /**
+     * Renders the image of a summary into a future. Cancelling the future cancels the render, and an image that is
+     * stored after the future was cancelled is deleted, since no one can take it anymore.
+     */
+    private CompletableFuture<StoredImageDTO> render(String summary, ContextView context) {
+        CompletableFuture<StoredImageDTO> image = new CompletableFuture<>();
+        Disposable rendering = aiEngine.streamImages(List.of(summary))
+                .next()
+                .map(Map.Entry::getValue)
+                .contextWrite(context)
+                .subscribe(
+                        stored -> {
+                            if (!image.complete(stored)) {
+                                delete(stored);
+                            }
+                        },
+                        image::completeExceptionally,
+                        () -> image.complete(null));
+        image.whenComplete((stored, error) -> {
+            if (image.isCancelled()) {
+                rendering.dispose();
+            }
+        });
+        return image;
+    }
+
+    private void release(Prefetch prefetch) {
+        prefetch.images().values().forEach(this::release);
+    }
+
+    /**
+     * Cancels a render that is still running, or deletes the image it already stored.
+     */
+    private void release(CompletableFuture<StoredImageDTO> image) {
+        if (image.cancel(true) || image.isCompletedExceptionally()) {
+            return;
+        }
+        StoredImageDTO stored = image.join();
+        if (stored != null) {
+            delete(stored);
+        }
+    }
+
+    private void delete(StoredImageDTO image) {
+        // Removing files blocks on storage, and releases happen while the story's prefetches are being updated.
+        jobQueueService.submitJob(() -> imageService.deleteImage(image));
+    }
+}
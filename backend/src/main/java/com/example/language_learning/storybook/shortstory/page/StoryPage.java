@@ -29,6 +29,14 @@ public class StoryPage extends BasePage {
     @Column(columnDefinition = "TEXT")
     private String imageUrl;
 
+    // The size variants of imageUrl as an HTML srcset value.
+    @Column(columnDefinition = "TEXT")
+    private String imageSrcset;
+
+    // A fast render shown until imageUrl is set.
+    @Column(columnDefinition = "TEXT")
+    private String previewImageUrl;
+
     @Enumerated(EnumType.STRING)
     private StoryPageType type;
 
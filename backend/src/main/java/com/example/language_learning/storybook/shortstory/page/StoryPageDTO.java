@@ -17,6 +17,8 @@ public record StoryPageDTO(
     StoryPageType type,
     String englishSummary,
     String imageUrl,
+    String imageSrcset,
+    String previewImageUrl,
     List<StoryParagraphDTO> paragraphs,
     List<StoryVocabularyItemDTO> vocabulary
 ) implements ProgressData {}
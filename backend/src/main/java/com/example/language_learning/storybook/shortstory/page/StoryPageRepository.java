@@ -5,12 +5,15 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface StoryPageRepository extends JpaRepository<StoryPage, Long>, StoryPageRepositoryCustom {
 
+    boolean existsByShortStoryId(Long shortStoryId);
+
     @Query("SELECT sp FROM StoryPage sp LEFT JOIN FETCH sp.paragraphs WHERE sp.id = :id")
     Optional<StoryPage> findByIdWithParagraphs(@Param("id") Long id);
 
@@ -23,6 +26,12 @@ public interface StoryPageRepository extends JpaRepository<StoryPage, Long>, Sto
     @Query("SELECT DISTINCT sp FROM StoryPage sp LEFT JOIN FETCH sp.vocabulary WHERE sp.shortStory.id = :storyId")
     List<StoryPage> loadPagesWithVocabulary(@Param("storyId") Long storyId);
 
+    @Query("SELECT DISTINCT sp FROM StoryPage sp LEFT JOIN FETCH sp.paragraphs WHERE sp.id IN :ids")
+    List<StoryPage> loadPagesWithParagraphsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT DISTINCT sp FROM StoryPage sp LEFT JOIN FETCH sp.vocabulary WHERE sp.id IN :ids")
+    List<StoryPage> loadPagesWithVocabularyByIdIn(@Param("ids") Collection<Long> ids);
+
     @Query("SELECT DISTINCT sp FROM StoryPage sp LEFT JOIN FETCH sp.paragraphs WHERE sp.shortStory.id IN :storyIds")
     List<StoryPage> loadPagesWithParagraphsIn(@Param("storyIds") List<Long> storyIds);
 
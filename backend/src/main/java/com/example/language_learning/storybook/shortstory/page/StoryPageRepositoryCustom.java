@@ -2,8 +2,19 @@ package com.example.language_learning.storybook.shortstory.page;
 
 import com.example.language_learning.storybook.shortstory.ShortStory;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface StoryPageRepositoryCustom {
     void batchInsertPages(ShortStory shortStory, List<StoryPage> storyPages);
+
+    /**
+     * @return The ids of the updated pages.
+     */
+    List<Long> updateImage(Long shortStoryId, Collection<Long> pageIds, String imageUrl, String imageSrcset);
+
+    /**
+     * @return The ids of the updated pages, i.e., the given pages that do not have their full image yet.
+     */
+    List<Long> updatePreviewImageUrl(Long shortStoryId, Collection<Long> pageIds, String previewImageUrl);
 }
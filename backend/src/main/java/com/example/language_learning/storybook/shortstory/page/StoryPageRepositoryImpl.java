@@ -18,6 +18,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.stream.IntStream;
 
@@ -127,4 +128,29 @@ public class StoryPageRepositoryImpl implements StoryPageRepositoryCustom {
             dsl.batchInsert(vocabularyItemRecords).execute();
         }
     }
+
+    @Override
+    @Transactional
+    public List<Long> updateImage(Long shortStoryId, Collection<Long> pageIds, String imageUrl, String imageSrcset) {
+        return dsl.update(STORY_PAGE)
+                .set(STORY_PAGE.IMAGE_URL, imageUrl)
+                .set(STORY_PAGE.IMAGE_SRCSET, imageSrcset)
+                .where(STORY_PAGE.SHORT_STORY_ID.eq(shortStoryId))
+                .and(STORY_PAGE.ID.in(pageIds))
+                .returning(STORY_PAGE.ID)
+                .fetch(STORY_PAGE.ID);
+    }
+
+    @Override
+    @Transactional
+    public List<Long> updatePreviewImageUrl(Long shortStoryId, Collection<Long> pageIds, String previewImageUrl) {
+        // A preview that finishes after the full image must not be shown instead of it.
+        return dsl.update(STORY_PAGE)
+                .set(STORY_PAGE.PREVIEW_IMAGE_URL, previewImageUrl)
+                .where(STORY_PAGE.SHORT_STORY_ID.eq(shortStoryId))
+                .and(STORY_PAGE.ID.in(pageIds))
+                .and(STORY_PAGE.IMAGE_URL.isNull())
+                .returning(STORY_PAGE.ID)
+                .fetch(STORY_PAGE.ID);
+    }
 }
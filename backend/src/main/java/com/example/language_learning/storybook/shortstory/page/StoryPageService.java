@@ -1,6 +1,7 @@
 package com.example.language_learning.storybook.shortstory.page;
 
 import com.example.language_learning.ai.enums.Language;
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
 import com.example.language_learning.shared.exceptions.LanguageException;
 import com.example.language_learning.shared.mapper.DtoMapper;
 import com.example.language_learning.shared.services.NlpService;
@@ -13,6 +14,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -136,6 +139,72 @@ public class StoryPageService {
         storyPageRepository.batchInsertPages(managedShortStory, pagesToPersist);
     }
 
+    /**
+     * @return Whether the story already has persisted pages, e.g., from an earlier attempt of its generation job.
+     */
+    @Transactional(readOnly = true)
+    public boolean hasPages(Long storyId) {
+        return storyPageRepository.existsByShortStoryId(storyId);
+    }
+
+    /**
+     * @return Every page of the story, with its paragraphs and vocabulary, in the order the pages were created.
+     */
+    @Transactional(readOnly = true)
+    public List<StoryPageDTO> getPages(Long storyId) {
+        storyPageRepository.loadPagesWithVocabulary(storyId);
+        return storyPageRepository.loadPagesWithParagraphs(storyId).stream()
+                .sorted(Comparator.comparing(StoryPage::getId))
+                .map(dtoMapper::toDto)
+                .toList();
+    }
+
+    /**
+     * @return The content pages of the story that have an image prompt but no image yet.
+     */
+    @Transactional(readOnly = true)
+    public List<StoryPageDTO> getPagesWithoutImages(Long storyId) {
+        return getPages(storyId).stream()
+                .filter(page -> page.type() == StoryPageType.CONTENT && page.imageUrl() == null)
+                .filter(page -> page.englishSummary() != null && !page.englishSummary().isBlank())
+                .toList();
+    }
+
+    /**
+     * Sets the image and its size variants on the given pages, which share the same image prompt.
+     *
+     * @return The updated pages.
+     */
+    @Transactional
+    public List<StoryPageDTO> setImage(Long storyId, Collection<Long> pageIds, StoredImageDTO image) {
+        return getPagesById(storyPageRepository.updateImage(storyId, pageIds, image.url(), image.srcset()));
+    }
+
+    /**
+     * Sets the preview image of the given pages, which share the same image prompt. Pages that already have their
+     * full image keep it.
+     *
+     * @return The updated pages.
+     */
+    @Transactional
+    public List<StoryPageDTO> setPreviewImageUrl(Long storyId, Collection<Long> pageIds, String previewImageUrl) {
+        return getPagesById(storyPageRepository.updatePreviewImageUrl(storyId, pageIds, previewImageUrl));
+    }
+
+    /**
+     * @return The given pages, with their paragraphs and vocabulary, in the order the pages were created.
+     */
+    private List<StoryPageDTO> getPagesById(Collection<Long> pageIds) {
+        if (pageIds.isEmpty()) {
+            return List.of();
+        }
+        storyPageRepository.loadPagesWithVocabularyByIdIn(pageIds);
+        return storyPageRepository.loadPagesWithParagraphsByIdIn(pageIds).stream()
+                .sorted(Comparator.comparing(StoryPage::getId))
+                .map(dtoMapper::toDto)
+                .toList();
+    }
+
     private ShortStory findByIdAndInitializeCollections(Long storyId) {
         ShortStory shortStory = shortStoryRepository.findByIdWithPagesOnly(storyId)
                 .orElseThrow(() -> new RuntimeException("ShortStory not found during page creation: " + storyId));
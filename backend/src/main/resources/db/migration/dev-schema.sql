@@ -11,6 +11,8 @@ END $$;
 create table conjugation_examples (created_at timestamp(6) not null default now(), id bigint generated by default as identity, conjugated_form TEXT, example_sentence TEXT, infinitive varchar(255), sentence_translation TEXT, primary key (id));
 create table conjugation_lesson_examples (lesson_id bigint not null, example_id bigint not null unique);
 create table conjugation_lessons (id bigint not null, conjugation_rule_name varchar(255), explanation TEXT, primary key (id));
+create table generation_checkpoints (created_at timestamp(6) not null default now(), updated_at timestamp(6) not null default now(), id bigint generated by default as identity, step varchar(255) not null, task_id varchar(255) not null, output jsonb not null, primary key (id), unique (task_id, step));
+create table generation_jobs (created_at timestamp(6) not null default now(), updated_at timestamp(6) not null default now(), id bigint generated by default as identity, user_id bigint not null, attempts integer not null default 0, job_type varchar(255) not null check (job_type in ('CHAPTER_GENERATION','STORY_GENERATION','STORY_IMAGES')), status varchar(255) not null check (status in ('QUEUED','RUNNING','COMPLETED','FAILED')), task_id varchar(255) not null unique, payload jsonb not null, lease_owner varchar(255), lease_expires_at timestamptz(6), last_error TEXT, primary key (id));
 create table grammar_lesson_sentences (lesson_id bigint not null, sentence_id bigint not null unique);
 create table grammar_lessons (id bigint not null, explanation TEXT, grammar_concept TEXT, primary key (id));
 create table lesson_books (created_at timestamp(6) not null default now(), id bigint generated by default as identity, user_id bigint, difficulty varchar(255), language varchar(255), title varchar(255), primary key (id));
@@ -25,7 +27,7 @@ create table sentences (created_at timestamp(6) not null default now(), id bigin
 create table settings (auto_speak_enabled boolean default true not null, created_at timestamp(6) not null default now(), id bigint generated by default as identity, difficulty varchar(255), language varchar(255), mascot varchar(255) not null, theme varchar(255) not null, primary key (id));
 create table short_stories (created_at timestamp(6) not null default now(), id bigint generated by default as identity, story_book_id bigint, genre varchar(255), native_title varchar(255) not null, title varchar(255) not null, topic varchar(255), primary key (id));
 create table story_books (created_at timestamp(6) not null default now(), id bigint generated by default as identity, user_id bigint, difficulty varchar(255), language varchar(255), title varchar(255), primary key (id));
-create table story_pages (created_at timestamp(6) not null default now(), id bigint generated by default as identity, short_story_id bigint, english_summary TEXT, image_url TEXT, type varchar(255) check (type in ('CONTENT','VOCABULARY')), primary key (id));
+create table story_pages (created_at timestamp(6) not null default now(), id bigint generated by default as identity, short_story_id bigint, english_summary TEXT, image_url TEXT, image_srcset TEXT, preview_image_url TEXT, type varchar(255) check (type in ('CONTENT','VOCABULARY')), primary key (id));
 create table story_paragraphs (paragraph_number integer not null, created_at timestamp(6) not null default now(), id bigint generated by default as identity, story_page_id bigint, content TEXT, words_to_highlight jsonb not null default '[]'::jsonb, primary key (id));
 create table story_vocabulary_items (created_at timestamp(6) not null default now(), id bigint generated by default as identity, story_page_id bigint, translation varchar(255), word varchar(255) not null, stem varchar(255) not null, primary key (id));
 create table users (created_at timestamp(6) not null default now(), id bigint generated by default as identity, settings_id bigint unique, password varchar(255) not null, username varchar(255) not null unique, email varchar(255) not null unique, refresh_token TEXT, refresh_token_expiry timestamptz(6), primary key (id));
@@ -35,6 +37,8 @@ create table words (created_at timestamp(6) not null default now(), id bigint ge
 alter table if exists conjugation_lesson_examples add constraint FK_conjugation_lesson_examples_example foreign key (example_id) references conjugation_examples;
 alter table if exists conjugation_lesson_examples add constraint FK_conjugation_lesson_examples_lesson foreign key (lesson_id) references conjugation_lessons;
 alter table if exists conjugation_lessons add constraint FK38tvralx9sggqagut8t4sdcj3 foreign key (id) references lessons;
+alter table if exists generation_checkpoints add constraint FK_generation_checkpoints_job foreign key (task_id) references generation_jobs (task_id) on delete cascade;
+alter table if exists generation_jobs add constraint FK_generation_jobs_user foreign key (user_id) references users;
 alter table if exists grammar_lesson_sentences add constraint FKp5swjw3r4thggv392p9utulqm foreign key (sentence_id) references sentences;
 alter table if exists grammar_lesson_sentences add constraint FKfkj12tr05q4scrym82ghb4kqc foreign key (lesson_id) references grammar_lessons;
 alter table if exists grammar_lessons add constraint FKiku87of20ehy5nat5k3eyxr0b foreign key (id) references lessons;
@@ -55,3 +59,4 @@ alter table if exists users add constraint FKkq8mvg6xlyeewn7xnf0usloiq foreign k
 alter table if exists vocabulary_lesson_words add constraint FKtom5gmk7j9j2twl2jgj3y5vgs foreign key (word_id) references words;
 alter table if exists vocabulary_lesson_words add constraint FK8wyxitqffta5mdc13m24kg97f foreign key (lesson_id) references vocabulary_lessons;
 alter table if exists vocabulary_lessons add constraint FKhph8a887h0miud0nxrlne4n6b foreign key (id) references lessons;
+create index idx_generation_jobs_claim on generation_jobs (status, created_at);
@@ -1,6 +1,8 @@
 create table if not exists conjugation_examples (created_at timestamp(6) not null default now(), id bigint generated by default as identity, conjugated_form TEXT, example_sentence TEXT, infinitive varchar(255), sentence_translation TEXT, primary key (id));
 create table if not exists conjugation_lesson_examples (lesson_id bigint not null, example_id bigint not null unique);
 create table if not exists conjugation_lessons (id bigint not null, conjugation_rule_name varchar(255), explanation TEXT, primary key (id));
+create table if not exists generation_checkpoints (created_at timestamp(6) not null default now(), updated_at timestamp(6) not null default now(), id bigint generated by default as identity, step varchar(255) not null, task_id varchar(255) not null, output jsonb not null, primary key (id), unique (task_id, step));
+create table if not exists generation_jobs (created_at timestamp(6) not null default now(), updated_at timestamp(6) not null default now(), id bigint generated by default as identity, user_id bigint not null, attempts integer not null default 0, job_type varchar(255) not null check (job_type in ('CHAPTER_GENERATION','STORY_GENERATION','STORY_IMAGES')), status varchar(255) not null check (status in ('QUEUED','RUNNING','COMPLETED','FAILED')), task_id varchar(255) not null unique, payload jsonb not null, lease_owner varchar(255), lease_expires_at timestamptz(6), last_error TEXT, primary key (id));
 create table if not exists grammar_lesson_sentences (lesson_id bigint not null, sentence_id bigint not null unique);
 create table if not exists grammar_lessons (id bigint not null, explanation TEXT, grammar_concept TEXT, primary key (id));
 create table if not exists lesson_books (created_at timestamp(6) not null default now(), id bigint generated by default as identity, user_id bigint, difficulty varchar(255), language varchar(255), title varchar(255), primary key (id));
@@ -15,7 +17,7 @@ create table if not exists sentences (created_at timestamp(6) not null default n
 create table if not exists settings (auto_speak_enabled boolean default true not null, created_at timestamp(6) not null default now(), id bigint generated by default as identity, difficulty varchar(255), language varchar(255), mascot varchar(255) not null, theme varchar(255) not null, primary key (id));
 create table if not exists short_stories (created_at timestamp(6) not null default now(), id bigint generated by default as identity, story_book_id bigint, genre varchar(255), native_title varchar(255) not null, title varchar(255) not null, topic varchar(255), primary key (id));
 create table if not exists story_books (created_at timestamp(6) not null default now(), id bigint generated by default as identity, user_id bigint, difficulty varchar(255), language varchar(255), title varchar(255), primary key (id));
-create table if not exists story_pages (created_at timestamp(6) not null default now(), id bigint generated by default as identity, short_story_id bigint, english_summary TEXT, image_url TEXT, type varchar(255) check (type in ('CONTENT','VOCABULARY')), primary key (id));
+create table if not exists story_pages (created_at timestamp(6) not null default now(), id bigint generated by default as identity, short_story_id bigint, english_summary TEXT, image_url TEXT, image_srcset TEXT, preview_image_url TEXT, type varchar(255) check (type in ('CONTENT','VOCABULARY')), primary key (id));
 create table if not exists story_paragraphs (paragraph_number integer not null, created_at timestamp(6) not null default now(), id bigint generated by default as identity, story_page_id bigint, content TEXT, words_to_highlight jsonb not null default '[]'::jsonb, primary key (id));
 create table if not exists story_vocabulary_items (created_at timestamp(6) not null default now(), id bigint generated by default as identity, story_page_id bigint, translation varchar(255), word varchar(255) not null, stem varchar(255) not null, primary key (id));
 create table if not exists users (created_at timestamp(6) not null default now(), id bigint generated by default as identity, settings_id bigint unique, password varchar(255) not null, username varchar(255) not null unique, email varchar(255) not null unique, refresh_token TEXT, refresh_token_expiry timestamptz(6), primary key (id));
@@ -206,3 +208,35 @@ BEGIN
     END IF;
 END;
 $$;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'fk_generation_jobs_user') THEN
+        ALTER TABLE generation_jobs ADD CONSTRAINT FK_generation_jobs_user FOREIGN KEY (user_id) REFERENCES users;
+    END IF;
+END;
+$$;
+
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'fk_generation_checkpoints_job') THEN
+        ALTER TABLE generation_checkpoints ADD CONSTRAINT FK_generation_checkpoints_job FOREIGN KEY (task_id) REFERENCES generation_jobs (task_id) ON DELETE CASCADE;
+    END IF;
+END;
+$$;
+
+-- Tables created before the STORY_IMAGES job type existed keep the old check constraint, so it is replaced here.
+DO $$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = 'generation_jobs_job_type_check' AND pg_get_constraintdef(oid) LIKE '%STORY_IMAGES%') THEN
+        ALTER TABLE generation_jobs DROP CONSTRAINT IF EXISTS generation_jobs_job_type_check;
+        ALTER TABLE generation_jobs ADD CONSTRAINT generation_jobs_job_type_check CHECK (job_type in ('CHAPTER_GENERATION','STORY_GENERATION','STORY_IMAGES'));
+    END IF;
+END;
+$$;
+
+-- Tables created before preview images and image variants existed get their columns here.
+alter table if exists story_pages add column if not exists preview_image_url TEXT;
+alter table if exists story_pages add column if not exists image_srcset TEXT;
+
+create index if not exists idx_generation_jobs_claim on generation_jobs (status, created_at);
@@ -0,0 +1,226 @@
+package com.example.language_learning.ai.config;
+
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Backend;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+/**
+ * Runs the pool against local stub servers that answer Ollama's health check endpoint.
+ */
+class ChatClientPoolTest {
+    private final List<HttpServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void stopServers() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    @Test
+    void routesToTheEndpointWithTheFewestCallsInFlight() throws IOException {
+        ChatClientPool pool = pool(startStub(), startStub());
+        ChatClientPool.Endpoint first = pool.getEndpoints().get(0);
+        ChatClientPool.Endpoint second = pool.getEndpoints().get(1);
+
+        Sinks.One<String> pending = Sinks.one();
+        pool.execute(client -> pending.asMono()).subscribe();
+        assertThat(first.getInFlight().get()).isEqualTo(1);
+
+        String chosen = pool.execute(client -> Mono.just(client == second.getChatClient() ? "second" : "first")).block();
+        assertThat(chosen).isEqualTo("second");
+
+        pending.tryEmitValue("done");
+        assertThat(first.getInFlight().get()).isZero();
+    }
+
+    @Test
+    void selectsAnEndpointOnlyOnceTheCallHoldsAnLlmPermit() throws IOException {
+        ChatClientPool pool = pool(startStub(), startStub(), startStub());
+        JobQueueService jobQueueService = new JobQueueService("virtual", 1, 1, 1, 1);
+        List<ChatClient> selected = new CopyOnWriteArrayList<>();
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+
+        try {
+            jobQueueService.limit(Backend.LLM, pool.execute(client -> {
+                selected.add(client);
+                return first.asMono();
+            })).subscribe();
+            jobQueueService.limit(Backend.LLM, pool.execute(client -> {
+                selected.add(client);
+                return second.asMono();
+            })).subscribe();
+
+            // The queued call is neither counted as in flight nor pinned to an endpoint while it waits for the single permit.
+            assertThat(selected).hasSize(1);
+            assertThat(totalInFlight(pool)).isEqualTo(1);
+
+            first.tryEmitValue("done");
+            await().atMost(Duration.ofSeconds(5)).until(() -> selected.size() == 2);
+            assertThat(totalInFlight(pool)).isEqualTo(1);
+
+            second.tryEmitValue("done");
+            await().atMost(Duration.ofSeconds(5)).until(() -> totalInFlight(pool) == 0);
+        }
+        finally {
+            jobQueueService.shutdown();
+        }
+    }
+
+    @Test
+    void poolsOnTheSameServersShareTheirLoadAndPermits() throws IOException {
+        String firstServer = baseUrl(startStub());
+        String secondServer = baseUrl(startStub());
+        Map<String, AtomicInteger> inFlightByServer = new HashMap<>();
+        ChatClientPool heavy = pool("heavy", inFlightByServer, firstServer, secondServer);
+        ChatClientPool light = pool("light", inFlightByServer, firstServer, secondServer);
+        JobQueueService jobQueueService = new JobQueueService("virtual", 1, 1, 1, 1);
+        List<String> servers = new CopyOnWriteArrayList<>();
+        Sinks.One<String> pending = Sinks.one();
+
+        try {
+            new OllamaServerPermits(Map.of("heavy", heavy, "light", light), jobQueueService, 1);
+            jobQueueService.limit(Backend.LLM, heavy.execute(client -> {
+                servers.add(serverOf(heavy, client));
+                return pending.asMono();
+            })).subscribe();
+            jobQueueService.limit(Backend.LLM, light.execute(client -> {
+                servers.add(serverOf(light, client));
+                return pending.asMono();
+            })).subscribe();
+            jobQueueService.limit(Backend.LLM, light.execute(client -> {
+                servers.add(serverOf(light, client));
+                return pending.asMono();
+            })).subscribe();
+
+            // One permit per server: the light call avoids the server busy with the heavy call, and the third call waits.
+            assertThat(servers).containsExactly(firstServer, secondServer);
+
+            pending.tryEmitValue("done");
+            await().atMost(Duration.ofSeconds(5)).until(() -> servers.size() == 3);
+        }
+        finally {
+            jobQueueService.shutdown();
+        }
+    }
+
+    @Test
+    void healthCheckEjectsAndReadmitsEndpoints() throws IOException {
+        HttpServer stub = startStub();
+        ChatClientPool pool = pool(baseUrl(stub), unusedBaseUrl());
+        ChatClientPool.Endpoint healthy = pool.getEndpoints().get(0);
+        ChatClientPool.Endpoint down = pool.getEndpoints().get(1);
+
+        pool.checkHealth();
+        assertThat(healthy.isHealthy()).isTrue();
+        assertThat(down.isHealthy()).isFalse();
+
+        // The healthy endpoint is chosen even though it is busier.
+        healthy.getInFlight().incrementAndGet();
+        assertThat(pool.select()).isSameAs(healthy);
+
+        stub.stop(0);
+        pool.checkHealth();
+        assertThat(healthy.isHealthy()).isFalse();
+    }
+
+    @Test
+    void ejectsAnEndpointAfterConsecutiveConnectionFailures() throws IOException {
+        ChatClientPool pool = pool(startStub(), startStub());
+        ChatClientPool.Endpoint first = pool.getEndpoints().get(0);
+        WebClientRequestException refused = new WebClientRequestException(new IOException("Connection refused"),
+                HttpMethod.POST, URI.create(first.getBaseUrl()), new HttpHeaders());
+
+        for (int i = 0; i < 2; i++) {
+            pool.execute(client -> Mono.error(refused)).onErrorResume(e -> Mono.empty()).block();
+        }
+        assertThat(first.isHealthy()).isFalse();
+
+        // An invalid response is not the server's fault and must not eject it.
+        ChatClientPool.Endpoint second = pool.getEndpoints().get(1);
+        for (int i = 0; i < 3; i++) {
+            pool.execute(client -> Mono.error(new IllegalStateException("invalid JSON"))).onErrorResume(e -> Mono.empty()).block();
+        }
+        assertThat(second.isHealthy()).isTrue();
+    }
+
+    private ChatClientPool pool(HttpServer... stubs) {
+        return pool(Arrays.stream(stubs).map(this::baseUrl).toArray(String[]::new));
+    }
+
+    private ChatClientPool pool(String... baseUrls) {
+        List<ChatClientPool.Endpoint> endpoints = Arrays.stream(baseUrls)
+                .map(baseUrl -> new ChatClientPool.Endpoint(baseUrl, Mockito.mock(ChatClient.class)))
+                .toList();
+        return new ChatClientPool("test", endpoints, WebClient.builder(), Duration.ofSeconds(1), 2);
+    }
+
+    private ChatClientPool pool(String name, Map<String, AtomicInteger> inFlightByServer, String... baseUrls) {
+        List<ChatClientPool.Endpoint> endpoints = Arrays.stream(baseUrls)
+                .map(baseUrl -> new ChatClientPool.Endpoint(baseUrl, Mockito.mock(ChatClient.class),
+                        inFlightByServer.computeIfAbsent(baseUrl, url -> new AtomicInteger())))
+                .toList();
+        return new ChatClientPool(name, endpoints, WebClient.builder(), Duration.ofSeconds(1), 2);
+    }
+
+    private static int totalInFlight(ChatClientPool pool) {
+        return pool.getEndpoints().stream().mapToInt(endpoint -> endpoint.getInFlight().get()).sum();
+    }
+
+    private static String serverOf(ChatClientPool pool, ChatClient client) {
+        return pool.getEndpoints().stream()
+                .filter(endpoint -> endpoint.getChatClient() == client)
+                .map(ChatClientPool.Endpoint::getBaseUrl)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private HttpServer startStub() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/version", exchange -> {
+            byte[] body = "{\"version\":\"0.0.0\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        servers.add(server);
+        return server;
+    }
+
+    private String baseUrl(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private String unusedBaseUrl() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+}
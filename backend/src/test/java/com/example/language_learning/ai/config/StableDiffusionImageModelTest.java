@@ -0,0 +1,65 @@
+package com.example.language_learning.ai.config;
+
+import com.example.language_learning.ai.config.model.StableDiffusionImageResponse;
+import com.example.language_learning.ai.config.properties.StableDiffusionProperties;
+import com.example.language_learning.ai.enums.ImageQuality;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.image.ImageGeneration;
+import org.springframework.ai.image.ImageMessage;
+import org.springframework.ai.image.ImagePrompt;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The client is a mock that answers each call with an image naming its prompt, e.g., "a cat#0", which the model passes on as the image's URL.
+ */
+class StableDiffusionImageModelTest {
+    private final StableDiffusionClient client = mock(StableDiffusionClient.class);
+    private final StableDiffusionImageModel model = new StableDiffusionImageModel(client, properties());
+
+    @Test
+    void rendersEachPromptInACallOfItsOwn() {
+        when(client.promptTextToImage(anyString(), any())).thenAnswer(invocation -> response(List.of(invocation.getArgument(0) + "#0")));
+
+        List<String> images = render(ImageQuality.PREVIEW, "a cat", "a dog");
+
+        assertThat(images).containsExactly("a cat#0", "a dog#0");
+        verify(client).promptTextToImage("a cat", ImageQuality.PREVIEW);
+        verify(client).promptTextToImage("a dog", ImageQuality.PREVIEW);
+    }
+
+    @Test
+    void skipsPromptsWithoutAnImage() {
+        when(client.promptTextToImage(anyString(), any())).thenAnswer(invocation ->
+                response("a dog".equals(invocation.getArgument(0)) ? List.of() : List.of(invocation.getArgument(0) + "#0")));
+
+        assertThat(render(ImageQuality.FULL, "a cat", "a dog", "a bird")).containsExactly("a cat#0", "a bird#0");
+    }
+
+    private List<String> render(ImageQuality quality, String... prompts) {
+        ImagePrompt prompt = new ImagePrompt(List.of(prompts).stream().map(ImageMessage::new).toList());
+        return model.call(prompt, quality).getResults().stream()
+                .map(ImageGeneration::getOutput)
+                .map(image -> image.getUrl())
+                .toList();
+    }
+
+    private static StableDiffusionImageResponse response(List<String> images) {
+        StableDiffusionImageResponse response = new StableDiffusionImageResponse();
+        response.setImages(images);
+        return response;
+    }
+
+    private static StableDiffusionProperties properties() {
+        StableDiffusionProperties.Options options = new StableDiffusionProperties.Options(
+                "model", 512, 512, 20, "", 7.0, "Euler a", List.of("style"));
+        return new StableDiffusionProperties("http://localhost", 2, new StableDiffusionProperties.Image(options, null));
+    }
+}
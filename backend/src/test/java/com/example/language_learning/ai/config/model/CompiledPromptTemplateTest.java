@@ -0,0 +1,58 @@
+package com.example.language_learning.ai.config.model;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledPromptTemplateTest {
+
+    @Test
+    void rendersEveryInstructionFileLikeSpringAiPromptTemplate() throws IOException {
+        Resource[] instructions = new PathMatchingResourcePatternResolver().getResources("classpath:prompts/**/instructions/*.txt");
+        assertThat(instructions).isNotEmpty();
+
+        for (Resource instruction : instructions) {
+            String text = instruction.getContentAsString(StandardCharsets.UTF_8);
+            CompiledPromptTemplate compiled = CompiledPromptTemplate.compile(instruction.getFilename(), text);
+            Map<String, Object> params = new HashMap<>();
+            compiled.getVariables().forEach(variable -> params.put(variable, "<" + variable + " value>"));
+
+            assertThat(compiled.render(params))
+                    .as(instruction.getFilename())
+                    .isEqualTo(new PromptTemplate(text).render(params));
+        }
+    }
+
+    @Test
+    void rendersConcurrentlyWithoutSharingParameters() {
+        CompiledPromptTemplate compiled = CompiledPromptTemplate.compile("greeting", "Write a {level} lesson about {topic}.");
+
+        String beginner = compiled.render(Map.of("level", "beginner", "topic", "food", "unused", "ignored"));
+        String advanced = compiled.render(Map.of("level", "advanced", "topic", "travel"));
+
+        assertThat(compiled.getVariables()).containsExactly("level", "topic");
+        assertThat(beginner).isEqualTo("Write a beginner lesson about food.");
+        assertThat(advanced).isEqualTo("Write a advanced lesson about travel.");
+    }
+
+    @Test
+    void rejectsMissingParametersAndInvalidTemplates() {
+        CompiledPromptTemplate compiled = CompiledPromptTemplate.compile("greeting", "Write a {level} lesson about {topic}.");
+
+        assertThatThrownBy(() -> compiled.render(Map.of("level", "beginner")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("[topic]");
+        assertThatThrownBy(() -> CompiledPromptTemplate.compile("broken", "Write a {level lesson."))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("broken");
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.language_learning.ai.services;
+
+import com.example.language_learning.ai.config.properties.PromptSizingProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Serves the tokenizer from a local stub of the Hugging Face hub.
+ */
+class PinnedTokenizerFileTest {
+    private static final byte[] TOKENIZER = "{\"version\":\"1.0\"}".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path cacheDir;
+
+    private HttpServer hub;
+    private final AtomicInteger downloads = new AtomicInteger();
+
+    @BeforeEach
+    void startHub() throws IOException {
+        hub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        hub.createContext("/Qwen/Qwen3-8B/resolve/abc123/tokenizer.json", exchange -> {
+            downloads.incrementAndGet();
+            exchange.sendResponseHeaders(200, TOKENIZER.length);
+            exchange.getResponseBody().write(TOKENIZER);
+            exchange.close();
+        });
+        hub.start();
+    }
+
+    @AfterEach
+    void stopHub() {
+        hub.stop(0);
+    }
+
+    @Test
+    void downloadsThePinnedRevisionOnceAndThenUsesTheCache() throws Exception {
+        PinnedTokenizerFile resolver = new PinnedTokenizerFile(HttpClient.newHttpClient(), cacheDir);
+
+        Path first = resolver.resolve(tokenizer("abc123", sha256(TOKENIZER)));
+        Path second = resolver.resolve(tokenizer("abc123", sha256(TOKENIZER)));
+
+        assertThat(first).isEqualTo(second).hasBinaryContent(TOKENIZER);
+        assertThat(first).startsWith(cacheDir.resolve("tokenizers/Qwen/Qwen3-8B/abc123"));
+        assertThat(downloads).hasValue(1);
+    }
+
+    @Test
+    void rejectsADownloadWithTheWrongChecksum() throws IOException {
+        PinnedTokenizerFile resolver = new PinnedTokenizerFile(HttpClient.newHttpClient(), cacheDir);
+
+        assertThatThrownBy(() -> resolver.resolve(tokenizer("abc123", "0".repeat(64))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("SHA-256");
+
+        try (var files = Files.walk(cacheDir)) {
+            assertThat(files.filter(Files::isRegularFile)).isEmpty();
+        }
+    }
+
+    @Test
+    void replacesACachedFileThatDoesNotMatchItsChecksum() throws Exception {
+        Path cached = cacheDir.resolve("tokenizers/Qwen/Qwen3-8B/abc123/tokenizer.json");
+        Files.createDirectories(cached.getParent());
+        Files.writeString(cached, "{\"truncated\":");
+
+        Path resolved = new PinnedTokenizerFile(HttpClient.newHttpClient(), cacheDir).resolve(tokenizer("abc123", sha256(TOKENIZER)));
+
+        assertThat(resolved).hasBinaryContent(TOKENIZER);
+        assertThat(downloads).hasValue(1);
+    }
+
+    @Test
+    void failsForAMissingRevision() {
+        PinnedTokenizerFile resolver = new PinnedTokenizerFile(HttpClient.newHttpClient(), cacheDir);
+
+        assertThatThrownBy(() -> resolver.resolve(tokenizer("unknown", sha256(TOKENIZER))))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("404");
+    }
+
+    private PromptSizingProperties.Tokenizer tokenizer(String revision, String sha256) {
+        return new PromptSizingProperties.Tokenizer("http://127.0.0.1:" + hub.getAddress().getPort(), "Qwen/Qwen3-8B", revision, sha256);
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.language_learning.ai.services;
+
+import com.example.language_learning.ai.config.properties.PromptSizingProperties;
+import com.example.language_learning.ai.enums.PromptType;
+import com.example.language_learning.shared.exceptions.AIEngineException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs without a tokenizer, so prompt tokens are estimated as one per two characters.
+ */
+class PromptSizingServiceTest {
+    private static final PromptType PROMPT_TYPE = PromptType.values()[0];
+    private static final int NUM_CTX = 4096;
+    private static final int NUM_PREDICT = 2048;
+
+    private PromptSizingService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = service(true);
+    }
+
+    @Test
+    void usesTheModelsNumPredictUntilEnoughOutputsWereObserved() {
+        service.recordOutput(PROMPT_TYPE, 100);
+
+        assertThat(service.sizeNumPredict(PROMPT_TYPE, "prompt", 0, NUM_CTX, NUM_PREDICT)).contains(NUM_PREDICT);
+    }
+
+    @Test
+    void sizesNumPredictFromTheObservedOutputsWithinTheModelsLimits() {
+        for (int i = 0; i < 3; i++) {
+            service.recordOutput(PROMPT_TYPE, 400);
+        }
+        assertThat(service.sizeNumPredict(PROMPT_TYPE, "prompt", 0, NUM_CTX, NUM_PREDICT)).contains(500);
+
+        for (int i = 0; i < 3; i++) {
+            service.recordOutput(PROMPT_TYPE, 10_000);
+        }
+        assertThat(service.sizeNumPredict(PROMPT_TYPE, "prompt", 0, NUM_CTX, NUM_PREDICT)).contains(NUM_PREDICT);
+    }
+
+    @Test
+    void raisedNumPredictIsLimitedToWhatTheContextLeaves() {
+        String prompt = "x".repeat(4000);
+
+        int numPredict = service.sizeNumPredict(PROMPT_TYPE, prompt, 3000, NUM_CTX, NUM_PREDICT).orElseThrow();
+
+        assertThat(numPredict).isLessThan(3000).isEqualTo(NUM_CTX - service.countTokens("system") - 2000 - 64);
+    }
+
+    @Test
+    void failsWhenThePromptLeavesTooLittleOfTheContextForTheResponse() {
+        String prompt = "x".repeat(2 * NUM_CTX);
+
+        assertThatThrownBy(() -> service.sizeNumPredict(PROMPT_TYPE, prompt, 0, NUM_CTX, NUM_PREDICT))
+                .isInstanceOf(AIEngineException.class)
+                .hasMessageContaining(String.valueOf(NUM_CTX));
+    }
+
+    @Test
+    void leavesTheRequestAloneWhenDisabled() throws Exception {
+        PromptSizingService disabled = service(false);
+
+        assertThat(disabled.sizeNumPredict(PROMPT_TYPE, "x".repeat(2 * NUM_CTX), 0, NUM_CTX, NUM_PREDICT)).isEmpty();
+    }
+
+    private static PromptSizingService service(boolean enabled) throws Exception {
+        PromptSizingProperties properties = new PromptSizingProperties(
+                enabled, null, 256, 1.0, 1.25, 10, 3);
+        PromptSizingService service = new PromptSizingService(properties);
+        ReflectionTestUtils.setField(service, "systemPrompt", new ByteArrayResource("system".getBytes()));
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.language_learning.ai.services;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaFormatSupportTest {
+    private static final Duration RETRY_AFTER = Duration.ofMinutes(30);
+
+    private final Clock clock = Mockito.mock(Clock.class);
+    private final SchemaFormatSupport support = new SchemaFormatSupport(RETRY_AFTER, clock);
+    private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void treatsOnlyABadRequestAboutTheFormatAsARejection() {
+        assertThat(support.isFormatRejected(error(400, "{\"error\":\"invalid format: expected \\\"json\\\" or a JSON schema\"}"))).isTrue();
+        assertThat(support.isFormatRejected(error(400, "{\"error\":\"invalid JSON schema in format\"}"))).isTrue();
+        assertThat(support.isFormatRejected(error(400, "{\"error\":\"invalid options: num_ctx\"}"))).isFalse();
+        assertThat(support.isFormatRejected(new IllegalStateException("format"))).isFalse();
+    }
+
+    @Test
+    void doesNotTreatAMissingModelAsARejection() {
+        assertThat(support.isFormatRejected(error(404, "{\"error\":\"model \\\"qwen3:8b\\\" not found, try pulling it first\"}"))).isFalse();
+    }
+
+    @Test
+    void doesNotTreatARateLimitAsARejection() {
+        assertThat(support.isFormatRejected(error(429, "{\"error\":\"too many requests for this format\"}"))).isFalse();
+    }
+
+    @Test
+    void triesTheFormatAgainAfterTheRetryPeriod() {
+        ChatClient rejecting = Mockito.mock(ChatClient.class);
+        ChatClient other = Mockito.mock(ChatClient.class);
+        Mockito.when(clock.instant()).thenAnswer(invocation -> now);
+
+        support.markUnsupported(rejecting);
+        assertThat(support.isSupported(rejecting)).isFalse();
+        assertThat(support.isSupported(other)).isTrue();
+
+        now = now.plus(RETRY_AFTER).minusSeconds(1);
+        assertThat(support.isSupported(rejecting)).isFalse();
+
+        now = now.plusSeconds(1);
+        assertThat(support.isSupported(rejecting)).isTrue();
+    }
+
+    private static WebClientResponseException error(int status, String body) {
+        return WebClientResponseException.create(status, "", new HttpHeaders(), body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+}
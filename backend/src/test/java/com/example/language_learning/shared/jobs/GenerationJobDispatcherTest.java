@@ -0,0 +1,81 @@
+package com.example.language_learning.shared.jobs;
+
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.ProgressService;
+import com.example.language_learning.shared.services.ReactiveJobExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class GenerationJobDispatcherTest {
+
+    private final GenerationJobRepository repository = Mockito.mock(GenerationJobRepository.class);
+    private final JobQueueService jobQueueService = new JobQueueService("virtual", 1, 1, 1, 1);
+    private final ReactiveJobExecutor reactiveJobExecutor = new ReactiveJobExecutor(1);
+
+    @AfterEach
+    void shutdownExecutors() {
+        jobQueueService.shutdown();
+    }
+
+    @Test
+    void cancelsRunningJobsBeforeReturningThemToTheQueueOnShutdown() {
+        GenerationJob job = new GenerationJob(7L, GenerationJobType.STORY_GENERATION, "task-7", 1L, "{}", 1);
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicBoolean cancelledBeforeRequeue = new AtomicBoolean();
+        GenerationJobHandler handler = handler(Mono.<Void>never()
+                .doOnSubscribe(subscription -> started.set(true))
+                .doOnCancel(() -> cancelled.set(true)));
+        when(repository.claim(anyString(), anyInt(), anyInt(), anyInt(), any())).thenReturn(List.of(job));
+        when(repository.requeue(anyString(), anyCollection())).thenAnswer(invocation -> {
+            cancelledBeforeRequeue.set(cancelled.get());
+            return 1;
+        });
+        GenerationJobDispatcher dispatcher = dispatcher(handler);
+
+        dispatcher.poll();
+        await().atMost(Duration.ofSeconds(5)).untilTrue(started);
+        dispatcher.shutdown();
+
+        assertThat(cancelledBeforeRequeue).isTrue();
+        verify(repository).requeue(anyString(), eq(Set.of(7L)));
+        // A cancelled job is handed back as is, not counted as a failed attempt.
+        verify(repository, never()).retry(any(), anyString(), any());
+    }
+
+    private GenerationJobDispatcher dispatcher(GenerationJobHandler handler) {
+        return new GenerationJobDispatcher(repository, Mockito.mock(GenerationCheckpoints.class), reactiveJobExecutor,
+                jobQueueService, Mockito.mock(ProgressService.class), List.of(handler),
+                "test-node", 10, 3, 1, Duration.ofMinutes(5));
+    }
+
+    private static GenerationJobHandler handler(Mono<Void> execution) {
+        return new GenerationJobHandler() {
+            @Override
+            public GenerationJobType jobType() {
+                return GenerationJobType.STORY_GENERATION;
+            }
+
+            @Override
+            public Mono<Void> handle(GenerationJob job) {
+                return execution;
+            }
+
+            @Override
+            public void onFailed(GenerationJob job, Throwable cause) {
+            }
+        };
+    }
+}
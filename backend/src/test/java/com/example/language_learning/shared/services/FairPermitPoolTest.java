@@ -0,0 +1,170 @@
+package com.example.language_learning.shared.services;
+
+import com.example.language_learning.shared.services.JobQueueService.Backend;
+import com.example.language_learning.shared.services.JobQueueService.Priority;
+import com.example.language_learning.shared.services.JobQueueService.SchedulingKey;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class FairPermitPoolTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void grantsFreePermitsRightAwayAndQueuesTheRest() {
+        FairPermitPool pool = new FairPermitPool(1);
+
+        FairPermitPool.Permit first = pool.acquire(background("alice"));
+        FairPermitPool.Permit second = pool.acquire(background("alice"));
+
+        assertThat(first.granted()).isDone();
+        assertThat(second.granted()).isNotDone();
+        assertThat(pool.getWaiting()).isEqualTo(1);
+
+        first.release();
+        assertThat(second.granted()).isDone();
+        assertThat(pool.getWaiting()).isZero();
+    }
+
+    @Test
+    void grantsReleasedPermitsToInteractiveWaitersFirst() {
+        FairPermitPool pool = new FairPermitPool(1);
+        FairPermitPool.Permit held = pool.acquire(background("alice"));
+        FairPermitPool.Permit background = pool.acquire(background("bob"));
+        FairPermitPool.Permit interactive = pool.acquire(new SchedulingKey(Priority.INTERACTIVE, "carol"));
+
+        held.release();
+
+        assertThat(interactive.granted()).isDone();
+        assertThat(background.granted()).isNotDone();
+
+        interactive.release();
+        assertThat(background.granted()).isDone();
+    }
+
+    @Test
+    void letsOwnersTakeTurnsWithinAPriority() {
+        FairPermitPool pool = new FairPermitPool(1);
+        FairPermitPool.Permit held = pool.acquire(background("system"));
+        List<FairPermitPool.Permit> alice = List.of(pool.acquire(background("alice")), pool.acquire(background("alice")), pool.acquire(background("alice")));
+        FairPermitPool.Permit bob = pool.acquire(background("bob"));
+
+        held.release();
+        assertThat(alice.get(0).granted()).isDone();
+
+        // Alice queued first and has more requests waiting, but Bob gets the next turn.
+        alice.get(0).release();
+        assertThat(bob.granted()).isDone();
+        assertThat(alice.get(1).granted()).isNotDone();
+
+        bob.release();
+        assertThat(alice.get(1).granted()).isDone();
+        alice.get(1).release();
+        assertThat(alice.get(2).granted()).isDone();
+    }
+
+    @Test
+    void removesAReleasedWaiterFromTheQueue() {
+        FairPermitPool pool = new FairPermitPool(1);
+        FairPermitPool.Permit held = pool.acquire(background("alice"));
+        FairPermitPool.Permit abandoned = pool.acquire(background("bob"));
+        FairPermitPool.Permit next = pool.acquire(background("carol"));
+
+        abandoned.release();
+        abandoned.release();
+        assertThat(pool.getWaiting()).isEqualTo(1);
+
+        held.release();
+        assertThat(abandoned.granted()).isNotDone();
+        assertThat(next.granted()).isDone();
+
+        // The pool still has exactly one permit.
+        assertThat(pool.acquire(background("dave")).granted()).isNotDone();
+    }
+
+    @Test
+    void grantsAddedPermitsRightAwayAndRetiresRemovedOnesOnRelease() {
+        FairPermitPool pool = new FairPermitPool(1);
+        FairPermitPool.Permit held = pool.acquire(background("alice"));
+        FairPermitPool.Permit waiting = pool.acquire(background("bob"));
+
+        pool.resize(2);
+        assertThat(waiting.granted()).isDone();
+
+        pool.resize(1);
+        FairPermitPool.Permit queued = pool.acquire(background("carol"));
+        held.release();
+        // Two permits were in use when the pool shrank to one, so the released permit is retired.
+        assertThat(queued.granted()).isNotDone();
+
+        waiting.release();
+        assertThat(queued.granted()).isDone();
+        assertThat(pool.getCapacity()).isEqualTo(1);
+    }
+
+    @Test
+    void releasesThePermitWhenALimitedCallIsCancelled() {
+        JobQueueService jobQueueService = new JobQueueService("virtual", 1, 1, 1, 1);
+        AtomicBoolean queuedCallSubscribed = new AtomicBoolean();
+
+        try {
+            StepVerifier.create(jobQueueService.limit(Backend.LLM, Mono.never()))
+                    .expectSubscription()
+                    .thenCancel()
+                    .verify(TIMEOUT);
+
+            // A call that is cancelled while it still waits for a permit must not take one later either.
+            StepVerifier.create(jobQueueService.limit(Backend.LLM, Mono.never()))
+                    .then(() -> jobQueueService.limit(Backend.LLM, Mono.fromRunnable(() -> queuedCallSubscribed.set(true)))
+                            .subscribe()
+                            .dispose())
+                    .thenCancel()
+                    .verify(TIMEOUT);
+
+            StepVerifier.create(jobQueueService.limit(Backend.LLM, Mono.just("done")))
+                    .expectNext("done")
+                    .verifyComplete();
+            assertThat(queuedCallSubscribed).isFalse();
+        }
+        finally {
+            jobQueueService.shutdown();
+        }
+    }
+
+    @Test
+    void schedulesLimitedCallsByThePriorityInTheContext() {
+        JobQueueService jobQueueService = new JobQueueService("virtual", 1, 1, 1, 1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Sinks.Empty<Void> held = Sinks.empty();
+
+        try {
+            jobQueueService.limit(Backend.LLM, held.asMono()).subscribe();
+            jobQueueService.limit(Backend.LLM, Mono.fromRunnable(() -> order.add("background"))).subscribe();
+            jobQueueService.limit(Backend.LLM, Mono.fromRunnable(() -> order.add("interactive")))
+                    .contextWrite(JobQueueService.forUser(Priority.INTERACTIVE, 1L))
+                    .subscribe();
+            assertThat(order).isEmpty();
+
+            held.tryEmitEmpty();
+            await().atMost(TIMEOUT).until(() -> order.size() == 2);
+            assertThat(order).containsExactly("interactive", "background");
+        }
+        finally {
+            jobQueueService.shutdown();
+        }
+    }
+
+    private static SchedulingKey background(String owner) {
+        return new SchedulingKey(Priority.BACKGROUND, owner);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.language_learning.shared.services;
+
+import com.example.language_learning.shared.dtos.progress.ProgressUpdateDTO;
+import com.example.language_learning.storybook.shortstory.page.StoryPageDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+
+/**
+ * Paces updates on virtual time with a display interval of one second.
+ */
+class ProgressPacerTest {
+    private static final String TASK_ID = "task";
+    private static final Duration INTERVAL = Duration.ofSeconds(1);
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+    private final ProgressPacer pacer = new ProgressPacer(INTERVAL, scheduler);
+    private Sinks.Many<ProgressUpdateDTO> updates;
+
+    @BeforeEach
+    void setUp() {
+        updates = Sinks.many().unicast().onBackpressureBuffer();
+    }
+
+    @Test
+    void pacesAndCoalescesMessageOnlyUpdates() {
+        StepVerifier.create(pacer.pace(updates.asFlux()))
+                .then(() -> updates.tryEmitNext(message("Writing...")))
+                .then(scheduler::advanceTime)
+                .expectNextMatches(update -> update.message().equals("Writing..."))
+                .then(() -> {
+                    updates.tryEmitNext(message("Still writing..."));
+                    updates.tryEmitNext(message("Almost done..."));
+                })
+                .then(() -> scheduler.advanceTimeBy(INTERVAL.minusMillis(1)))
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> scheduler.advanceTimeBy(Duration.ofMillis(1)))
+                .expectNextMatches(update -> update.message().equals("Almost done..."))
+                .then(updates::tryEmitComplete)
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void emitsDataAndCompletionImmediately() {
+        StoryPageDTO page = Mockito.mock(StoryPageDTO.class);
+        StepVerifier.create(pacer.pace(updates.asFlux()))
+                .then(() -> updates.tryEmitNext(message("Writing...")))
+                .then(scheduler::advanceTime)
+                .expectNextMatches(update -> update.message().equals("Writing..."))
+                .then(() -> {
+                    updates.tryEmitNext(message("Illustrating..."));
+                    updates.tryEmitNext(ProgressUpdateDTO.forData(TASK_ID, 50, "Illustrated a page.", page));
+                })
+                // The data update supersedes the pending message and does not wait for the interval.
+                .expectNextMatches(update -> update.data() == page)
+                .then(() -> updates.tryEmitNext(ProgressUpdateDTO.forCompletion(TASK_ID, "Done.")))
+                .expectNextMatches(ProgressUpdateDTO::isComplete)
+                .then(updates::tryEmitComplete)
+                .expectComplete()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void messagesWaitForTheIntervalAfterADataUpdate() {
+        StoryPageDTO page = Mockito.mock(StoryPageDTO.class);
+        StepVerifier.create(pacer.pace(updates.asFlux()))
+                .then(() -> {
+                    updates.tryEmitNext(ProgressUpdateDTO.forData(TASK_ID, 50, "Illustrated a page.", page));
+                    updates.tryEmitNext(message("Illustrating..."));
+                })
+                .expectNextMatches(update -> update.data() == page)
+                .then(() -> scheduler.advanceTimeBy(INTERVAL.minusMillis(1)))
+                .expectNoEvent(Duration.ZERO)
+                .then(() -> scheduler.advanceTimeBy(Duration.ofMillis(1)))
+                .expectNextMatches(update -> update.message().equals("Illustrating..."))
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void emitsErrorsImmediately() {
+        StepVerifier.create(pacer.pace(updates.asFlux()))
+                .then(() -> updates.tryEmitNext(message("Writing...")))
+                .then(scheduler::advanceTime)
+                .expectNextCount(1)
+                .then(() -> {
+                    updates.tryEmitNext(message("Still writing..."));
+                    updates.tryEmitNext(ProgressUpdateDTO.forError(TASK_ID, "Failed."));
+                })
+                .expectNextMatches(ProgressUpdateDTO::isError)
+                .then(() -> updates.tryEmitError(new IllegalStateException("Failed.")))
+                .expectError(IllegalStateException.class)
+                .verify(TIMEOUT);
+    }
+
+    private static ProgressUpdateDTO message(String message) {
+        return ProgressUpdateDTO.forMessage(TASK_ID, 10, message);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.language_learning.shared.services;
+
+import com.example.language_learning.shared.dtos.progress.ProgressUpdateDTO;
+import com.example.language_learning.user.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProgressServiceTest {
+
+    private static final String TASK_ID = "task-1";
+    private static final int UPDATES_PER_THREAD = 2_000;
+
+    private final ProgressService progressService = new ProgressService(new ProgressPacer(Duration.ZERO));
+
+    @Test
+    void deliversEveryUpdateSentFromConcurrentSteps() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        progressService.getProgressUpdate(TASK_ID, user);
+        List<ProgressUpdateDTO> received = new CopyOnWriteArrayList<>();
+        progressService.getSink(TASK_ID).asFlux().subscribe(received::add);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> steps = List.of("grammar", "conjugation").stream()
+                    .<Future<?>>map(step -> executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                            progressService.sendUpdate(TASK_ID, 50, step + " " + i, user);
+                        }
+                        return null;
+                    }))
+                    .toList();
+            start.countDown();
+            for (Future<?> step : steps) {
+                step.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(received).hasSize(2 * UPDATES_PER_THREAD);
+        assertThat(received).filteredOn(update -> update.message().startsWith("grammar")).hasSize(UPDATES_PER_THREAD);
+    }
+}
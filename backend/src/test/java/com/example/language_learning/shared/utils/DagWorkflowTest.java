@@ -0,0 +1,180 @@
+package com.example.language_learning.shared.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Steps are timed on virtual time and record when they start and finish in the context.
+ */
+class DagWorkflowTest {
+
+    private static final class Context {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private String output;
+        private boolean illustrated = true;
+    }
+
+    @Test
+    void runsIndependentStepsConcurrentlyAfterTheirDependencies() {
+        DagWorkflow<String, Context> workflow = new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("metadata", timed("metadata", 1))
+                .addStep("pages", timed("pages", 2), "metadata")
+                .addStep("vocabulary", timed("vocabulary", 3), "metadata")
+                .addStep("persist", timed("persist", 1), "pages", "vocabulary")
+                .build();
+        Context context = new Context();
+
+        StepVerifier.withVirtualTime(() -> workflow.run(context))
+                .expectSubscription()
+                // Run one after the other, the steps would take 7 seconds.
+                .expectNoEvent(Duration.ofSeconds(4))
+                .thenAwait(Duration.ofSeconds(1))
+                .verifyComplete();
+
+        assertThat(context.events).containsExactly(
+                "metadata started", "metadata finished",
+                "pages started", "vocabulary started", "pages finished", "vocabulary finished",
+                "persist started", "persist finished");
+    }
+
+    @Test
+    void runsAStepOnceNoMatterHowManyStepsDependOnIt() {
+        DagWorkflow<String, Context> workflow = new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("root", timed("root", 0))
+                .addStep("left", timed("left", 0), "root")
+                .addStep("right", timed("right", 0), "root")
+                .addStep("leaf", timed("leaf", 0), "left", "right", "root")
+                .build();
+        Context context = new Context();
+
+        StepVerifier.create(workflow.run(context)).verifyComplete();
+
+        assertThat(context.events).filteredOn("root started"::equals).hasSize(1);
+        assertThat(context.events).filteredOn(event -> event.endsWith("started")).hasSize(4);
+    }
+
+    @Test
+    void skipsAConditionalStepButRunsItsDependents() {
+        DagWorkflow<String, Context> workflow = new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("pages", timed("pages", 0))
+                .addConditionalStep("images", context -> context.illustrated, timed("images", 0), "pages")
+                .addStep("persist", timed("persist", 0), "images")
+                .build();
+        Context context = new Context();
+        context.illustrated = false;
+
+        StepVerifier.create(workflow.run(context)).verifyComplete();
+
+        assertThat(context.events).containsExactly("pages started", "pages finished", "persist started", "persist finished");
+    }
+
+    @Test
+    void stopsStartingStepsOnceAStepFails() {
+        DagWorkflow<String, Context> workflow = new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("pages", context -> Mono.error(new IllegalStateException("The model failed.")))
+                .addStep("persist", timed("persist", 0), "pages")
+                .build();
+        Context context = new Context();
+
+        StepVerifier.create(workflow.run(context)).verifyErrorMessage("The model failed.");
+
+        assertThat(context.events).isEmpty();
+    }
+
+    @Test
+    void restoresACheckpointedStepInsteadOfRunningItAgain() {
+        InMemoryCheckpointStore store = new InMemoryCheckpointStore();
+        DagWorkflow<String, Context> workflow = checkpointedWorkflow(store);
+
+        Context first = new Context();
+        StepVerifier.create(workflow.run(first)).verifyComplete();
+        assertThat(first.events).containsExactly("pages started", "pages finished", "persist started", "persist finished");
+        assertThat(store.saved).containsEntry("pages", "written");
+
+        Context retry = new Context();
+        StepVerifier.create(workflow.run(retry)).verifyComplete();
+        assertThat(retry.events).containsExactly("persist started", "persist finished");
+        assertThat(retry.output).isEqualTo("written");
+    }
+
+    @Test
+    void runsAStepAgainIfItsCheckpointCannotBeLoadedAndToleratesAFailedSave() {
+        InMemoryCheckpointStore store = new InMemoryCheckpointStore();
+        store.saved.put("pages", "stale");
+        store.failing = true;
+        DagWorkflow<String, Context> workflow = checkpointedWorkflow(store);
+        Context context = new Context();
+
+        StepVerifier.create(workflow.run(context)).verifyComplete();
+
+        assertThat(context.events).containsExactly("pages started", "pages finished", "persist started", "persist finished");
+        assertThat(context.output).isEqualTo("written");
+    }
+
+    @Test
+    void rejectsInvalidGraphs() {
+        assertThatThrownBy(() -> new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("a", timed("a", 0), "b")
+                .addStep("b", timed("b", 0), "a")
+                .build())
+                .hasMessageContaining("cycle");
+        assertThatThrownBy(() -> new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("a", timed("a", 0), "missing")
+                .build())
+                .hasMessageContaining("unknown step missing");
+        assertThatThrownBy(() -> new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("a", timed("a", 0))
+                .addStep("a", timed("a", 0)))
+                .hasMessageContaining("already been added");
+    }
+
+    private static DagWorkflow<String, Context> checkpointedWorkflow(InMemoryCheckpointStore store) {
+        DagWorkflow.Step<Context> pages = context -> timed("pages", 0).execute(context)
+                .doOnSuccess(ignored -> context.output = "written");
+        return new DagWorkflow.GraphBuilder<String, Context>()
+                .addStep("pages", pages)
+                .addStep("persist", timed("persist", 0), "pages")
+                .checkpoint("pages", new DagWorkflow.Checkpoint<Context, String>(String.class, context -> context.output, (context, output) -> context.output = output))
+                .checkpointStore(store)
+                .build();
+    }
+
+    private static DagWorkflow.Step<Context> timed(String name, int seconds) {
+        return context -> Mono.fromRunnable(() -> context.events.add(name + " started"))
+                .then(Mono.delay(Duration.ofSeconds(seconds)))
+                .doOnSuccess(ignored -> context.events.add(name + " finished"))
+                .then();
+    }
+
+    /**
+     * Keeps the checkpoints of every run, since the test contexts do not identify their runs.
+     */
+    private static final class InMemoryCheckpointStore implements WorkflowCheckpointStore<Context> {
+        private final Map<String, Object> saved = new ConcurrentHashMap<>();
+        private boolean failing;
+
+        @Override
+        public <T> Mono<T> load(Context context, String step, Class<T> outputType) {
+            return failing
+                    ? Mono.error(new IllegalStateException("The store is unavailable."))
+                    : Mono.justOrEmpty(saved.get(step)).cast(outputType);
+        }
+
+        @Override
+        public Mono<Void> save(Context context, String step, Object output) {
+            return failing
+                    ? Mono.error(new IllegalStateException("The store is unavailable."))
+                    : Mono.fromRunnable(() -> saved.put(step, output));
+        }
+    }
+}
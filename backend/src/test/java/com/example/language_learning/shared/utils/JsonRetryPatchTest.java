@@ -0,0 +1,169 @@
+package com.example.language_learning.shared.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonRetryPatchTest {
+    private static final String SCHEMA = """
+            {
+              "type": "object",
+              "required": ["title", "a/b~c"],
+              "properties": {
+                "title": {"type": "string"},
+                "a/b~c": {"type": "string"},
+                "questions": {
+                  "type": "array",
+                  "items": {
+                    "type": "object",
+                    "required": ["answer"],
+                    "properties": {
+                      "answer": {"type": "string"},
+                      "choices": {"type": "array", "items": {"type": "string"}}
+                    }
+                  }
+                }
+              }
+            }
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonNode schema = json(SCHEMA);
+
+    @Test
+    void locatesEachFailingLocationIncludingMissingProperties() {
+        JsonNode response = json("{\"title\": \"Quiz\", \"questions\": [{\"choices\": []}, {\"answer\": 42}]}");
+
+        List<JsonRetryPatch.Target> targets = JsonRetryPatch.targets(validate(response)).orElseThrow();
+
+        assertThat(targets).extracting(JsonRetryPatch.Target::pointer)
+                .containsExactlyInAnyOrder("/a~1b~0c", "/questions/0/answer", "/questions/1/answer");
+        assertThat(targets).allSatisfy(target -> assertThat(target.errors()).isNotEmpty());
+    }
+
+    @Test
+    void retriesInFullWhenTheRootValueItselfIsWrong() {
+        assertThat(JsonRetryPatch.targets(validate(json("[1, 2]")))).isEmpty();
+        assertThat(JsonRetryPatch.targets(Set.of())).isEmpty();
+    }
+
+    @Test
+    void widensLocationsInsideAnArrayItemToTheItem() {
+        JsonNode response = json("{\"title\": 1, \"questions\": [{\"answer\": \"a\"}, {\"answer\": 42, \"choices\": [1]}]}");
+        List<JsonRetryPatch.Target> targets = List.of(
+                new JsonRetryPatch.Target("/title", List.of("not a string")),
+                new JsonRetryPatch.Target("/questions/1/answer", List.of("answer is not a string")),
+                new JsonRetryPatch.Target("/questions/1/choices/0", List.of("choice is not a string")));
+
+        List<JsonRetryPatch.Target> widened = JsonRetryPatch.widenToItems(response, targets);
+
+        assertThat(widened).containsExactly(
+                new JsonRetryPatch.Target("/title", List.of("not a string")),
+                new JsonRetryPatch.Target("/questions/1", List.of("answer is not a string", "choice is not a string")));
+    }
+
+    @Test
+    void keepsLocationsThatAreMissingFromTheResponse() {
+        JsonNode response = json("{\"title\": \"Quiz\"}");
+        List<JsonRetryPatch.Target> targets = List.of(new JsonRetryPatch.Target("/questions/0/answer", List.of("missing")));
+
+        assertThat(JsonRetryPatch.widenToItems(response, targets)).isEqualTo(targets);
+    }
+
+    @Test
+    void describesTheTargetWithItsSchemaAndNeighbours() {
+        JsonNode response = json("{\"questions\": [{\"answer\": \"a\"}, {\"answer\": 42}, {\"answer\": \"c\"}]}");
+
+        String description = JsonRetryPatch.describe(response, schema, List.of(new JsonRetryPatch.Target("/questions/1", List.of("wrong"))));
+
+        assertThat(description)
+                .contains("### /questions/1")
+                .contains("Current value: {\"answer\":42}")
+                .contains("Expected schema: {\"type\":\"object\"")
+                .contains("Previous item (context only): {\"answer\":\"a\"}")
+                .contains("Next item (context only): {\"answer\":\"c\"}");
+    }
+
+    @Test
+    void appliesPatchesToACopyOfTheResponse() {
+        JsonNode response = json("{\"title\": \"Quiz\", \"questions\": [{\"answer\": \"a\"}, {\"answer\": 42}]}");
+        List<JsonRetryPatch.Target> targets = List.of(
+                new JsonRetryPatch.Target("/questions/1", List.of()),
+                new JsonRetryPatch.Target("/a~1b~0c", List.of()));
+        JsonNode answer = json("{\"patches\": [{\"path\": \"/questions/1\", \"value\": {\"answer\": \"b\"}},"
+                + " {\"path\": \"/a~1b~0c\", \"value\": \"escaped\"}]}");
+
+        JsonNode patched = JsonRetryPatch.apply(response, answer, targets);
+
+        assertThat(patched).isEqualTo(json("{\"title\": \"Quiz\", \"questions\": [{\"answer\": \"a\"}, {\"answer\": \"b\"}], \"a/b~c\": \"escaped\"}"));
+        assertThat(response.at("/questions/1/answer").asInt()).isEqualTo(42);
+    }
+
+    @Test
+    void appliesPatchesInsideATargetAndAppendsAtTheEndOfAnArray() {
+        JsonNode response = json("{\"questions\": [{\"answer\": 1}]}");
+        List<JsonRetryPatch.Target> targets = List.of(
+                new JsonRetryPatch.Target("/questions/0", List.of()),
+                new JsonRetryPatch.Target("/questions/1", List.of()));
+        JsonNode answer = json("{\"patches\": [{\"path\": \"/questions/0/answer\", \"value\": \"a\"},"
+                + " {\"path\": \"/questions/1\", \"value\": {\"answer\": \"b\"}}]}");
+
+        JsonNode patched = JsonRetryPatch.apply(response, answer, targets);
+
+        assertThat(patched).isEqualTo(json("{\"questions\": [{\"answer\": \"a\"}, {\"answer\": \"b\"}]}"));
+    }
+
+    @Test
+    void rejectsPatchesOutsideOfTheFailingLocations() {
+        JsonNode response = json("{\"title\": \"Quiz\", \"questions\": [{\"answer\": \"a\"}, {\"answer\": 42}]}");
+        List<JsonRetryPatch.Target> targets = List.of(new JsonRetryPatch.Target("/questions/1", List.of()));
+
+        assertThatThrownBy(() -> JsonRetryPatch.apply(response, json("{\"patches\": [{\"path\": \"/title\", \"value\": \"x\"}]}"), targets))
+                .isInstanceOf(IllegalArgumentException.class);
+        // A location that merely starts with the same characters is not inside the target.
+        assertThatThrownBy(() -> JsonRetryPatch.apply(response, json("{\"patches\": [{\"path\": \"/questions/10\", \"value\": {}}]}"), targets))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsMalformedAnswers() {
+        JsonNode response = json("{\"questions\": [{\"answer\": 42}]}");
+        List<JsonRetryPatch.Target> targets = List.of(new JsonRetryPatch.Target("/questions/3", List.of()));
+
+        assertThatThrownBy(() -> JsonRetryPatch.apply(response, json("{\"patches\": []}"), targets))
+                .hasMessageContaining("does not contain any patches");
+        assertThatThrownBy(() -> JsonRetryPatch.apply(response, json("{\"patches\": [{\"path\": \"/questions/3\"}]}"), targets))
+                .hasMessageContaining("has no value");
+        assertThatThrownBy(() -> JsonRetryPatch.apply(response, json("{\"patches\": [{\"path\": \"/questions/3\", \"value\": {}}]}"), targets))
+                .hasMessageContaining("outside of its array");
+    }
+
+    @Test
+    void patchSchemaFormatMatchesThePatchSchema() {
+        assertThat(objectMapper.<JsonNode>valueToTree(JsonRetryPatch.PATCH_SCHEMA_FORMAT)).isEqualTo(JsonRetryPatch.PATCH_SCHEMA);
+        assertThat(JsonRetryPatch.PATCH_SCHEMA_FORMAT.get("properties"))
+                .extracting("patches").extracting("minItems").isEqualTo(1);
+    }
+
+    private Set<ValidationMessage> validate(JsonNode response) {
+        return JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7).getSchema(schema).validate(response);
+    }
+
+    private JsonNode json(String text) {
+        try {
+            return objectMapper.readTree(text);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.language_learning.shared.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingJsonArrayItemsTest {
+
+    @Test
+    void passesOnEachItemOnceItIsClosedWhateverTheChunking() {
+        String first = "{\"summary\": \"a cat\", \"words\": [[\"neko\", \"cat\"], [\"inu\", \"dog\"]]}";
+        String second = "{\"summary\": \"say \\\"}]\\\" twice\", \"words\": []}";
+        String response = "{\"title\": \"Pets\", \"pages\": [" + first + ", " + second + "]}";
+
+        for (int chunkSize = 1; chunkSize <= response.length(); chunkSize++) {
+            assertThat(read(response, chunkSize)).as("chunks of %d characters", chunkSize).containsExactly(first, second);
+        }
+    }
+
+    @Test
+    void passesOnAnItemBeforeTheRestOfTheResponseArrives() {
+        List<String> items = new ArrayList<>();
+        StreamingJsonArrayItems reader = new StreamingJsonArrayItems("pages", items::add);
+
+        reader.accept("{\"pages\": [{\"n\": 1}, {\"n\"");
+        assertThat(items).containsExactly("{\"n\": 1}");
+
+        reader.accept(": 2}");
+        assertThat(items).containsExactly("{\"n\": 1}", "{\"n\": 2}");
+    }
+
+    @Test
+    void readsOnlyTheArrayOfTheRootProperty() {
+        String response = "{\"meta\": {\"pages\": [{\"n\": 0}]}, \"other\": [{\"n\": -1}], \"pages\": [{\"n\": 1}], \"after\": [{\"n\": 2}]}";
+
+        assertThat(read(response, 3)).containsExactly("{\"n\": 1}");
+    }
+
+    @Test
+    void skipsAnItemThatWasCutOff() {
+        assertThat(read("{\"pages\": [{\"n\": 1}, {\"n\": 2, \"text\": \"unfinis", 4)).containsExactly("{\"n\": 1}");
+    }
+
+    @Test
+    void ignoresItemsThatAreNotObjects() {
+        assertThat(read("{\"pages\": [\"a\", 1, [2], {\"n\": 3}]}", 2)).containsExactly("{\"n\": 3}");
+    }
+
+    private static List<String> read(String response, int chunkSize) {
+        List<String> items = new ArrayList<>();
+        StreamingJsonArrayItems reader = new StreamingJsonArrayItems("pages", items::add);
+        for (int i = 0; i < response.length(); i += chunkSize) {
+            reader.accept(response.substring(i, Math.min(i + chunkSize, response.length())));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.language_learning.shared.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingJsonGuardTest {
+    private static final String SCHEMA = """
+            {
+              "type": "object",
+              "properties": {
+                "title": {"type": "string"},
+                "pages": {
+                  "type": "array",
+                  "maxItems": 2,
+                  "items": {
+                    "type": "object",
+                    "properties": {
+                      "number": {"type": "integer"},
+                      "words": {"type": "array", "items": {"type": "string"}}
+                    }
+                  }
+                }
+              }
+            }
+            """;
+
+    private final JsonNode schema = readSchema();
+
+    @Test
+    void doesNotAbortValidOutputSplitAnywhere() {
+        String response = "```json\n{\"title\": \"A \\\"quoted\\\" {title]\", \"pages\": [{\"number\": 1, \"words\": [\"a\", \"b\"]},"
+                + " {\"number\": 2, \"words\": []}]}\n```";
+
+        for (int chunkSize = 1; chunkSize <= response.length(); chunkSize++) {
+            StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+            assertThat(feed(guard, response, chunkSize)).as("chunks of %d characters", chunkSize).isEmpty();
+            assertThat(guard.getReceived()).isEqualTo(response);
+        }
+    }
+
+    @Test
+    void leavesScalarMismatchesToTheSanitizer() {
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+
+        assertThat(feed(guard, "{\"title\": 42, \"pages\": [{\"number\": \"1\"}]}", 3)).isEmpty();
+    }
+
+    @Test
+    void abortsAsSoonAsAContainerHasTheWrongType() {
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+        List<String> chunks = List.of("{\"pages\": ", "{\"number\": 1", "}, \"title\": \"never read\"}");
+
+        Optional<String> violation = Optional.empty();
+        int abortedAt = -1;
+        for (int i = 0; i < chunks.size() && violation.isEmpty(); i++) {
+            violation = guard.accept(chunks.get(i));
+            abortedAt = i;
+        }
+
+        assertThat(abortedAt).isEqualTo(1);
+        assertThat(violation).hasValueSatisfying(message -> assertThat(message).contains("$.pages").contains("an object"));
+    }
+
+    @Test
+    void abortsAnArrayWithTooManyItems() {
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+
+        Optional<String> violation = feed(guard, "{\"pages\": [{\"number\": 1}, {\"number\": 2}, {\"number\": 3}", 1);
+
+        assertThat(violation).hasValueSatisfying(message -> assertThat(message).contains("more than the allowed 2 items"));
+    }
+
+    @Test
+    void abortsAResponseThatStartsWithProse() {
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema, 20);
+
+        assertThat(feed(guard, "I am sorry, but I cannot write a story about that topic.", 5)).isPresent();
+    }
+
+    @Test
+    void stopsCheckingAtSyntaxItCannotTrack() {
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+
+        // The unquoted key is repaired by the tolerant parser, so the rest of the response is not checked.
+        assertThat(feed(guard, "{pages: {\"number\": 1}, \"title\": [1, 2, 3]}", 4)).isEmpty();
+    }
+
+    @Test
+    void ignoresTextAfterTheRootValue() {
+        StreamingJsonGuard guard = new StreamingJsonGuard(schema);
+
+        assertThat(feed(guard, "{\"title\": \"t\"} and here is {\"pages\": {}}", 2)).isEmpty();
+    }
+
+    /**
+     * Feeds the response in chunks of the given size and returns the first violation.
+     */
+    private static Optional<String> feed(StreamingJsonGuard guard, String response, int chunkSize) {
+        List<String> violations = new ArrayList<>();
+        for (int i = 0; i < response.length(); i += chunkSize) {
+            guard.accept(response.substring(i, Math.min(i + chunkSize, response.length()))).ifPresent(violations::add);
+        }
+        return violations.stream().findFirst();
+    }
+
+    private static JsonNode readSchema() {
+        try {
+            return new ObjectMapper().readTree(SCHEMA);
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.language_learning.shared.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TolerantJsonParserTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void stripsProseAndCodeFencesAroundTheValue() throws Exception {
+        String response = "Sure! Here is the lesson:\n```json\n{\"title\": \"Greetings\"}\n```\nLet me know if you need more.";
+
+        TolerantJsonParser.Result result = TolerantJsonParser.parse(response);
+
+        assertThat(result.node()).isEqualTo(json("{\"title\": \"Greetings\"}"));
+        assertThat(result.repairs()).hasSize(2);
+        assertThat(result.repairs().get(0)).startsWith("Skipped " + response.indexOf('{') + " characters");
+        assertThat(result.repairs().get(1)).startsWith("Ignored the text after the JSON value");
+    }
+
+    @Test
+    void parsesValidJsonWithoutRepairs() throws Exception {
+        TolerantJsonParser.Result result = TolerantJsonParser.parse("{\"a\": [1, 2.5, true, null, \"x\"], \"b\": {}}");
+
+        assertThat(result.node()).isEqualTo(json("{\"a\": [1, 2.5, true, null, \"x\"], \"b\": {}}"));
+        assertThat(result.repairs()).isEmpty();
+    }
+
+    @Test
+    void keepsEscapedQuotesAndBracketsInStrings() throws Exception {
+        TolerantJsonParser.Result result = TolerantJsonParser.parse("{\"text\": \"She said \\\"hi\\\" {not a brace]\"}");
+
+        assertThat(result.node().get("text").asText()).isEqualTo("She said \"hi\" {not a brace]");
+        assertThat(result.repairs()).isEmpty();
+    }
+
+    @Test
+    void repairsLenientSyntax() throws Exception {
+        String response = "{title: 'Greetings', // a comment\n \"items\": [1, 2,], \"title\": \"Hello\",}";
+
+        TolerantJsonParser.Result result = TolerantJsonParser.parse(response);
+
+        // Duplicate keys keep the last value.
+        assertThat(result.node()).isEqualTo(json("{\"title\": \"Hello\", \"items\": [1, 2]}"));
+    }
+
+    @Test
+    void closesNestedContainersOfATruncatedResponse() throws Exception {
+        TolerantJsonParser.Result result = TolerantJsonParser.parse("{\"pages\": [{\"n\": 1, \"words\": [\"a\", \"b\"]}, {\"n\": 2, \"words\": [\"c\"");
+
+        assertThat(result.node()).isEqualTo(json("{\"pages\": [{\"n\": 1, \"words\": [\"a\", \"b\"]}, {\"n\": 2, \"words\": [\"c\"]}]}"));
+        assertThat(result.repairs()).singleElement().asString().startsWith("Closed 4 unterminated container(s)");
+    }
+
+    @Test
+    void dropsTheFieldOfAnUnterminatedString() throws Exception {
+        TolerantJsonParser.Result result = TolerantJsonParser.parse("{\"title\": \"Greetings\", \"summary\": \"A story ab");
+
+        assertThat(result.node()).isEqualTo(json("{\"title\": \"Greetings\"}"));
+        assertThat(result.repairs()).singleElement().asString().contains("dropping the field 'summary'");
+    }
+
+    @Test
+    void rejectsAResponseWithoutJson() {
+        assertThatThrownBy(() -> TolerantJsonParser.parse("I cannot help with that."))
+                .isInstanceOf(JsonProcessingException.class);
+    }
+
+    @Test
+    void rejectsErrorsItCannotRepairWhileStreaming() {
+        assertThatThrownBy(() -> TolerantJsonParser.parse("{\"a\": 1 \"b\": 2}"))
+                .isInstanceOf(JsonProcessingException.class);
+    }
+
+    private JsonNode json(String text) throws JsonProcessingException {
+        return objectMapper.readTree(text);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.language_learning.storybook.shortstory;
+
+import com.example.language_learning.ai.AIEngine;
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
+import com.example.language_learning.shared.services.ImageService;
+import com.example.language_learning.shared.services.JobQueueService;
+import com.example.language_learning.shared.services.JobQueueService.Priority;
+import com.example.language_learning.shared.services.JobQueueService.SchedulingKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Each render is a stub that never completes on its own and records who it runs for and whether it was cancelled,
+ * unless its prompt has a finished image, which it emits right away.
+ */
+class StoryImagePrefetcherTest {
+    private static final Long STORY_ID = 1L;
+    private static final Context USER_CONTEXT = JobQueueService.forUser(Priority.BACKGROUND, 42L);
+
+    private final AIEngine aiEngine = mock(AIEngine.class);
+    private final ImageService imageService = mock(ImageService.class);
+    private final JobQueueService jobQueueService = mock(JobQueueService.class);
+    private final Clock clock = mock(Clock.class);
+    private final Map<String, SchedulingKey> keysByPrompt = new ConcurrentHashMap<>();
+    private final List<String> cancelled = new CopyOnWriteArrayList<>();
+    private final Map<String, StoredImageDTO> finished = new ConcurrentHashMap<>();
+    private StoryImagePrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        when(clock.instant()).thenReturn(Instant.EPOCH);
+        when(aiEngine.streamImages(anyList())).thenAnswer(invocation -> {
+            String prompt = invocation.<List<String>>getArgument(0).getFirst();
+            return Flux.<Map.Entry<String, StoredImageDTO>>deferContextual(context -> {
+                        keysByPrompt.put(prompt, context.get(SchedulingKey.class));
+                        StoredImageDTO image = finished.get(prompt);
+                        return (image != null) ? Flux.just(Map.entry(prompt, image)) : Flux.never();
+                    })
+                    .doOnCancel(() -> cancelled.add(prompt));
+        });
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(jobQueueService).submitJob(any(Runnable.class));
+        prefetcher = new StoryImagePrefetcher(aiEngine, imageService, jobQueueService, Duration.ofMinutes(30), clock);
+    }
+
+    @Test
+    void rendersWithTheContextOfTheGeneration() {
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+
+        assertThat(keysByPrompt.get("a cat")).isEqualTo(new SchedulingKey(Priority.BACKGROUND, 42L));
+    }
+
+    @Test
+    void rendersEachSummaryOnce() {
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+
+        assertThat(prefetcher.take(STORY_ID, Set.of("a cat"))).containsOnlyKeys("a cat");
+        assertThat(keysByPrompt).hasSize(1);
+    }
+
+    @Test
+    void aLaterAttemptCancelsTheRendersOfTheEarlierOne() {
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 2, "a dog", USER_CONTEXT);
+        // A late item of the superseded attempt is ignored.
+        prefetcher.prefetch(STORY_ID, 1, "a bird", USER_CONTEXT);
+
+        assertThat(cancelled).containsExactly("a cat");
+        assertThat(keysByPrompt).containsOnlyKeys("a cat", "a dog");
+        assertThat(prefetcher.take(STORY_ID, Set.of("a cat", "a dog", "a bird"))).containsOnlyKeys("a dog");
+    }
+
+    @Test
+    void takeCancelsTheRendersOfSummariesThatWereNotKept() {
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 1, "a dog", USER_CONTEXT);
+
+        Map<String, CompletableFuture<StoredImageDTO>> taken = prefetcher.take(STORY_ID, Set.of("a dog"));
+
+        assertThat(taken).containsOnlyKeys("a dog");
+        assertThat(taken.get("a dog")).isNotDone();
+        assertThat(cancelled).containsExactly("a cat");
+        assertThat(prefetcher.take(STORY_ID, Set.of("a dog"))).isEmpty();
+    }
+
+    @Test
+    void discardCancelsEveryRender() {
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 1, "a dog", USER_CONTEXT);
+
+        prefetcher.discard(STORY_ID);
+
+        assertThat(cancelled).containsExactlyInAnyOrder("a cat", "a dog");
+        assertThat(prefetcher.take(STORY_ID, Set.of("a cat", "a dog"))).isEmpty();
+    }
+
+    @Test
+    void rendersThatAreNeverTakenAreEvicted() {
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+
+        prefetcher.evictExpired();
+        assertThat(cancelled).isEmpty();
+
+        when(clock.instant()).thenReturn(Instant.EPOCH.plus(Duration.ofMinutes(31)));
+        prefetcher.evictExpired();
+
+        assertThat(cancelled).containsExactly("a cat");
+        assertThat(prefetcher.take(STORY_ID, Set.of("a cat"))).isEmpty();
+    }
+
+    @Test
+    void droppedImagesThatWereAlreadyStoredAreDeleted() {
+        StoredImageDTO cat = new StoredImageDTO("http://storage/images/cat.jpg", null);
+        StoredImageDTO dog = new StoredImageDTO("http://storage/images/dog.jpg", null);
+        finished.put("a cat", cat);
+        finished.put("a dog", dog);
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 1, "a dog", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 1, "a bird", USER_CONTEXT);
+
+        Map<String, CompletableFuture<StoredImageDTO>> taken = prefetcher.take(STORY_ID, Set.of("a dog"));
+
+        assertThat(taken.get("a dog")).isCompletedWithValue(dog);
+        verify(imageService).deleteImage(cat);
+        verifyNoMoreInteractions(imageService);
+    }
+
+    @Test
+    void supersededDiscardedAndEvictedImagesAreDeleted() {
+        StoredImageDTO cat = new StoredImageDTO("http://storage/images/cat.jpg", null);
+        StoredImageDTO dog = new StoredImageDTO("http://storage/images/dog.jpg", null);
+        StoredImageDTO bird = new StoredImageDTO("http://storage/images/bird.jpg", null);
+        finished.put("a cat", cat);
+        finished.put("a dog", dog);
+        finished.put("a bird", bird);
+
+        prefetcher.prefetch(STORY_ID, 1, "a cat", USER_CONTEXT);
+        prefetcher.prefetch(STORY_ID, 2, "a dog", USER_CONTEXT);
+        verify(imageService).deleteImage(cat);
+
+        prefetcher.discard(STORY_ID);
+        verify(imageService).deleteImage(dog);
+
+        prefetcher.prefetch(2L, 1, "a bird", USER_CONTEXT);
+        when(clock.instant()).thenReturn(Instant.EPOCH.plus(Duration.ofMinutes(31)));
+        prefetcher.evictExpired();
+        verify(imageService).deleteImage(bird);
+    }
+}
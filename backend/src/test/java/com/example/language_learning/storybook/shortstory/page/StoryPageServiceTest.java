@@ -0,0 +1,54 @@
+package com.example.language_learning.storybook.shortstory.page;
+
+import com.example.language_learning.shared.dtos.images.StoredImageDTO;
+import com.example.language_learning.shared.mapper.DtoMapper;
+import com.example.language_learning.shared.services.NlpService;
+import com.example.language_learning.storybook.shortstory.ShortStoryRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StoryPageServiceTest {
+
+    private final StoryPageRepository storyPageRepository = Mockito.mock(StoryPageRepository.class);
+    private final DtoMapper dtoMapper = Mockito.mock(DtoMapper.class);
+    private final StoryPageService storyPageService = new StoryPageService(storyPageRepository,
+            Mockito.mock(ShortStoryRepository.class), dtoMapper, Mockito.mock(NlpService.class));
+
+    @Test
+    void loadsOnlyThePagesThatWereUpdated() {
+        StoryPage later = page(5L);
+        StoryPage earlier = page(3L);
+        when(storyPageRepository.updateImage(1L, List.of(3L, 5L, 9L), "url", "srcset")).thenReturn(List.of(5L, 3L));
+        when(storyPageRepository.loadPagesWithParagraphsByIdIn(List.of(5L, 3L))).thenReturn(List.of(later, earlier));
+
+        List<StoryPageDTO> updated = storyPageService.setImage(1L, List.of(3L, 5L, 9L), new StoredImageDTO("url", "srcset"));
+
+        assertThat(updated).extracting(StoryPageDTO::id).containsExactly(3L, 5L);
+        verify(storyPageRepository).loadPagesWithVocabularyByIdIn(List.of(5L, 3L));
+        verify(storyPageRepository, never()).loadPagesWithParagraphs(anyLong());
+        verify(storyPageRepository, never()).loadPagesWithVocabulary(anyLong());
+    }
+
+    @Test
+    void skipsLoadingWhenNoPreviewWasSet() {
+        when(storyPageRepository.updatePreviewImageUrl(1L, List.of(3L), "preview")).thenReturn(List.of());
+
+        assertThat(storyPageService.setPreviewImageUrl(1L, List.of(3L), "preview")).isEmpty();
+
+        verify(storyPageRepository, never()).loadPagesWithParagraphsByIdIn(any());
+        verify(storyPageRepository, never()).loadPagesWithVocabularyByIdIn(any());
+    }
+
+    private StoryPage page(Long id) {
+        StoryPage page = new StoryPage();
+        page.setId(id);
+        when(dtoMapper.toDto(page)).thenReturn(new StoryPageDTO(id, StoryPageType.CONTENT, "summary", "url", "srcset", null, List.of(), List.of()));
+        return page;
+    }
+}
@@ -74,7 +74,10 @@ const StoryContentPage: React.FC<StoryContentPageProps> = ({ page }) => {
 
     return(
         <div>
-            {page.imageUrl && <img src={page.imageUrl} alt="Story illustration" style={{ maxWidth: '100%', marginBottom: '1rem' }} />}
+            {/* The preview is shown at full width until the full-quality image replaces it in place. */}
+            {page.imageUrl
+                ? <img src={page.imageUrl} srcSet={page.imageSrcset} sizes="(max-width: 576px) 100vw, 512px" alt="Story illustration" style={{ maxWidth: '100%', marginBottom: '1rem' }} />
+                : page.previewImageUrl && <img src={page.previewImageUrl} alt="Story illustration preview" style={{ width: '100%', marginBottom: '1rem' }} />}
 
             <div className={styles.contentWrapper}>
                 <button
@@ -27,6 +27,8 @@ export const storyPageFragment = gql`
             id
             englishSummary
             imageUrl
+            imageSrcset
+            previewImageUrl
             type
             paragraphs {
                 ...StoryParagraphFragment
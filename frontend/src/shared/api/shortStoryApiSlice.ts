@@ -48,7 +48,13 @@ export const shortStoryApiSlice = graphqlApiSlice.injectEndpoints ({
                                 dispatch(
                                     storyBookApiSlice.util.updateQueryData("getStoryBook", { language, difficulty }, (draft) => {
                                         const shortStory = draft.shortStories.find((s) => s.id === newShortStory.id);
-                                        if (shortStory && !shortStory.storyPages.some((p) => p.id === newPage.id)) {
+                                        if (!shortStory) return;
+                                        // Pages are sent again once their illustration is ready, so known pages are replaced.
+                                        const index = shortStory.storyPages.findIndex((p) => p.id === newPage.id);
+                                        if (index >= 0) {
+                                            shortStory.storyPages[index] = newPage;
+                                        }
+                                        else {
                                             shortStory.storyPages.push(newPage);
                                             shortStory.storyPages.sort((a, b) => parseInt(a.id, 10) - parseInt(b.id, 10));
                                         }
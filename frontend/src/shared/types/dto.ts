@@ -104,6 +104,8 @@ export interface StoryContentPageDTO extends PageDTO {
     type: StoryPageType.CONTENT;
     englishSummary?: string;
     imageUrl?: string;
+    imageSrcset?: string;
+    previewImageUrl?: string;
     paragraphs: StoryParagraphDTO[];
     vocabulary: StoryVocabularyItemDTO[];
 }